@@ -0,0 +1,115 @@
+package com.github.tbcd.quota.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}.
+ *
+ * <p>Usage:</p>
+ * <pre>{@code
+ * java -jar target/benchmarks.jar -rf csv -rff baseline.csv      # before the change
+ * java -jar target/benchmarks.jar -rf csv -rff current.csv       # after the change
+ * java -cp target/benchmarks.jar com.github.tbcd.quota.benchmark.BaselineComparison baseline.csv current.csv 10
+ * }</pre>
+ *
+ * <p>Each benchmark and parameter combination present in both files is printed with its
+ * relative change. The process exits with status 1 when one of them regressed by more
+ * than the threshold, 5% by default, so the comparison can gate a CI job.</p>
+ */
+public final class BaselineComparison {
+
+	private BaselineComparison() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BaselineComparison <baseline.csv> <current.csv> [threshold-percent]");
+			System.exit(2);
+		}
+
+		Map<String, Result> baseline = read(Path.of(args[0]));
+		Map<String, Result> current = read(Path.of(args[1]));
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+
+		boolean regressed = false;
+		for (Map.Entry<String, Result> entry : current.entrySet()) {
+			Result before = baseline.get(entry.getKey());
+			if (before == null) {
+				System.out.printf("%-90s %14s -> %14.3f %s (new)%n", entry.getKey(), "-", entry.getValue().score, entry.getValue().unit);
+				continue;
+			}
+
+			Result after = entry.getValue();
+			double change = (after.score - before.score) / before.score * 100;
+			double degradation = after.higherIsBetter() ? -change : change;
+			boolean regression = degradation > threshold;
+			regressed |= regression;
+
+			System.out.printf("%-90s %14.3f -> %14.3f %s (%+.1f%%)%s%n",
+					entry.getKey(), before.score, after.score, after.unit, change, regression ? "  REGRESSION" : "");
+		}
+
+		if (regressed) {
+			System.exit(1);
+		}
+	}
+
+	private static Map<String, Result> read(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file);
+		List<String> header = parseLine(lines.getFirst());
+		int benchmarkColumn = header.indexOf("Benchmark");
+		int modeColumn = header.indexOf("Mode");
+		int scoreColumn = header.indexOf("Score");
+		int unitColumn = header.indexOf("Unit");
+
+		Map<String, Result> results = new LinkedHashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.isBlank()) {
+				continue;
+			}
+			List<String> columns = parseLine(line);
+			StringBuilder key = new StringBuilder(columns.get(benchmarkColumn));
+			for (int i = 0; i < header.size(); i++) {
+				if (header.get(i).startsWith("Param: ") && !columns.get(i).isEmpty()) {
+					key.append(' ').append(header.get(i).substring(7)).append('=').append(columns.get(i));
+				}
+			}
+			String mode = columns.get(modeColumn);
+			key.append(" [").append(mode).append(']');
+			results.put(key.toString(), new Result(mode, Double.parseDouble(columns.get(scoreColumn)), columns.get(unitColumn)));
+		}
+		return results;
+	}
+
+	private static List<String> parseLine(String line) {
+		List<String> columns = new ArrayList<>();
+		StringBuilder column = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == ',' && !quoted) {
+				columns.add(column.toString());
+				column.setLength(0);
+			} else {
+				column.append(c);
+			}
+		}
+		columns.add(column.toString());
+		return columns;
+	}
+
+	private record Result(String mode, double score, String unit) {
+
+		boolean higherIsBetter() {
+			return mode.equals("thrpt");
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.tbcd.quota.benchmark;
+
+import com.github.tbcd.quota.QuotaReservation;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.impl.DefaultQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of quota operations when many threads hit the same tenant and resource.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+	private static final Duration RESERVATION_TIMEOUT = Duration.ofSeconds(30);
+
+	private DefaultQuotaManager quotaManager;
+	private InMemoryQuotaManager inMemoryQuotaManager;
+
+	@Setup
+	public void setUp() {
+		quotaManager = new DefaultQuotaManager((tenant, resource) -> Fixtures.primitiveCounter(0), Fixtures.limitResolver(Long.MAX_VALUE));
+
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Fixtures.Recipe.class));
+		inMemoryQuotaManager = new InMemoryQuotaManager((tenant, resource) -> counter, Fixtures.limitResolver(Long.MAX_VALUE), counter);
+	}
+
+	@Benchmark
+	public QuotaResult quickCheck() {
+		return quotaManager.quickCheck(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+	}
+
+	@Benchmark
+	public boolean reserveAndCommit() {
+		QuotaReservation reservation = quotaManager.reserve(Fixtures.TENANT, Fixtures.Recipe.class, 1, RESERVATION_TIMEOUT);
+		return reservation.commit();
+	}
+
+	@Benchmark
+	public QuotaResult tryAcquireAndRelease() {
+		QuotaResult result = inMemoryQuotaManager.tryAcquire(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+		inMemoryQuotaManager.release(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+		return result;
+	}
+}
@@ -0,0 +1,149 @@
+package com.github.tbcd.quota.benchmark;
+
+import com.github.tbcd.quota.LongQuotaLimitResolver;
+import com.github.tbcd.quota.LongResourceCounter;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.aspect.Quota;
+
+import java.lang.reflect.Array;
+import java.util.Set;
+
+/**
+ * Resources, tenants and stub SPIs shared by the benchmarks.
+ */
+final class Fixtures {
+
+	static final Tenant TENANT = () -> 42L;
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Returns {@code count} distinct resource classes.
+	 *
+	 * <p>Array classes of increasing dimension stand in for unrelated entity types, so
+	 * registries of any size can be built without declaring hundreds of classes.</p>
+	 */
+	static Class<?>[] resourceTypes(int count) {
+		Class<?>[] types = new Class<?>[count];
+		for (int i = 0; i < count; i++) {
+			types[i] = Array.newInstance(Recipe.class, new int[i + 1]).getClass();
+		}
+		return types;
+	}
+
+	static LongQuotaLimitResolver limitResolver(long limit) {
+		return (tenant, resource) -> limit;
+	}
+
+	static ResourceCounter boxedCounter(long count) {
+		return new ResourceCounter() {
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				return count;
+			}
+
+			@Override
+			public boolean supports(Tenant tenant, Object resource) {
+				return true;
+			}
+		};
+	}
+
+	static LongResourceCounter primitiveCounter(long count) {
+		return new LongResourceCounter() {
+
+			@Override
+			public long countAsLong(Tenant tenant, Object resource) {
+				return count;
+			}
+
+			@Override
+			public boolean supports(Tenant tenant, Object resource) {
+				return true;
+			}
+		};
+	}
+
+	static ResourceCounter declaredCounter(Class<?> type) {
+		return new ResourceCounter() {
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				return 0L;
+			}
+
+			@Override
+			public boolean supports(Tenant tenant, Object resource) {
+				return resource == type || type.isInstance(resource);
+			}
+
+			@Override
+			public Set<Class<?>> resourceTypes() {
+				return Set.of(type);
+			}
+		};
+	}
+
+	static ResourceCounter predicateCounter(Class<?> type) {
+		return new ResourceCounter() {
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				return 0L;
+			}
+
+			@Override
+			public boolean supports(Tenant tenant, Object resource) {
+				return resource == type || type.isInstance(resource);
+			}
+		};
+	}
+
+	public static class Recipe {
+
+		private final String name;
+
+		public Recipe(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static class CreateRecipeRequest {
+
+		private final Long ownerId;
+		private final Recipe recipe;
+
+		public CreateRecipeRequest(Long ownerId, Recipe recipe) {
+			this.ownerId = ownerId;
+			this.recipe = recipe;
+		}
+
+		public Long getOwnerId() {
+			return ownerId;
+		}
+
+		public Recipe getRecipe() {
+			return recipe;
+		}
+	}
+
+	public static class RecipeService {
+
+		@Quota(resource = "#recipe")
+		public Recipe create(Recipe recipe) {
+			return recipe;
+		}
+
+		@Quota(resource = "#request.recipe", tenant = "#request.getOwnerId()")
+		public Recipe createFor(CreateRecipeRequest request) {
+			return request.getRecipe();
+		}
+	}
+}
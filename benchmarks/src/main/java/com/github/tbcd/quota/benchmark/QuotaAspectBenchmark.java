@@ -0,0 +1,56 @@
+package com.github.tbcd.quota.benchmark;
+
+import com.github.tbcd.quota.QuotaManager;
+import com.github.tbcd.quota.aspect.QuotaAspect;
+import com.github.tbcd.quota.impl.DefaultQuotaManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an {@code @Quota} guarded call through a Spring AOP proxy, compared to a
+ * direct call of the same method.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class QuotaAspectBenchmark {
+
+	private Fixtures.RecipeService target;
+	private Fixtures.RecipeService proxy;
+	private Fixtures.Recipe recipe;
+	private Fixtures.CreateRecipeRequest request;
+
+	@Setup
+	public void setUp() {
+		QuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> Fixtures.primitiveCounter(0), Fixtures.limitResolver(Long.MAX_VALUE));
+
+		target = new Fixtures.RecipeService();
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAspect(new QuotaAspect(quotaManager, () -> Fixtures.TENANT));
+		proxy = proxyFactory.getProxy();
+
+		recipe = new Fixtures.Recipe("pancakes");
+		request = new Fixtures.CreateRecipeRequest(42L, recipe);
+	}
+
+	@Benchmark
+	public Object directCall() {
+		return target.create(recipe);
+	}
+
+	@Benchmark
+	public Object parameterExpression() {
+		return proxy.create(recipe);
+	}
+
+	@Benchmark
+	public Object nestedExpressions() {
+		return proxy.createFor(request);
+	}
+}
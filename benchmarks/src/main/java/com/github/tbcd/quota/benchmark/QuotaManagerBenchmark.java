@@ -0,0 +1,70 @@
+package com.github.tbcd.quota.benchmark;
+
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.impl.DefaultQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the {@link DefaultQuotaManager} entry points with stub
+ * counters, so that only the manager overhead is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class QuotaManagerBenchmark {
+
+	@Param({"boxed", "primitive"})
+	public String counter;
+
+	private DefaultQuotaManager quotaManager;
+	private InMemoryQuotaManager inMemoryQuotaManager;
+	private List<QuotaRequest> requests;
+
+	@Setup
+	public void setUp() {
+		ResourceCounter resourceCounter = counter.equals("primitive") ? Fixtures.primitiveCounter(10) : Fixtures.boxedCounter(10);
+		quotaManager = new DefaultQuotaManager((tenant, resource) -> resourceCounter, Fixtures.limitResolver(100));
+
+		InMemoryResourceCounter inMemoryCounter = new InMemoryResourceCounter(Set.of(Fixtures.Recipe.class));
+		inMemoryQuotaManager = new InMemoryQuotaManager((tenant, resource) -> resourceCounter, Fixtures.limitResolver(Long.MAX_VALUE), inMemoryCounter);
+
+		requests = List.of(
+				QuotaRequest.of(Fixtures.TENANT, Fixtures.Recipe.class),
+				QuotaRequest.of(() -> 43L, Fixtures.Recipe.class),
+				QuotaRequest.of(() -> 44L, Fixtures.Recipe.class)
+		);
+	}
+
+	@Benchmark
+	public QuotaResult check() {
+		return quotaManager.check(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+	}
+
+	@Benchmark
+	public QuotaResult quickCheck() {
+		return quotaManager.quickCheck(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+	}
+
+	@Benchmark
+	public List<QuotaResult> checkAll() {
+		return quotaManager.checkAll(requests);
+	}
+
+	@Benchmark
+	public QuotaResult tryAcquireAndRelease() {
+		QuotaResult result = inMemoryQuotaManager.tryAcquire(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+		inMemoryQuotaManager.release(Fixtures.TENANT, Fixtures.Recipe.class, 1);
+		return result;
+	}
+}
@@ -0,0 +1,70 @@
+package com.github.tbcd.quota.benchmark;
+
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.impl.DefaultResourceCounterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter lookup in the {@link DefaultResourceCounterRegistry}, for counters declaring
+ * their resource types and for counters only matched through {@code supports()}.
+ *
+ * <p>The looked-up resource is handled by the last registered counter, which is the
+ * worst case for a linear scan.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ResourceCounterRegistryBenchmark {
+
+	@Param({"1", "10", "100"})
+	public int counters;
+
+	@Param({"declared", "predicate"})
+	public String registration;
+
+	private List<ResourceCounter> resourceCounters;
+	private DefaultResourceCounterRegistry registry;
+	private Object instance;
+	private Class<?> type;
+
+	@Setup
+	public void setUp() {
+		Class<?>[] types = Fixtures.resourceTypes(counters);
+		resourceCounters = new ArrayList<>(counters);
+		for (Class<?> resourceType : types) {
+			resourceCounters.add(registration.equals("declared") ? Fixtures.declaredCounter(resourceType) : Fixtures.predicateCounter(resourceType));
+		}
+
+		registry = new DefaultResourceCounterRegistry(resourceCounters);
+		registry.afterSingletonsInstantiated();
+
+		type = types[types.length - 1];
+		instance = Array.newInstance(type.getComponentType(), 0);
+	}
+
+	@Benchmark
+	public ResourceCounter lookupByClass() {
+		return registry.getResourceCounter(Fixtures.TENANT, type);
+	}
+
+	@Benchmark
+	public ResourceCounter lookupByInstance() {
+		return registry.getResourceCounter(Fixtures.TENANT, instance);
+	}
+
+	/**
+	 * Lookup on a fresh registry, including index construction and the first resolution.
+	 */
+	@Benchmark
+	public ResourceCounter firstLookup() {
+		return new DefaultResourceCounterRegistry(resourceCounters).getResourceCounter(Fixtures.TENANT, type);
+	}
+}
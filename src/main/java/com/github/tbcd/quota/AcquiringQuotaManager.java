@@ -0,0 +1,80 @@
+package com.github.tbcd.quota;
+
+/**
+ * {@link QuotaManager} extension that records consumption atomically.
+ *
+ * <p>Where {@link #check(Tenant, Object, long)} only reads the current usage,
+ * {@link #tryAcquire(Tenant, Object, long)} verifies the quota and increments the usage
+ * in a single atomic step. Concurrent callers can therefore never be admitted beyond
+ * the limit, without any database round trip or lock.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * QuotaResult result = quotaManager.tryAcquire(tenant, Recipe.class);
+ * if (!result.allowed()) {
+ *     throw new QuotaExceededException("Recipe limit reached");
+ * }
+ * try {
+ *     recipeRepository.save(recipe);
+ * } catch (RuntimeException e) {
+ *     quotaManager.release(tenant, Recipe.class);
+ *     throw e;
+ * }
+ * }</pre>
+ *
+ * @see QuotaManager
+ * @see QuotaResult
+ */
+public interface AcquiringQuotaManager extends QuotaManager {
+
+	/**
+	 * Acquires one unit of the specified resource if the quota allows it.
+	 *
+	 * <p>This is a convenience method equivalent to calling
+	 * {@link #tryAcquire(Tenant, Object, long)} with an amount of 1.</p>
+	 *
+	 * @param tenant   the tenant acquiring the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return the result of the acquisition
+	 */
+	default QuotaResult tryAcquire(Tenant tenant, Object resource) {
+		return tryAcquire(tenant, resource, 1);
+	}
+
+	/**
+	 * Atomically checks the quota and records the consumption of the given amount.
+	 *
+	 * <p>Usage is only incremented when {@link QuotaResult.Allowed} is returned, in which
+	 * case the state reports the usage including this acquisition. A
+	 * {@link QuotaResult.NoQuota} result leaves the usage untouched.</p>
+	 *
+	 * @param tenant   the tenant acquiring the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units to acquire
+	 * @return the result of the acquisition
+	 * @throws IllegalArgumentException if the usage of this resource is not tracked by the manager
+	 */
+	QuotaResult tryAcquire(Tenant tenant, Object resource, long amount);
+
+	/**
+	 * Releases one unit of the specified resource.
+	 *
+	 * @param tenant   the tenant releasing the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 */
+	default void release(Tenant tenant, Object resource) {
+		release(tenant, resource, 1);
+	}
+
+	/**
+	 * Releases the given amount of a previously acquired resource.
+	 *
+	 * <p>Usage never drops below zero.</p>
+	 *
+	 * @param tenant   the tenant releasing the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units to release
+	 * @throws IllegalArgumentException if the usage of this resource is not tracked by the manager
+	 */
+	void release(Tenant tenant, Object resource, long amount);
+}
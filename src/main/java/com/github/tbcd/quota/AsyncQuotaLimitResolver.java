@@ -0,0 +1,27 @@
+package com.github.tbcd.quota;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link QuotaLimitResolver} with a native non-blocking resolution operation.
+ *
+ * <p>The {@link AsyncQuotaManager} uses {@link #resolveAsync(Tenant, Object)} instead of
+ * running {@link #resolve(Tenant, Object)} on its executor, for instance to call a
+ * remote subscription service with a non-blocking client.</p>
+ *
+ * @see AsyncQuotaManager
+ * @see QuotaLimitResolver
+ */
+public interface AsyncQuotaLimitResolver extends QuotaLimitResolver {
+
+	/**
+	 * Resolves asynchronously the quota limit for the given tenant and resource.
+	 *
+	 * @param tenant   the tenant to resolve the limit for
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return a future completed with the quota limit, or empty if no quota is configured
+	 * @see #resolve(Tenant, Object)
+	 */
+	CompletableFuture<Optional<Long>> resolveAsync(Tenant tenant, Object resource);
+}
@@ -0,0 +1,61 @@
+package com.github.tbcd.quota;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of the {@link QuotaManager}.
+ *
+ * <p>Limit resolution and resource counting are independent and usually both perform
+ * I/O. Implementations run them concurrently, so the latency of a check is the
+ * slowest of the two lookups rather than their sum. Counters and resolvers can take
+ * part natively by implementing {@link AsyncResourceCounter} and
+ * {@link AsyncQuotaLimitResolver}; blocking implementations are run on an executor.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * return asyncQuotaManager.checkAsync(tenant, Recipe.class)
+ *         .thenCompose(result -> result.allowed()
+ *                 ? recipeService.createAsync(recipe)
+ *                 : CompletableFuture.failedFuture(new QuotaExceededException(...)));
+ * }</pre>
+ *
+ * @see QuotaManager
+ * @see AsyncResourceCounter
+ * @see AsyncQuotaLimitResolver
+ */
+public interface AsyncQuotaManager {
+
+	/**
+	 * Checks asynchronously if the tenant can consume one unit of the specified resource.
+	 *
+	 * @param tenant   the tenant to check the quota for
+	 * @param resource the resource type to check, either an instance or a {@link Class}
+	 * @return a future completed with the result of the quota check
+	 * @see #checkAsync(Tenant, Object, long)
+	 */
+	default CompletableFuture<QuotaResult> checkAsync(Tenant tenant, Object resource) {
+		return checkAsync(tenant, resource, 1);
+	}
+
+	/**
+	 * Checks asynchronously if the tenant can consume the specified amount of a resource.
+	 *
+	 * @param tenant   the tenant to check the quota for
+	 * @param resource the resource type to check, either an instance or a {@link Class}
+	 * @param amount   the number of units to check
+	 * @return a future completed with the result of the quota check
+	 * @see QuotaManager#check(Tenant, Object, long)
+	 */
+	CompletableFuture<QuotaResult> checkAsync(Tenant tenant, Object resource, long amount);
+
+	/**
+	 * Retrieves asynchronously the current quota state for a tenant and resource.
+	 *
+	 * @param tenant   the tenant to get the state for
+	 * @param resource the resource type to query, either an instance or a {@link Class}
+	 * @return a future completed with the quota state, or empty if no quota is configured
+	 * @see QuotaManager#getState(Tenant, Object)
+	 */
+	CompletableFuture<Optional<QuotaState>> getStateAsync(Tenant tenant, Object resource);
+}
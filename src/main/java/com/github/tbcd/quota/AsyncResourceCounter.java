@@ -0,0 +1,26 @@
+package com.github.tbcd.quota;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link ResourceCounter} with a native non-blocking counting operation.
+ *
+ * <p>The {@link AsyncQuotaManager} uses {@link #countAsync(Tenant, Object)} instead of
+ * running {@link #count(Tenant, Object)} on its executor, for instance to rely on a
+ * reactive database driver.</p>
+ *
+ * @see AsyncQuotaManager
+ * @see ResourceCounter
+ */
+public interface AsyncResourceCounter extends ResourceCounter {
+
+	/**
+	 * Counts asynchronously the number of resources currently owned by the given tenant.
+	 *
+	 * @param tenant   the tenant whose resources should be counted
+	 * @param resource the resource type to count, either an instance or a {@link Class}
+	 * @return a future completed with the current number of resources, never null
+	 * @see #count(Tenant, Object)
+	 */
+	CompletableFuture<Long> countAsync(Tenant tenant, Object resource);
+}
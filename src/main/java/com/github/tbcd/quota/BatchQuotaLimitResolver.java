@@ -0,0 +1,48 @@
+package com.github.tbcd.quota;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link QuotaLimitResolver} able to resolve the limits of many tenants in a single call.
+ *
+ * <p>Batch quota operations such as {@link QuotaManager#checkAll(Collection)} and the
+ * startup warmup group their requests by resource type, and use this interface to
+ * replace one lookup per tenant with a single one.</p>
+ *
+ * <p>Example implementation:</p>
+ * <pre>{@code
+ * @Component
+ * public class TieredQuotaLimitResolver implements BatchQuotaLimitResolver {
+ *
+ *     private final SubscriptionService subscriptionService;
+ *
+ *     @Override
+ *     public Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource) {
+ *         Map<Object, String> tiers = subscriptionService.getTiers(tenants.stream().map(Tenant::getValue).toList());
+ *         Map<Object, Long> limits = new HashMap<>();
+ *         tiers.forEach((tenantValue, tier) -> limits.put(tenantValue, LIMITS.get(tier)));
+ *         return limits;
+ *     }
+ *
+ *     // resolve(...) as for any QuotaLimitResolver
+ * }
+ * }</pre>
+ *
+ * @see QuotaLimitResolver
+ * @see BatchResourceCounter
+ */
+public interface BatchQuotaLimitResolver extends QuotaLimitResolver {
+
+	/**
+	 * Resolves the quota limit of each of the given tenants.
+	 *
+	 * <p>The returned map is keyed by {@link Tenant#getValue()}. Tenants missing from the
+	 * map have no quota configured.</p>
+	 *
+	 * @param tenants  the tenants to resolve the limit for, with distinct values
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return the quota limit of each tenant having one, keyed by tenant value
+	 */
+	Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource);
+}
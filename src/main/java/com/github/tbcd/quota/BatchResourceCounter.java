@@ -0,0 +1,47 @@
+package com.github.tbcd.quota;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link ResourceCounter} able to count resources of many tenants in a single call.
+ *
+ * <p>Batch quota operations such as {@link QuotaManager#checkAll(Collection)} group their
+ * requests by counter and resource type, and use this interface to replace one query
+ * per tenant with a single aggregate query.</p>
+ *
+ * <p>Example implementation:</p>
+ * <pre>{@code
+ * @Component
+ * public class RecipeResourceCounter implements BatchResourceCounter {
+ *
+ *     private final RecipeRepository recipeRepository;
+ *
+ *     @Override
+ *     public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+ *         List<Long> ownerIds = tenants.stream().map(t -> (Long) t.getValue()).toList();
+ *         // SELECT owner_id, COUNT(*) FROM recipe WHERE owner_id IN (...) GROUP BY owner_id
+ *         return recipeRepository.countByOwnerIds(ownerIds);
+ *     }
+ *
+ *     // count(...) and supports(...) as for any ResourceCounter
+ * }
+ * }</pre>
+ *
+ * @see ResourceCounter
+ * @see QuotaManager#checkAll(Collection)
+ */
+public interface BatchResourceCounter extends ResourceCounter {
+
+	/**
+	 * Counts the resources owned by each of the given tenants.
+	 *
+	 * <p>The returned map is keyed by {@link Tenant#getValue()}. Tenants missing from the
+	 * map are considered to own no resource.</p>
+	 *
+	 * @param tenants  the tenants whose resources should be counted, with distinct values
+	 * @param resource the resource type to count, either an instance or a {@link Class}
+	 * @return the number of resources owned by each tenant, keyed by tenant value
+	 */
+	Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource);
+}
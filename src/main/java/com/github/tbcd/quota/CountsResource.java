@@ -0,0 +1,48 @@
+package com.github.tbcd.quota;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the resource types counted by a {@link ResourceCounter}.
+ *
+ * <p>This is the declarative equivalent of overriding
+ * {@link ResourceCounter#resourceTypes()}: the registry indexes the counter under each
+ * declared type, and {@link ResourceCounter#supports(Tenant, Object)} does not need to be
+ * implemented. The declaration is also read at build time by Spring AOT, which generates
+ * the registration of the declared types, so that they are indexed at startup without
+ * reflection.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * @Component
+ * @CountsResource(Recipe.class)
+ * public class RecipeResourceCounter implements ResourceCounter {
+ *
+ *     private final RecipeRepository recipeRepository;
+ *
+ *     @Override
+ *     public Long count(Tenant tenant, Object resource) {
+ *         return recipeRepository.countByOwnerId(tenant.id());
+ *     }
+ * }
+ * }</pre>
+ *
+ * @see ResourceCounter#resourceTypes()
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface CountsResource {
+
+	/**
+	 * The resource types counted by the annotated counter, including their subclasses
+	 * and implementations.
+	 */
+	Class<?>[] value();
+}
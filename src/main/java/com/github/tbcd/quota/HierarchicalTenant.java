@@ -0,0 +1,93 @@
+package com.github.tbcd.quota;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link Tenant} nested in a parent tenant, such as a user belonging to a team belonging
+ * to an organization.
+ *
+ * <p>Quota managers enforce the quota of every level of the hierarchy: an operation is
+ * only allowed if the tenant and each of its ancestors stay within their limits. The
+ * {@link QuotaLimitResolver} is asked for the limit of each level, and levels without a
+ * quota are skipped.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * @Override
+ * public Tenant resolve() {
+ *     User user = authHelper.getUser();
+ *     Tenant organization = HierarchicalTenant.of("org:" + user.getOrganizationId(), null);
+ *     Tenant team = HierarchicalTenant.of("team:" + user.getTeamId(), organization);
+ *     return HierarchicalTenant.of("user:" + user.getId(), team);
+ * }
+ * }</pre>
+ *
+ * @see TenantResolver
+ */
+public interface HierarchicalTenant extends Tenant {
+
+	/**
+	 * Returns the parent of this tenant.
+	 *
+	 * @return the parent tenant, or {@code null} at the top of the hierarchy
+	 */
+	Tenant getParent();
+
+	/**
+	 * Returns this tenant followed by its ancestors, the most specific first.
+	 *
+	 * @return the tenants of every level of the hierarchy
+	 */
+	default List<Tenant> getLineage() {
+		List<Tenant> lineage = new ArrayList<>();
+		Tenant current = this;
+		while (current != null) {
+			lineage.add(current);
+			current = current instanceof HierarchicalTenant hierarchical ? hierarchical.getParent() : null;
+		}
+		return lineage;
+	}
+
+	/**
+	 * Returns the tenant followed by its ancestors, or the tenant alone if it is not a
+	 * {@code HierarchicalTenant}.
+	 *
+	 * @param tenant the tenant
+	 * @return the tenants of every level of the hierarchy, the most specific first
+	 */
+	static List<Tenant> lineage(Tenant tenant) {
+		return tenant instanceof HierarchicalTenant hierarchical ? hierarchical.getLineage() : Collections.singletonList(tenant);
+	}
+
+	/**
+	 * Creates a tenant with the given value and parent.
+	 *
+	 * @param value  the tenant value
+	 * @param parent the parent tenant, or {@code null} at the top of the hierarchy
+	 * @return the tenant
+	 */
+	static HierarchicalTenant of(Object value, Tenant parent) {
+		return new Level(value, parent);
+	}
+
+	/**
+	 * Default implementation returned by {@link #of(Object, Tenant)}.
+	 *
+	 * @param value  the tenant value
+	 * @param parent the parent tenant, or {@code null}
+	 */
+	record Level(Object value, Tenant parent) implements HierarchicalTenant {
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Tenant getParent() {
+			return parent;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.github.tbcd.quota;
+
+import java.util.Optional;
+
+/**
+ * {@link QuotaLimitResolver} specialized for primitive limits.
+ *
+ * <p>{@link #resolveLimit(Tenant, Object)} returns a plain {@code long} and signals the
+ * absence of quota with the {@link #NO_QUOTA} sentinel, so resolving a limit allocates
+ * neither an {@link Optional} nor a boxed {@link Long}.</p>
+ *
+ * <p>Example implementation:</p>
+ * <pre>{@code
+ * @Component
+ * public class RecipeLimitResolver implements LongQuotaLimitResolver {
+ *
+ *     @Override
+ *     public long resolveLimit(Tenant tenant, Object resource) {
+ *         return resource == Recipe.class || resource instanceof Recipe ? 100 : NO_QUOTA;
+ *     }
+ * }
+ * }</pre>
+ *
+ * @see QuotaLimitResolver
+ * @see QuotaManager#quickCheck(Tenant, Object, long)
+ */
+public interface LongQuotaLimitResolver extends QuotaLimitResolver {
+
+	/**
+	 * Sentinel returned by {@link #resolveLimit(Tenant, Object)} when no quota is configured.
+	 */
+	long NO_QUOTA = -1;
+
+	/**
+	 * Resolves the quota limit for the given tenant and resource.
+	 *
+	 * @param tenant   the tenant to resolve the limit for
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return the quota limit, or a negative value such as {@link #NO_QUOTA} if no quota
+	 *         is configured for this combination
+	 */
+	long resolveLimit(Tenant tenant, Object resource);
+
+	@Override
+	default Optional<Long> resolve(Tenant tenant, Object resource) {
+		long limit = resolveLimit(tenant, resource);
+		return limit < 0 ? Optional.empty() : Optional.of(limit);
+	}
+}
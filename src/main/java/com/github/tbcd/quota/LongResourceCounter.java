@@ -0,0 +1,28 @@
+package com.github.tbcd.quota;
+
+/**
+ * {@link ResourceCounter} specialized for primitive counts.
+ *
+ * <p>{@link #countAsLong(Tenant, Object)} returns a plain {@code long}, so counting does
+ * not allocate a boxed {@link Long}.</p>
+ *
+ * @see ResourceCounter
+ * @see QuotaManager#quickCheck(Tenant, Object, long)
+ */
+public interface LongResourceCounter extends ResourceCounter {
+
+	/**
+	 * Counts the number of resources currently owned by the given tenant.
+	 *
+	 * @param tenant   the tenant whose resources should be counted
+	 * @param resource the resource type to count, either an instance or a {@link Class}
+	 * @return the current number of resources owned by the tenant
+	 * @see #count(Tenant, Object)
+	 */
+	long countAsLong(Tenant tenant, Object resource);
+
+	@Override
+	default Long count(Tenant tenant, Object resource) {
+		return countAsLong(tenant, resource);
+	}
+}
@@ -0,0 +1,40 @@
+package com.github.tbcd.quota;
+
+/**
+ * Invalidates cached quota information after usage or limits have changed.
+ *
+ * <p>Components caching resource counts or quota limits implement this interface so
+ * that write paths can keep them fresh without waiting for entries to expire. The
+ * default quota manager implements it as well, invalidating its own cached counts and
+ * denials along with those of its counter registry and limit resolver.</p>
+ *
+ * <p>Example usage after deleting a resource:</p>
+ * <pre>{@code
+ * recipeRepository.delete(recipe);
+ * quotaCacheInvalidator.invalidate(tenant, Recipe.class);
+ * }</pre>
+ *
+ * @see QuotaManager
+ */
+public interface QuotaCacheInvalidator {
+
+	/**
+	 * Invalidates the cached information of a tenant for the given resource type.
+	 *
+	 * @param tenant   the tenant whose cached information is stale
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 */
+	void invalidate(Tenant tenant, Object resource);
+
+	/**
+	 * Invalidates the cached information of a tenant for every resource type.
+	 *
+	 * @param tenant the tenant whose cached information is stale
+	 */
+	void invalidateTenant(Tenant tenant);
+
+	/**
+	 * Invalidates every cached entry.
+	 */
+	void invalidateAll();
+}
@@ -0,0 +1,11 @@
+package com.github.tbcd.quota;
+
+/**
+ * Headroom granted by a {@link QuotaStore}.
+ *
+ * @param granted the number of units leased, possibly zero
+ * @param usage   the global usage after the lease, including every outstanding lease
+ * @see QuotaStore#lease(Tenant, Object, long, long, long)
+ */
+public record QuotaLease(long granted, long usage) {
+}
@@ -63,4 +63,19 @@ public interface QuotaLimitResolver {
 	 * @return the quota limit, or empty if no quota is configured for this combination
 	 */
 	Optional<Long> resolve(Tenant tenant, Object resource);
+
+	/**
+	 * Resolves the rate quota for the given tenant and resource.
+	 *
+	 * <p>The window is enforced in addition to the limit returned by
+	 * {@link #resolve(Tenant, Object)}; either may be absent.</p>
+	 *
+	 * @param tenant   the tenant to resolve the window for
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return the window, or empty if the resource is not rate limited, which is the default
+	 * @see WindowedQuotaManager
+	 */
+	default Optional<QuotaWindow> resolveWindow(Tenant tenant, Object resource) {
+		return Optional.empty();
+	}
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.github.tbcd.quota;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Central service for managing and enforcing resource quotas.
@@ -49,7 +53,9 @@ public interface QuotaManager {
 	 * Checks if the tenant can consume the specified amount of a resource.
 	 *
 	 * <p>This method verifies whether the tenant's current usage plus the requested
-	 * amount would exceed their quota limit. It does not modify any counters.</p>
+	 * amount would exceed their quota limit. It does not modify the counted usage, but a
+	 * {@link WindowedQuotaManager} consumes the amount from the rate limit window of the
+	 * resource when the check admits it, and does not give it back.</p>
 	 *
 	 * <p>Possible return values:</p>
 	 * <ul>
@@ -65,6 +71,48 @@ public interface QuotaManager {
 	 */
 	QuotaResult check(Tenant tenant, Object resource, long amount);
 
+	/**
+	 * Checks if the tenant can consume the specified amount of a resource, without
+	 * reporting the state of allowed requests.
+	 *
+	 * <p>This is the allocation-free variant of {@link #check(Tenant, Object, long)}, meant
+	 * for callers that only look at {@link QuotaResult#allowed()}. Implementations may
+	 * return the shared {@link QuotaResult#ALLOWED} and {@link QuotaResult#NO_QUOTA}
+	 * results, which carry neither state nor resource. {@link QuotaResult.Denied} results
+	 * always carry their state.</p>
+	 *
+	 * @param tenant   the tenant to check the quota for
+	 * @param resource the resource type to check, either an instance or a {@link Class}
+	 * @param amount   the number of units to check
+	 * @return the result of the quota check
+	 * @see LongQuotaLimitResolver
+	 * @see LongResourceCounter
+	 */
+	default QuotaResult quickCheck(Tenant tenant, Object resource, long amount) {
+		return check(tenant, resource, amount);
+	}
+
+	/**
+	 * Checks many tenant and resource combinations at once.
+	 *
+	 * <p>Each request is evaluated independently, exactly like
+	 * {@link #check(Tenant, Object, long)}, including the consumption of rate limit
+	 * windows: amounts of requests targeting the same tenant and resource are not added
+	 * up. Implementations may group requests to resolve each distinct combination once
+	 * and to count through a {@link BatchResourceCounter}.</p>
+	 *
+	 * @param requests the quota checks to perform
+	 * @return the results, in the iteration order of {@code requests}
+	 * @see BatchResourceCounter
+	 */
+	default List<QuotaResult> checkAll(Collection<QuotaRequest> requests) {
+		List<QuotaResult> results = new ArrayList<>(requests.size());
+		for (QuotaRequest request : requests) {
+			results.add(check(request.tenant(), request.resource(), request.amount()));
+		}
+		return results;
+	}
+
 	/**
 	 * Retrieves the current quota state for a tenant and resource.
 	 *
@@ -76,4 +124,32 @@ public interface QuotaManager {
 	 * @return the current quota state, or empty if no quota is configured
 	 */
 	Optional<QuotaState> getState(Tenant tenant, Object resource);
+
+	/**
+	 * Streams the quota state of every tenant for every resource type, for reports and
+	 * exports spanning many tenants.
+	 *
+	 * <p>The tenants are consumed lazily, as the returned stream is. Implementations may
+	 * load the states in chunks, through {@link BatchQuotaLimitResolver} and
+	 * {@link BatchResourceCounter}, and prefetch a bounded number of chunks in parallel;
+	 * the stream should then be closed to stop the prefetching early. Combinations
+	 * without a quota are skipped.</p>
+	 *
+	 * <p>Example usage:</p>
+	 * <pre>{@code
+	 * try (Stream<QuotaState> states = quotaManager.streamStates(
+	 *         organizationRepository.streamAll().map(organization -> (Tenant) organization::getId),
+	 *         List.of(Recipe.class, RecipeBook.class))) {
+	 *     states.forEach(billingExporter::write);
+	 * }
+	 * }</pre>
+	 *
+	 * @param tenants   the tenants to report, each consumed once
+	 * @param resources the resource types to report, either instances or {@link Class}es
+	 * @return the states, ordered by tenant then by resource type
+	 */
+	default Stream<QuotaState> streamStates(Stream<? extends Tenant> tenants, Collection<?> resources) {
+		List<?> resourceList = List.copyOf(resources);
+		return tenants.flatMap(tenant -> resourceList.stream().flatMap(resource -> getState(tenant, resource).stream()));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.github.tbcd.quota;
+
+/**
+ * Receives timings and outcomes of quota evaluations.
+ *
+ * <p>The {@link QuotaManager} and the {@link com.github.tbcd.quota.aspect.QuotaAspect}
+ * report how long limit resolution, resource counting and expression evaluation take,
+ * and which result each check produced. Measurements are only taken when a recorder
+ * other than {@link #NOOP} is configured, so disabled metrics cost nothing.</p>
+ *
+ * <p>Recorders should tag measurements by resource type and outcome only: tenants are
+ * deliberately not reported, to keep the number of time series bounded.</p>
+ *
+ * @see QuotaManager
+ */
+public interface QuotaMetrics {
+
+	/**
+	 * Recorder discarding every measurement.
+	 */
+	QuotaMetrics NOOP = new QuotaMetrics() {
+	};
+
+	/**
+	 * Records the duration of a {@link QuotaLimitResolver} call.
+	 *
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param nanos    the duration in nanoseconds
+	 */
+	default void recordLimitResolution(Object resource, long nanos) {
+	}
+
+	/**
+	 * Records the duration of a {@link ResourceCounter} call.
+	 *
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param nanos    the duration in nanoseconds
+	 */
+	default void recordCount(Object resource, long nanos) {
+	}
+
+	/**
+	 * Records the time spent by the quota aspect before invoking the guarded method:
+	 * expression evaluation, tenant resolution and the quota check itself.
+	 *
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param nanos    the duration in nanoseconds
+	 */
+	default void recordEvaluation(Object resource, long nanos) {
+	}
+
+	/**
+	 * Records the outcome of a quota check, acquisition or reservation.
+	 *
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param result   the result returned to the caller
+	 */
+	default void recordResult(Object resource, QuotaResult result) {
+	}
+}
@@ -0,0 +1,31 @@
+package com.github.tbcd.quota;
+
+/**
+ * A single quota check submitted as part of a batch.
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * List<QuotaResult> results = quotaManager.checkAll(List.of(
+ *     new QuotaRequest(tenant, Recipe.class, recipes.size()),
+ *     new QuotaRequest(tenant, RecipeBook.class, 1)
+ * ));
+ * }</pre>
+ *
+ * @param tenant   the tenant to check the quota for
+ * @param resource the resource type to check, either an instance or a {@link Class}
+ * @param amount   the number of units to check
+ * @see QuotaManager#checkAll(java.util.Collection)
+ */
+public record QuotaRequest(Tenant tenant, Object resource, long amount) {
+
+	/**
+	 * Creates a request for one unit of the given resource.
+	 *
+	 * @param tenant   the tenant to check the quota for
+	 * @param resource the resource type to check, either an instance or a {@link Class}
+	 * @return the quota request
+	 */
+	public static QuotaRequest of(Tenant tenant, Object resource) {
+		return new QuotaRequest(tenant, resource, 1);
+	}
+}
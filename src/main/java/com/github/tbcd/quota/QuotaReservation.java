@@ -0,0 +1,63 @@
+package com.github.tbcd.quota;
+
+/**
+ * Handle on an amount of quota held for an operation in progress.
+ *
+ * <p>While a reservation is active, its amount counts against the tenant's limit, so
+ * concurrent callers cannot be admitted on the same headroom. The reservation must be
+ * {@linkplain #commit() committed} once the resource has been created, or
+ * {@linkplain #cancel() cancelled} if the operation failed. Reservations that are
+ * neither committed nor cancelled before their timeout stop holding their amount, which
+ * lets other callers be admitted on it. Units already acquired from an in-memory or
+ * shared counter are not given back on expiry, since the operation may still succeed;
+ * cancelling the reservation still gives them back.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * QuotaReservation reservation = quotaManager.reserve(tenant, Recipe.class, 1, Duration.ofSeconds(30));
+ * if (!reservation.result().allowed()) {
+ *     throw new QuotaExceededException("Recipe limit reached");
+ * }
+ * try {
+ *     recipeRepository.save(recipe);
+ *     reservation.commit();
+ * } catch (RuntimeException e) {
+ *     reservation.cancel();
+ *     throw e;
+ * }
+ * }</pre>
+ *
+ * @see ReservableQuotaManager
+ */
+public interface QuotaReservation {
+
+	/**
+	 * Returns the result of the reservation request.
+	 *
+	 * <p>Only {@link QuotaResult.Allowed} results hold an amount of quota. Denied and
+	 * {@link QuotaResult.NoQuota} reservations hold nothing, and committing or cancelling
+	 * them has no effect.</p>
+	 *
+	 * @return the result of the reservation request
+	 */
+	QuotaResult result();
+
+	/**
+	 * Confirms the reservation once the reserved resources have been created.
+	 *
+	 * <p>A reservation that expired is still committed, but the quota may have been
+	 * exceeded since its amount was no longer held.</p>
+	 *
+	 * @return {@code true} if the reservation was active or held nothing, {@code false} if
+	 *         it was already committed or cancelled, or expired before being committed
+	 */
+	boolean commit();
+
+	/**
+	 * Releases the reserved amount without consuming it.
+	 *
+	 * @return {@code true} if the reservation was active, {@code false} if it was already
+	 *         committed, cancelled or expired
+	 */
+	boolean cancel();
+}
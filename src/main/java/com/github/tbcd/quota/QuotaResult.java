@@ -36,6 +36,20 @@ package com.github.tbcd.quota;
  */
 public interface QuotaResult {
 
+	/**
+	 * Shared allowed result carrying no state.
+	 *
+	 * @see QuotaManager#quickCheck(Tenant, Object, long)
+	 */
+	Allowed ALLOWED = new Allowed(null);
+
+	/**
+	 * Shared no-quota result carrying no resource.
+	 *
+	 * @see QuotaManager#quickCheck(Tenant, Object, long)
+	 */
+	NoQuota NO_QUOTA = new NoQuota(null);
+
 	/**
 	 * Returns whether the operation is allowed.
 	 *
@@ -47,7 +61,8 @@ public interface QuotaResult {
 	 * Returns the quota state at the time of the check.
 	 *
 	 * <p>This provides details about current usage and limits. May be {@code null}
-	 * for {@link NoQuota} results where no quota is configured.</p>
+	 * for {@link NoQuota} results where no quota is configured, and for the shared
+	 * {@link #ALLOWED} result.</p>
 	 *
 	 * @return the quota state, or {@code null} if no quota is configured
 	 */
@@ -59,7 +74,8 @@ public interface QuotaResult {
 	 * <p>This result is returned when the tenant's current usage plus the
 	 * requested amount does not exceed their configured limit.</p>
 	 *
-	 * @param state the current quota state showing usage and limits
+	 * @param state the current quota state showing usage and limits, or {@code null}
+	 *              for the shared {@link #ALLOWED} result
 	 */
 	record Allowed(QuotaState state) implements QuotaResult {
 
@@ -95,7 +111,8 @@ public interface QuotaResult {
 	 * The {@link #state()} method returns {@code null} since there is no
 	 * quota information available.</p>
 	 *
-	 * @param resource the resource for which no quota was found
+	 * @param resource the resource for which no quota was found, or {@code null} for the
+	 *                 shared {@link #NO_QUOTA} result
 	 */
 	record NoQuota(Object resource) implements QuotaResult {
 
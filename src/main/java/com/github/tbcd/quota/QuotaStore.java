@@ -0,0 +1,69 @@
+package com.github.tbcd.quota;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Shared usage counters for quotas enforced by several application nodes.
+ *
+ * <p>When each node counts usage on its own, concurrent acquisitions on different nodes
+ * can all observe the same remaining headroom and exceed the limit together. A store
+ * holds the global usage of every tenant and resource type instead, and hands out
+ * chunks of the remaining headroom as leases. Nodes then serve acquisitions from their
+ * lease without contacting the store, until it runs out.</p>
+ *
+ * <p>Leased units count as used until they are given back through
+ * {@link #release(Tenant, Object, long)}, so the sum of all leases never exceeds the limit.
+ * Implementations must perform each operation atomically, typically with a
+ * compare-and-set or a server-side script.</p>
+ *
+ * @see QuotaLease
+ */
+public interface QuotaStore {
+
+	/**
+	 * Initializes the global usage of a tenant and resource type if the store does not
+	 * know it yet.
+	 *
+	 * @param tenant   the tenant owning the resources
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param usage    supplies the current usage, only invoked when the store has no entry
+	 * @return {@code true} if the usage was initialized by this call
+	 */
+	boolean initialize(Tenant tenant, Object resource, LongSupplier usage);
+
+	/**
+	 * Leases part of the remaining headroom.
+	 *
+	 * <p>Grants {@code preferred} units, or the whole remaining headroom if smaller, and
+	 * adds them to the global usage. Nothing is granted if less than {@code minimum}
+	 * units remain.</p>
+	 *
+	 * @param tenant    the tenant leasing headroom
+	 * @param resource  the resource type, either an instance or a {@link Class}
+	 * @param minimum   the number of units below which nothing is granted
+	 * @param preferred the number of units to grant if available
+	 * @param limit     the current quota limit
+	 * @return the lease, granting either zero or between {@code minimum} and {@code preferred} units
+	 */
+	QuotaLease lease(Tenant tenant, Object resource, long minimum, long preferred, long limit);
+
+	/**
+	 * Gives back unused leased units or units of released resources.
+	 *
+	 * <p>The global usage never drops below zero.</p>
+	 *
+	 * @param tenant   the tenant releasing units
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units to give back
+	 */
+	void release(Tenant tenant, Object resource, long amount);
+
+	/**
+	 * Returns the global usage, including units leased by any node.
+	 *
+	 * @param tenant   the tenant owning the resources
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @return the global usage, or 0 if the store has no entry
+	 */
+	long usage(Tenant tenant, Object resource);
+}
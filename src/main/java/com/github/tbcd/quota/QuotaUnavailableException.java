@@ -0,0 +1,20 @@
+package com.github.tbcd.quota;
+
+/**
+ * Thrown when a quota cannot be evaluated because a {@link ResourceCounter} or
+ * {@link QuotaLimitResolver} failed, exceeded its latency budget or is short-circuited,
+ * and no fallback value is available.
+ *
+ * <p>Quota enforcement fails closed in that case: the guarded operation is not
+ * performed.</p>
+ */
+public class QuotaUnavailableException extends RuntimeException {
+
+	public QuotaUnavailableException(String message) {
+		super(message);
+	}
+
+	public QuotaUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
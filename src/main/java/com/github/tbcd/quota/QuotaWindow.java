@@ -0,0 +1,100 @@
+package com.github.tbcd.quota;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Rate quota limiting how many units a tenant may consume per period of time.
+ *
+ * <p>Where the limit returned by {@link QuotaLimitResolver#resolve(Tenant, Object)}
+ * caps the number of resources a tenant owns, a window caps how fast they are
+ * consumed, for instance "100 exports per hour". Units consumed within a window are
+ * never given back: they expire with time.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * @Override
+ * public Optional<QuotaWindow> resolveWindow(Tenant tenant, Object resource) {
+ *     if (resource == Export.class) {
+ *         return Optional.of(QuotaWindow.sliding(100, Duration.ofHours(1)));
+ *     }
+ *     return Optional.empty();
+ * }
+ * }</pre>
+ *
+ * @param type   the algorithm enforcing the window
+ * @param limit  the number of units allowed per period; for a token bucket, its capacity
+ * @param period the length of the window; for a token bucket, the time to refill it entirely
+ * @see QuotaLimitResolver#resolveWindow(Tenant, Object)
+ * @see WindowedQuotaManager
+ */
+public record QuotaWindow(Type type, long limit, Duration period) {
+
+	public QuotaWindow {
+		Objects.requireNonNull(type, "type must not be null");
+		Objects.requireNonNull(period, "period must not be null");
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit must not be negative");
+		}
+		if (period.isNegative() || period.isZero()) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+	}
+
+	/**
+	 * Creates a window counting units in consecutive, non-overlapping periods.
+	 *
+	 * @param limit  the number of units allowed per period
+	 * @param period the length of the window
+	 * @return the window
+	 */
+	public static QuotaWindow fixed(long limit, Duration period) {
+		return new QuotaWindow(Type.FIXED, limit, period);
+	}
+
+	/**
+	 * Creates a window counting units over the last {@code period}.
+	 *
+	 * @param limit  the number of units allowed per period
+	 * @param period the length of the window
+	 * @return the window
+	 */
+	public static QuotaWindow sliding(long limit, Duration period) {
+		return new QuotaWindow(Type.SLIDING, limit, period);
+	}
+
+	/**
+	 * Creates a token bucket holding up to {@code capacity} units and refilled at a
+	 * constant rate of {@code capacity} units per {@code refillPeriod}.
+	 *
+	 * @param capacity     the maximum burst
+	 * @param refillPeriod the time to refill an empty bucket
+	 * @return the window
+	 */
+	public static QuotaWindow tokenBucket(long capacity, Duration refillPeriod) {
+		return new QuotaWindow(Type.TOKEN_BUCKET, capacity, refillPeriod);
+	}
+
+	/**
+	 * Algorithms enforcing a {@link QuotaWindow}.
+	 */
+	public enum Type {
+
+		/**
+		 * Counts units in consecutive periods. Cheap, but allows up to twice the limit
+		 * around a period boundary.
+		 */
+		FIXED,
+
+		/**
+		 * Approximates a sliding log by weighting the count of the previous period with
+		 * the part of it still covered by the window.
+		 */
+		SLIDING,
+
+		/**
+		 * Allows bursts up to the limit, refilled continuously over the period.
+		 */
+		TOKEN_BUCKET
+	}
+}
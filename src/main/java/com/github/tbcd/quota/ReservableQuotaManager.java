@@ -0,0 +1,60 @@
+package com.github.tbcd.quota;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link QuotaManager} extension able to hold quota for operations in progress.
+ *
+ * <p>A plain {@link #check(Tenant, Object, long)} followed by the creation of a resource
+ * is racy: concurrent callers may all observe the same remaining headroom and all
+ * succeed. Reserving the amount instead makes it count against the limit until the
+ * operation either commits or cancels the reservation.</p>
+ *
+ * @see QuotaReservation
+ */
+public interface ReservableQuotaManager extends QuotaManager {
+
+	/**
+	 * Reserves the given amount of a resource if the quota allows it.
+	 *
+	 * <p>The quota check takes current usage and every other active reservation into
+	 * account. The returned reservation holds the amount until it is committed,
+	 * cancelled, or until {@code timeout} elapses.</p>
+	 *
+	 * @param tenant   the tenant reserving the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units to reserve
+	 * @param timeout  the duration after which an unfinished reservation is released
+	 * @return the reservation, whose {@link QuotaReservation#result()} tells whether it was granted
+	 */
+	QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout);
+
+	/**
+	 * Reserves every request, or none of them.
+	 *
+	 * <p>Requests are reserved in order and evaluation stops at the first denial, in
+	 * which case the reservations already granted are cancelled and the returned list
+	 * ends with the denied reservation. Otherwise the list holds one reservation per
+	 * request, each to be committed or cancelled. Implementations may count the usage of
+	 * all requests together, as {@link #checkAll(java.util.Collection)} does.</p>
+	 *
+	 * @param requests the reservations to take
+	 * @param timeout  the duration after which unfinished reservations are released
+	 * @return the reservations, in the order of {@code requests}, up to the first denied one
+	 */
+	default List<QuotaReservation> reserveAll(List<QuotaRequest> requests, Duration timeout) {
+		List<QuotaReservation> reservations = new ArrayList<>(requests.size());
+		for (QuotaRequest request : requests) {
+			QuotaReservation reservation = reserve(request.tenant(), request.resource(), request.amount(), timeout);
+			if (!reservation.result().allowed()) {
+				reservations.forEach(QuotaReservation::cancel);
+				reservations.add(reservation);
+				return reservations;
+			}
+			reservations.add(reservation);
+		}
+		return reservations;
+	}
+}
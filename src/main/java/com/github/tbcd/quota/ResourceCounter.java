@@ -1,5 +1,7 @@
 package com.github.tbcd.quota;
 
+import java.util.Set;
+
 /**
  * Counts resources owned by a tenant for quota enforcement.
  *
@@ -11,22 +13,19 @@ package com.github.tbcd.quota;
  * <p>Example implementation:</p>
  * <pre>{@code
  * @Component
+ * @CountsResource(Recipe.class)
  * public class RecipeResourceCounter implements ResourceCounter {
  *
  *     private final RecipeRepository recipeRepository;
  *
  *     @Override
- *     public boolean supports(Tenant tenant, Object resource) {
- *         return resource instanceof Recipe || resource.equals(Recipe.class);
- *     }
- *
- *     @Override
  *     public Long count(Tenant tenant, Object resource) {
  *         return recipeRepository.countByOwnerId(tenant.id());
  *     }
  * }
  * }</pre>
  *
+ * @see CountsResource
  * @see QuotaManager
  * @see ResourceCounterRegistry
  */
@@ -61,11 +60,47 @@ public interface ResourceCounter {
 	 * }
 	 * }</pre>
 	 *
+	 * <p>The decision should only depend on the resource type: the registry memoizes
+	 * the selected counter per resource {@link Class}.</p>
+	 *
+	 * <p>The default implementation matches the {@link #resourceTypes() declared types}
+	 * and their subtypes, so counters annotated with {@link CountsResource} do not need
+	 * to override it.</p>
+	 *
 	 * @param tenant   the tenant requesting the quota check
 	 * @param resource the resource to check, either an instance or a {@link Class}
 	 * @return {@code true} if this counter can handle the given resource type,
 	 *         {@code false} otherwise
 	 */
-	boolean supports(Tenant tenant, Object resource);
+	default boolean supports(Tenant tenant, Object resource) {
+		Class<?> type = resource instanceof Class<?> resourceType ? resourceType : resource.getClass();
+		for (Class<?> declared : resourceTypes()) {
+			if (declared.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Declares the resource types handled by this counter.
+	 *
+	 * <p>Declared types are indexed by the {@link ResourceCounterRegistry} at startup,
+	 * so resolving the counter of a resource (or of one of its subclasses and
+	 * implemented interfaces) does not require calling {@link #supports(Tenant, Object)}.
+	 * Two counters declaring the same type are rejected as ambiguous, while a resource
+	 * implementing interfaces declared by several counters resolves to the first of them,
+	 * in bean order, unless one declares a more specific interface.</p>
+	 *
+	 * <p>The default implementation returns the types of the {@link CountsResource}
+	 * annotation of the counter class. Counters returning an empty set are resolved
+	 * through {@link #supports(Tenant, Object)}.</p>
+	 *
+	 * @return the resource types counted by this counter, or an empty set if undeclared
+	 */
+	default Set<Class<?>> resourceTypes() {
+		CountsResource declaration = getClass().getAnnotation(CountsResource.class);
+		return declaration == null ? Set.of() : Set.of(declaration.value());
+	}
 
 }
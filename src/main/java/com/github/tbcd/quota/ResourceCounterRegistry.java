@@ -9,7 +9,11 @@ package com.github.tbcd.quota;
  * combination.</p>
  *
  * <p>The default implementation discovers all {@link ResourceCounter} beans in the
- * Spring application context and iterates through them to find a matching counter.</p>
+ * Spring application context and indexes them by their declared
+ * {@link ResourceCounter#resourceTypes() resource types}, usually declared with
+ * {@link CountsResource}. Counters without declared types are matched through
+ * {@link ResourceCounter#supports(Tenant, Object)}, and the outcome is memoized per
+ * resource class.</p>
  *
  * <p>Example usage:</p>
  * <pre>{@code
@@ -25,8 +29,9 @@ public interface ResourceCounterRegistry {
 	/**
 	 * Retrieves the {@link ResourceCounter} capable of counting the specified resource type.
 	 *
-	 * <p>This method iterates through all registered counters and returns the first one
-	 * where {@link ResourceCounter#supports(Tenant, Object)} returns {@code true}.</p>
+	 * <p>Counters declaring the resource class, one of its superclasses or one of its
+	 * interfaces are selected first. Otherwise, the first counter where
+	 * {@link ResourceCounter#supports(Tenant, Object)} returns {@code true} is returned.</p>
 	 *
 	 * @param tenant   the tenant requesting the quota check
 	 * @param resource the resource to count, either an instance or a {@link Class}
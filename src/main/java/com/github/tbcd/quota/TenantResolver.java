@@ -44,7 +44,11 @@ package com.github.tbcd.quota;
  * }
  * }</pre>
  *
+ * <p>Returning a {@link HierarchicalTenant} enforces the quotas of its ancestors as well,
+ * for instance those of the user's team and organization.</p>
+ *
  * @see Tenant
+ * @see HierarchicalTenant
  * @see QuotaManager
  * @see com.github.tbcd.quota.aspect.QuotaAspect
  */
@@ -0,0 +1,38 @@
+package com.github.tbcd.quota;
+
+import java.util.Collection;
+
+/**
+ * Provides the tenants whose usage and limits are preloaded when the application starts.
+ *
+ * <p>When the {@code quota.warmup.enabled} property is set, the tenants of every bean
+ * implementing this interface are warmed up together with those listed in the
+ * {@code quota.warmup.tenants} property, for each resource type of
+ * {@code quota.warmup.resources}, before the application reports itself ready.</p>
+ *
+ * <p>Example implementation:</p>
+ * <pre>{@code
+ * @Component
+ * public class ActiveTenantProvider implements WarmupTenantProvider {
+ *
+ *     private final OrganizationRepository organizationRepository;
+ *
+ *     @Override
+ *     public Collection<Tenant> getTenants() {
+ *         return organizationRepository.findActiveSince(Instant.now().minus(Duration.ofDays(1))).stream()
+ *                 .map(organization -> (Tenant) organization::getId)
+ *                 .toList();
+ *     }
+ * }
+ * }</pre>
+ */
+@FunctionalInterface
+public interface WarmupTenantProvider {
+
+	/**
+	 * Returns the tenants to warm up.
+	 *
+	 * @return the tenants
+	 */
+	Collection<Tenant> getTenants();
+}
@@ -0,0 +1,107 @@
+package com.github.tbcd.quota;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ReservableQuotaManager} extension enforcing rate quotas next to count quotas.
+ *
+ * <p>The {@link QuotaWindow} of a resource is resolved through
+ * {@link QuotaLimitResolver#resolveWindow(Tenant, Object)}, or given explicitly to the
+ * methods of this interface. Both the count quota and the window are enforced by the
+ * same call, and units are only consumed from the window when the count quota allows
+ * the operation.</p>
+ *
+ * <p>Unlike count quotas, windows are consumed by {@link #check(Tenant, Object, long)},
+ * {@link #quickCheck(Tenant, Object, long)} and {@link #checkAll(java.util.Collection)}:
+ * a check admitting an operation is the operation being counted, and its units are not
+ * given back if the operation fails. Reservations give their units back when cancelled.
+ * {@link #getState(Tenant, Object)} never consumes units.</p>
+ *
+ * @see QuotaWindow
+ */
+public interface WindowedQuotaManager extends ReservableQuotaManager {
+
+	/**
+	 * Checks the count quota and consumes the given amount from the window.
+	 *
+	 * @param tenant   the tenant requesting the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units requested
+	 * @param window   the window to enforce, or {@code null} to resolve it through the
+	 *                 {@link QuotaLimitResolver}
+	 * @return the result of the check; a {@link QuotaResult.Denied} result caused by the
+	 *         window reports the window usage and limit
+	 */
+	QuotaResult check(Tenant tenant, Object resource, long amount, QuotaWindow window);
+
+	/**
+	 * Checks every request, each with its own window.
+	 *
+	 * <p>Behaves like {@link #checkAll(java.util.Collection)}: every request is evaluated,
+	 * and the units of each allowed one are consumed from its window.</p>
+	 *
+	 * @param requests the quota checks to perform
+	 * @param windows  the window of each request, {@code null} elements resolving it
+	 *                 through the {@link QuotaLimitResolver}
+	 * @return the results, in the order of {@code requests}
+	 */
+	default List<QuotaResult> checkAll(List<QuotaRequest> requests, List<QuotaWindow> windows) {
+		List<QuotaResult> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			results.add(check(request.tenant(), request.resource(), request.amount(), windows.get(i)));
+		}
+		return results;
+	}
+
+	/**
+	 * Reserves the given amount of the count quota and consumes it from the window.
+	 *
+	 * <p>Units consumed from the window are given back when the reservation is cancelled,
+	 * as long as the window they were consumed from is still counted.</p>
+	 *
+	 * @param tenant   the tenant reserving the resource
+	 * @param resource the resource type, either an instance or a {@link Class}
+	 * @param amount   the number of units to reserve
+	 * @param timeout  the duration after which an unfinished reservation is released
+	 * @param window   the window to enforce, or {@code null} to resolve it through the
+	 *                 {@link QuotaLimitResolver}
+	 * @return the reservation, whose {@link QuotaReservation#result()} tells whether it was granted
+	 */
+	QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout, QuotaWindow window);
+
+	/**
+	 * Reserves every request, or none of them, each with its own window.
+	 *
+	 * <p>Behaves like {@link #reserveAll(List, Duration)}. The reservations of the
+	 * requests preceding a denied one are cancelled, which gives their window units back.</p>
+	 *
+	 * @param requests the reservations to take
+	 * @param windows  the window of each request, {@code null} elements resolving it
+	 *                 through the {@link QuotaLimitResolver}
+	 * @param timeout  the duration after which unfinished reservations are released
+	 * @return the reservations, in the order of {@code requests}, up to the first denied one
+	 */
+	default List<QuotaReservation> reserveAll(List<QuotaRequest> requests, List<QuotaWindow> windows, Duration timeout) {
+		List<QuotaReservation> reservations = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			QuotaReservation reservation = reserve(request.tenant(), request.resource(), request.amount(), timeout, windows.get(i));
+			if (!reservation.result().allowed()) {
+				reservations.forEach(QuotaReservation::cancel);
+				reservations.add(reservation);
+				return reservations;
+			}
+			reservations.add(reservation);
+		}
+		return reservations;
+	}
+
+	@Override
+	default List<QuotaReservation> reserveAll(List<QuotaRequest> requests, Duration timeout) {
+		return reserveAll(requests, Collections.nCopies(requests.size(), null), timeout);
+	}
+}
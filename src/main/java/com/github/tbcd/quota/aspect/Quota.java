@@ -1,7 +1,10 @@
 package com.github.tbcd.quota.aspect;
 
+import com.github.tbcd.quota.QuotaWindow;
+
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
@@ -9,6 +12,10 @@ import java.lang.annotation.Target;
 /**
  * Enforces quota limits on a method before execution.
  *
+ * <p>When the {@link com.github.tbcd.quota.QuotaManager} supports reservations, the
+ * cost is reserved before the method runs, committed when it returns and cancelled
+ * when it throws.</p>
+ *
  * <p>Usage:</p>
  * <pre>{@code
  * @Quota(resource = "#recipe")
@@ -25,12 +32,34 @@ import java.lang.annotation.Target;
  * }
  * }</pre>
  *
+ * <p>With a rate quota of 100 exports per hour:</p>
+ * <pre>{@code
+ * @Quota(resource = "T(com.example.Export)", rateLimit = 100, ratePeriod = "1h")
+ * public byte[] export(Long recipeBookId) {
+ *     return exportService.export(recipeBookId);
+ * }
+ * }</pre>
+ *
+ * <p>For a bulk import, charging one unit per recipe and allowing 10 imports per hour:</p>
+ * <pre>{@code
+ * @Quota(resource = "#recipes")
+ * @Quota(resource = "T(com.example.RecipeImport)", rateLimit = 10, ratePeriod = "1h")
+ * public void importRecipes(RecipeBook recipeBook, List<Recipe> recipes) {
+ *     recipeService.importAll(recipeBook, recipes);
+ * }
+ * }</pre>
+ *
+ * <p>All the quotas of a method are reserved together, through a single call to the
+ * {@link com.github.tbcd.quota.QuotaManager}, and the method only runs if every one of
+ * them allows it.</p>
+ *
  * @see QuotaAspect
  * @see QuotaExceededException
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
+@Repeatable(Quotas.class)
 public @interface Quota {
 
 	/**
@@ -43,6 +72,10 @@ public @interface Quota {
 	 *   <li>{@code "#request.getRecipe()"} - method call</li>
 	 * </ul>
 	 *
+	 * <p>When the expression resolves to a collection or an array, its elements are
+	 * grouped by class and each group is charged the cost of every element it
+	 * holds.</p>
+	 *
 	 * @return the SpEL expression
 	 */
 	String resource();
@@ -57,12 +90,45 @@ public @interface Quota {
 	String tenant() default "";
 
 	/**
-	 * The quota cost of the operation.
+	 * The quota cost of the operation, or of each element of a collection resource.
 	 *
 	 * @return the number of quota units consumed, defaults to 1
 	 */
 	long cost() default 1;
 
+	/**
+	 * SpEL expression resolving the cost to a number, such as {@code "#items.size()"}.
+	 * Takes precedence over {@link #cost()} when set.
+	 *
+	 * @return the SpEL expression, or empty to use {@link #cost()}
+	 */
+	String costExpression() default "";
+
+	/**
+	 * Number of units allowed per {@link #ratePeriod()}.
+	 *
+	 * <p>When set, the window takes precedence over the one resolved by the
+	 * {@link com.github.tbcd.quota.QuotaLimitResolver} and requires a
+	 * {@link com.github.tbcd.quota.WindowedQuotaManager}.</p>
+	 *
+	 * @return the rate limit, or a negative value to use the resolved window, which is the default
+	 */
+	long rateLimit() default -1;
+
+	/**
+	 * Length of the rate window, such as {@code "1h"} or {@code "PT30S"}.
+	 *
+	 * @return the rate period, defaults to one hour
+	 */
+	String ratePeriod() default "1h";
+
+	/**
+	 * Algorithm enforcing the rate window.
+	 *
+	 * @return the window type, defaults to {@link QuotaWindow.Type#SLIDING}
+	 */
+	QuotaWindow.Type rateWindow() default QuotaWindow.Type.SLIDING;
+
 	/**
 	 * Custom error message when quota is exceeded.
 	 *
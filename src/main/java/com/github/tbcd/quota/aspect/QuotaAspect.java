@@ -1,83 +1,296 @@
 package com.github.tbcd.quota.aspect;
 
 import com.github.tbcd.quota.QuotaManager;
+import com.github.tbcd.quota.QuotaMetrics;
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaReservation;
 import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.ReservableQuotaManager;
 import com.github.tbcd.quota.Tenant;
 import com.github.tbcd.quota.TenantResolver;
+import com.github.tbcd.quota.WindowedQuotaManager;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
-import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Aspect
 public class QuotaAspect {
 
+	private static final Log logger = LogFactory.getLog(QuotaAspect.class);
+
 	private final QuotaManager quotaManager;
 	private final TenantResolver tenantResolver;
-	private final ExpressionParser expressionParser = new SpelExpressionParser();
-	private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+	private final ExpressionParser expressionParser = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, QuotaAspect.class.getClassLoader()));
+	private final ParameterNameDiscoverer parameterNameDiscoverer;
+	private final Map<Method, List<AnnotatedPlan>> plans = new ConcurrentHashMap<>();
+	private Duration reservationTimeout = Duration.ofSeconds(30);
+	private boolean reserve = true;
+	private QuotaMetrics metrics = QuotaMetrics.NOOP;
 
 	public QuotaAspect(QuotaManager quotaManager,
 					   TenantResolver tenantResolver
+	) {
+		this(quotaManager, tenantResolver, new DefaultParameterNameDiscoverer());
+	}
+
+	QuotaAspect(QuotaManager quotaManager,
+				TenantResolver tenantResolver,
+				ParameterNameDiscoverer parameterNameDiscoverer
 	) {
 		this.quotaManager = quotaManager;
 		this.tenantResolver = tenantResolver;
+		this.parameterNameDiscoverer = parameterNameDiscoverer;
 	}
 
-	@Before("@annotation(quota)")
-	public void checkResourceQuota(JoinPoint joinPoint, Quota quota) {
-		Tenant tenant = resolveTenant(joinPoint, quota);
-		Object resource = evaluateExpression(joinPoint, quota.resource());
-		long cost = quota.cost();
+	public void setReservationTimeout(Duration reservationTimeout) {
+		this.reservationTimeout = reservationTimeout;
+	}
 
-		QuotaResult result = quotaManager.check(tenant, resource, cost);
+	/**
+	 * Sets whether the amount of a {@link ReservableQuotaManager} is reserved until the
+	 * annotated method returns. When disabled, quotas are only checked, through
+	 * {@link QuotaManager#quickCheck(Tenant, Object, long)} for a single quota, which is
+	 * cheaper but lets concurrent calls exceed the limit. Rate windows then keep the units
+	 * of calls that fail, however many quotas the method declares.
+	 */
+	public void setReserve(boolean reserve) {
+		this.reserve = reserve;
+	}
 
-		if (!result.allowed()) {
-			String resourceName = resource.getClass().getSimpleName();
-			String message = quota.message().isEmpty() ? "Quota exceeded for " + resourceName : quota.message();
-			throw new QuotaExceededException(message, resourceName, result.state().getUsed(), result.state().getLimit());
+	public void setMetrics(QuotaMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Around("@annotation(quota)")
+	public Object checkResourceQuota(ProceedingJoinPoint joinPoint, Quota quota) throws Throwable {
+		return enforce(joinPoint, getPlans(joinPoint, quota));
+	}
+
+	@Around("@annotation(quotas)")
+	public Object checkResourceQuotas(ProceedingJoinPoint joinPoint, Quotas quotas) throws Throwable {
+		return enforce(joinPoint, getPlans(joinPoint, quotas.value()));
+	}
+
+	/**
+	 * Evaluates every quota of the method, expanding collection resources into one
+	 * request per element class, and submits them to the quota manager together.
+	 */
+	private Object enforce(ProceedingJoinPoint joinPoint, List<AnnotatedPlan> annotatedPlans) throws Throwable {
+		QuotaEvaluationEvent event = new QuotaEvaluationEvent();
+		event.begin();
+		boolean traced = event.isEnabled();
+		long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+		Object[] args = joinPoint.getArgs();
+		List<QuotaRequest> requests = new ArrayList<>(annotatedPlans.size());
+		List<QuotaWindow> windows = new ArrayList<>(annotatedPlans.size());
+		List<Quota> owners = new ArrayList<>(annotatedPlans.size());
+		boolean windowed = false;
+		try {
+			for (AnnotatedPlan annotatedPlan : annotatedPlans) {
+				QuotaInvocationPlan plan = annotatedPlan.plan();
+				QuotaInvocationPlan.Invocation invocation = plan.bind(args);
+				long resolving = traced ? System.nanoTime() : 0;
+				Tenant tenant = invocation.resolveTenant(tenantResolver);
+				long evaluating = traced ? System.nanoTime() : 0;
+				int added = expand(requests, tenant, invocation.resolveResource(), invocation.resolveCost());
+				if (traced) {
+					event.tenantResolution += evaluating - resolving;
+					event.expressionEvaluation += System.nanoTime() - evaluating;
+				}
+				for (int i = 0; i < added; i++) {
+					windows.add(plan.window());
+					owners.add(annotatedPlan.quota());
+				}
+				windowed |= plan.window() != null;
+			}
+		} catch (RuntimeException e) {
+			event.fail(joinPoint.getSignature(), requests);
+			throw e;
+		}
+
+		if (requests.isEmpty()) {
+			return joinPoint.proceed();
+		}
+		try {
+			if (requests.size() == 1) {
+				return enforce(joinPoint, requests, windows.getFirst(), owners.getFirst(), event, start);
+			}
+			return enforceAll(joinPoint, requests, windows, owners, windowed, event, start);
+		} catch (Throwable e) {
+			event.fail(joinPoint.getSignature(), requests);
+			throw e;
+		}
+	}
+
+	private Object enforceAll(ProceedingJoinPoint joinPoint, List<QuotaRequest> requests, List<QuotaWindow> windows,
+							  List<Quota> owners, boolean windowed, QuotaEvaluationEvent event, long start
+	) throws Throwable {
+		List<QuotaReservation> reservations;
+		if (reserve && windowed) {
+			reservations = requireWindowed().reserveAll(requests, windows, reservationTimeout);
+		} else if (reserve && quotaManager instanceof ReservableQuotaManager reservableQuotaManager) {
+			reservations = reservableQuotaManager.reserveAll(requests, reservationTimeout);
+		} else {
+			List<QuotaResult> results = windowed ? requireWindowed().checkAll(requests, windows) : quotaManager.checkAll(requests);
+			QuotaResult outcome = results.stream().filter(result -> !result.allowed()).findFirst().orElse(results.getFirst());
+			recordEvaluations(joinPoint, requests, outcome, event, start);
+			for (int i = 0; i < results.size(); i++) {
+				ensureAllowed(results.get(i), requests.get(i).resource(), owners.get(i));
+			}
+			return joinPoint.proceed();
 		}
+		int last = reservations.size() - 1;
+		recordEvaluations(joinPoint, requests, reservations.get(last).result(), event, start);
+		ensureAllowed(reservations.get(last).result(), requests.get(last).resource(), owners.get(last));
+
+		Object returnValue;
+		try {
+			returnValue = joinPoint.proceed();
+		} catch (Throwable e) {
+			reservations.forEach(QuotaReservation::cancel);
+			throw e;
+		}
+		boolean committed = true;
+		for (QuotaReservation reservation : reservations) {
+			committed &= reservation.commit();
+		}
+		if (!committed) {
+			warnExpired(joinPoint);
+		}
+		return returnValue;
 	}
 
-	private Tenant resolveTenant(JoinPoint joinPoint, Quota quota) {
-		String tenantExpr = quota.tenant();
+	private Object enforce(ProceedingJoinPoint joinPoint, List<QuotaRequest> requests, QuotaWindow window, Quota quota,
+						   QuotaEvaluationEvent event, long start
+	) throws Throwable {
+		QuotaRequest request = requests.getFirst();
+		Tenant tenant = request.tenant();
+		Object resource = request.resource();
+		long cost = request.amount();
 
-		if (tenantExpr == null || tenantExpr.isEmpty()) {
-			return tenantResolver.resolve();
+		if (window != null && !reserve) {
+			QuotaResult result = requireWindowed().check(tenant, resource, cost, window);
+			recordEvaluations(joinPoint, requests, result, event, start);
+			ensureAllowed(result, resource, quota);
+			return joinPoint.proceed();
+		}
+		if (window != null) {
+			QuotaReservation reservation = requireWindowed().reserve(tenant, resource, cost, reservationTimeout, window);
+			recordEvaluations(joinPoint, requests, reservation.result(), event, start);
+			return proceed(joinPoint, reservation, resource, quota);
 		}
 
-		Object result = evaluateExpression(joinPoint, tenantExpr);
+		if (!reserve || !(quotaManager instanceof ReservableQuotaManager reservableQuotaManager)) {
+			QuotaResult result = quotaManager.quickCheck(tenant, resource, cost);
+			recordEvaluations(joinPoint, requests, result, event, start);
+			ensureAllowed(result, resource, quota);
+			return joinPoint.proceed();
+		}
 
-		if (result == null) {
-			throw new IllegalArgumentException("Tenant expression resolved to null");
+		QuotaReservation reservation = reservableQuotaManager.reserve(tenant, resource, cost, reservationTimeout);
+		recordEvaluations(joinPoint, requests, reservation.result(), event, start);
+		return proceed(joinPoint, reservation, resource, quota);
+	}
+
+	private WindowedQuotaManager requireWindowed() {
+		if (!(quotaManager instanceof WindowedQuotaManager windowedQuotaManager)) {
+			throw new IllegalStateException("Rate limits declared by @Quota require a WindowedQuotaManager");
 		}
+		return windowedQuotaManager;
+	}
 
-		if (result instanceof Tenant tenant) {
-			return tenant;
+	/**
+	 * Adds the request of a resource, or one request per element class of a collection or
+	 * array resource, charged {@code cost} per element.
+	 *
+	 * @return the number of requests added
+	 */
+	private static int expand(List<QuotaRequest> requests, Tenant tenant, Object resource, long cost) {
+		Collection<?> elements = resource instanceof Collection<?> collection ? collection
+				: resource instanceof Object[] array ? Arrays.asList(array) : null;
+		if (elements == null) {
+			requests.add(new QuotaRequest(tenant, resource, cost));
+			return 1;
 		}
 
-		return () -> result;
+		Map<Class<?>, Long> amounts = new LinkedHashMap<>();
+		for (Object element : elements) {
+			if (element != null) {
+				amounts.merge(element.getClass(), cost, Long::sum);
+			}
+		}
+		amounts.forEach((type, amount) -> requests.add(new QuotaRequest(tenant, type, amount)));
+		return amounts.size();
 	}
 
-	private Object evaluateExpression(JoinPoint joinPoint, String expression) {
-		MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-		String[] parameterNames = parameterNameDiscoverer.getParameterNames(signature.getMethod());
-		Object[] args = joinPoint.getArgs();
+	private Object proceed(ProceedingJoinPoint joinPoint, QuotaReservation reservation, Object resource, Quota quota) throws Throwable {
+		ensureAllowed(reservation.result(), resource, quota);
+
+		Object returnValue;
+		try {
+			returnValue = joinPoint.proceed();
+		} catch (Throwable e) {
+			reservation.cancel();
+			throw e;
+		}
+		if (!reservation.commit()) {
+			warnExpired(joinPoint);
+		}
+		return returnValue;
+	}
 
-		EvaluationContext context = new StandardEvaluationContext();
+	private static void warnExpired(JoinPoint joinPoint) {
+		logger.warn("Quota reservation for " + joinPoint.getSignature().toShortString()
+				+ " expired before the method returned; usage may exceed the limit, consider raising the reservation timeout");
+	}
 
-		if (parameterNames != null) {
-			for (int i = 0; i < parameterNames.length; i++) {
-				context.setVariable(parameterNames[i], args[i]);
+	private void recordEvaluations(JoinPoint joinPoint, List<QuotaRequest> requests, QuotaResult result, QuotaEvaluationEvent event, long start) {
+		event.complete(joinPoint.getSignature(), requests, result);
+		if (metrics != QuotaMetrics.NOOP) {
+			long elapsed = System.nanoTime() - start;
+			for (QuotaRequest request : requests) {
+				metrics.recordEvaluation(request.resource(), elapsed);
 			}
 		}
+	}
+
+	private void ensureAllowed(QuotaResult result, Object resource, Quota quota) {
+		if (!result.allowed()) {
+			String resourceName = resource instanceof Class<?> type ? type.getSimpleName() : resource.getClass().getSimpleName();
+			String message = quota.message().isEmpty() ? "Quota exceeded for " + resourceName : quota.message();
+			throw new QuotaExceededException(message, resourceName, result.state().getUsed(), result.state().getLimit());
+		}
+	}
+
+	private List<AnnotatedPlan> getPlans(JoinPoint joinPoint, Quota... quotas) {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		return plans.computeIfAbsent(method, m -> Arrays.stream(quotas)
+				.map(quota -> new AnnotatedPlan(quota, QuotaInvocationPlan.create(m, quota, expressionParser, parameterNameDiscoverer)))
+				.toList());
+	}
 
-		return expressionParser.parseExpression(expression).getValue(context);
+	private record AnnotatedPlan(Quota quota, QuotaInvocationPlan plan) {
 	}
 }
\ No newline at end of file
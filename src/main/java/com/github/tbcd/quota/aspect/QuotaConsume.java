@@ -0,0 +1,57 @@
+package com.github.tbcd.quota.aspect;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Increments the tracked usage of a resource after the method returns successfully.
+ *
+ * <p>Usage is maintained by the {@link com.github.tbcd.quota.impl.InMemoryResourceCounter},
+ * so that quota checks read it instead of counting resources. Resource types the counter
+ * does not track are ignored. Methods annotated with {@link Quota} do not need this
+ * annotation when the quota manager already acquires the usage of the resource, as the
+ * {@link com.github.tbcd.quota.impl.InMemoryQuotaManager} does.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>{@code
+ * @QuotaConsume(resource = "#result")
+ * public Recipe importRecipe(RecipeImport recipeImport) {
+ *     return recipeRepository.save(recipeImport.toRecipe());
+ * }
+ * }</pre>
+ *
+ * @see QuotaRelease
+ * @see QuotaUsageAspect
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface QuotaConsume {
+
+	/**
+	 * SpEL expression to resolve the resource. The return value is available as
+	 * {@code #result}.
+	 *
+	 * @return the SpEL expression
+	 */
+	String resource();
+
+	/**
+	 * SpEL expression to resolve the tenant.
+	 *
+	 * <p>If empty, the default {@link com.github.tbcd.quota.TenantResolver} is used.</p>
+	 *
+	 * @return the SpEL expression, or empty to use the default TenantResolver
+	 */
+	String tenant() default "";
+
+	/**
+	 * The number of units consumed by the operation.
+	 *
+	 * @return the number of units, defaults to 1
+	 */
+	long amount() default 1;
+}
@@ -0,0 +1,99 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaResult;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import org.aspectj.lang.Signature;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Flight recorder event covering the evaluation of the {@link Quota} annotations of a
+ * method, from the evaluation of their expressions to the decision of the quota manager.
+ *
+ * <p>The time spent resolving limits and counting usage is reported by the
+ * {@code com.github.tbcd.quota.LimitResolution} and {@code com.github.tbcd.quota.Count}
+ * events recorded during the evaluation. Only evaluations lasting longer than the
+ * threshold are recorded; it can be changed like that of JDK events, for instance with
+ * {@code -XX:StartFlightRecording:com.github.tbcd.quota.Evaluation#threshold=0ms}.</p>
+ */
+@Name("com.github.tbcd.quota.Evaluation")
+@Label("Quota Evaluation")
+@Category("Quota")
+@Description("Evaluation of the quotas of an annotated method")
+@Threshold("1 ms")
+final class QuotaEvaluationEvent extends Event {
+
+	@Label("Method")
+	String method;
+
+	@Label("Resource Type")
+	@Description("Resource types of the requests, several if the method has several quotas or a collection resource")
+	String resourceType;
+
+	@Label("Outcome")
+	String outcome;
+
+	@Label("Cost")
+	@Description("Total amount requested")
+	long cost;
+
+	@Label("Expression Evaluation")
+	@Timespan(Timespan.NANOSECONDS)
+	long expressionEvaluation;
+
+	@Label("Tenant Resolution")
+	@Timespan(Timespan.NANOSECONDS)
+	long tenantResolution;
+
+	private transient boolean completed;
+
+	/**
+	 * Ends the event and commits it if it lasted longer than the threshold.
+	 *
+	 * @param result the result of the denied request, or of any request if all were allowed
+	 */
+	void complete(Signature method, List<QuotaRequest> requests, QuotaResult result) {
+		complete(method, requests, !result.allowed() ? "DENIED" : result instanceof QuotaResult.NoQuota ? "NO_QUOTA" : "ALLOWED");
+	}
+
+	/**
+	 * Ends the event with a {@code FAILED} outcome unless it already completed, when the
+	 * evaluation threw.
+	 *
+	 * @param requests the requests evaluated so far
+	 */
+	void fail(Signature method, List<QuotaRequest> requests) {
+		if (!completed) {
+			complete(method, requests, "FAILED");
+		}
+	}
+
+	private void complete(Signature method, List<QuotaRequest> requests, String outcome) {
+		completed = true;
+		end();
+		if (!shouldCommit()) {
+			return;
+		}
+
+		StringJoiner resourceTypes = new StringJoiner(", ");
+		long totalCost = 0;
+		for (QuotaRequest request : requests) {
+			Object resource = request.resource();
+			resourceTypes.add(resource instanceof Class<?> type ? type.getSimpleName() : resource.getClass().getSimpleName());
+			totalCost += request.amount();
+		}
+		this.method = method.toShortString();
+		this.resourceType = resourceTypes.toString();
+		this.cost = totalCost;
+		this.outcome = outcome;
+		commit();
+	}
+}
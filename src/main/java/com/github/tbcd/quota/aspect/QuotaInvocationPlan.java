@@ -0,0 +1,202 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.TenantResolver;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled view of a method annotated with {@link Quota},
+ * {@link QuotaConsume} or {@link QuotaRelease}.
+ *
+ * <p>Plans are built once per annotation of a {@link Method} by the {@link QuotaAspect}
+ * and the {@link QuotaUsageAspect} and hold the parsed SpEL expressions together with
+ * the discovered parameter names. Expressions that only reference a method parameter,
+ * such as {@code "#recipe"}, bypass SpEL and read the argument directly. The return
+ * value is available as {@code #result} once the method has returned, unless a
+ * parameter is named {@code result}.</p>
+ */
+final class QuotaInvocationPlan {
+
+	private static final Pattern PARAMETER_REFERENCE = Pattern.compile("^\\s*#([A-Za-z_$][A-Za-z0-9_$]*)\\s*$");
+
+	private final String[] parameterNames;
+	private final boolean resultParameter;
+	private final ArgumentExpression resource;
+	private final ArgumentExpression tenant;
+	private final QuotaWindow window;
+	private final long cost;
+	private final ArgumentExpression costExpression;
+
+	private QuotaInvocationPlan(String[] parameterNames, ArgumentExpression resource, ArgumentExpression tenant, QuotaWindow window,
+								long cost, ArgumentExpression costExpression
+	) {
+		this.parameterNames = parameterNames;
+		this.resultParameter = Arrays.asList(parameterNames).contains("result");
+		this.resource = resource;
+		this.tenant = tenant;
+		this.window = window;
+		this.cost = cost;
+		this.costExpression = costExpression;
+	}
+
+	static QuotaInvocationPlan create(Method method, Quota quota, ExpressionParser parser, ParameterNameDiscoverer parameterNameDiscoverer) {
+		QuotaWindow window = quota.rateLimit() < 0 ? null
+				: new QuotaWindow(quota.rateWindow(), quota.rateLimit(), DurationStyle.detectAndParse(quota.ratePeriod()));
+
+		return create(method, quota.resource(), quota.tenant(), window, quota.cost(), quota.costExpression(), parser, parameterNameDiscoverer);
+	}
+
+	static QuotaInvocationPlan create(Method method, String resourceExpr, String tenantExpr, QuotaWindow window,
+									  ExpressionParser parser, ParameterNameDiscoverer parameterNameDiscoverer
+	) {
+		return create(method, resourceExpr, tenantExpr, window, 1, null, parser, parameterNameDiscoverer);
+	}
+
+	private static QuotaInvocationPlan create(Method method, String resourceExpr, String tenantExpr, QuotaWindow window,
+											  long cost, String costExpr, ExpressionParser parser, ParameterNameDiscoverer parameterNameDiscoverer
+	) {
+		if (cost < 0) {
+			throw new IllegalArgumentException("Cost of " + method + " must not be negative: " + cost);
+		}
+
+		String[] parameterNames = parameterNameDiscoverer.getParameterNames(method);
+		if (parameterNames == null) {
+			parameterNames = new String[0];
+		}
+
+		ArgumentExpression resource = compile(resourceExpr, parameterNames, parser);
+		ArgumentExpression tenant = tenantExpr == null || tenantExpr.isEmpty() ? null : compile(tenantExpr, parameterNames, parser);
+		ArgumentExpression costExpression = costExpr == null || costExpr.isEmpty() ? null : compile(costExpr, parameterNames, parser);
+
+		return new QuotaInvocationPlan(parameterNames, resource, tenant, window, cost, costExpression);
+	}
+
+	/**
+	 * Returns the rate window declared by the annotation.
+	 *
+	 * @return the window, or {@code null} to use the one resolved by the limit resolver
+	 */
+	QuotaWindow window() {
+		return window;
+	}
+
+	Invocation bind(Object[] args) {
+		return new Invocation(args, null, false);
+	}
+
+	Invocation bind(Object[] args, Object result) {
+		return new Invocation(args, result, true);
+	}
+
+	private static ArgumentExpression compile(String expression, String[] parameterNames, ExpressionParser parser) {
+		Matcher matcher = PARAMETER_REFERENCE.matcher(expression);
+		if (matcher.matches()) {
+			String name = matcher.group(1);
+			for (int i = 0; i < parameterNames.length; i++) {
+				if (parameterNames[i].equals(name)) {
+					int index = i;
+					return invocation -> invocation.args[index];
+				}
+			}
+		}
+
+		Expression parsed = parser.parseExpression(expression);
+		return invocation -> parsed.getValue(invocation.context());
+	}
+
+	@FunctionalInterface
+	private interface ArgumentExpression {
+
+		Object evaluate(Invocation invocation);
+	}
+
+	/**
+	 * Arguments of a single intercepted call, with a lazily created evaluation context
+	 * shared by every expression of the plan.
+	 */
+	final class Invocation {
+
+		private final Object[] args;
+		private final Object result;
+		private final boolean returned;
+		private EvaluationContext context;
+
+		private Invocation(Object[] args, Object result, boolean returned) {
+			this.args = args;
+			this.result = result;
+			this.returned = returned;
+		}
+
+		Object resolveResource() {
+			return resource.evaluate(this);
+		}
+
+		/**
+		 * Evaluates the cost expression, or returns the declared cost when there is none.
+		 *
+		 * @throws IllegalArgumentException if the expression resolves to a negative cost
+		 */
+		long resolveCost() {
+			if (costExpression == null) {
+				return cost;
+			}
+
+			Object value = costExpression.evaluate(this);
+			if (!(value instanceof Number number)) {
+				throw new IllegalArgumentException("Cost expression must resolve to a number: " + value);
+			}
+			long cost = number.longValue();
+			if (cost < 0) {
+				throw new IllegalArgumentException("Cost expression must not resolve to a negative number: " + value);
+			}
+			return cost;
+		}
+
+		/**
+		 * Evaluates the tenant expression, or asks the given resolver when the annotation
+		 * declares none.
+		 */
+		Tenant resolveTenant(TenantResolver tenantResolver) {
+			if (tenant == null) {
+				return tenantResolver.resolve();
+			}
+
+			Object value = tenant.evaluate(this);
+
+			if (value == null) {
+				throw new IllegalArgumentException("Tenant expression resolved to null");
+			}
+
+			if (value instanceof Tenant resolved) {
+				return resolved;
+			}
+
+			return () -> value;
+		}
+
+		private EvaluationContext context() {
+			if (context == null) {
+				StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
+				for (int i = 0; i < parameterNames.length && i < args.length; i++) {
+					evaluationContext.setVariable(parameterNames[i], args[i]);
+				}
+				if (returned && !resultParameter) {
+					evaluationContext.setVariable("result", result);
+				}
+				context = evaluationContext;
+			}
+			return context;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.github.tbcd.quota.aspect;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Decrements the tracked usage of a resource after the method returns successfully.
+ *
+ * <p>Pairs with {@link QuotaConsume} and with quota managers acquiring usage, such as the
+ * {@link com.github.tbcd.quota.impl.InMemoryQuotaManager}, on methods deleting resources.
+ * Usage never drops below zero, and resource types the
+ * {@link com.github.tbcd.quota.impl.InMemoryResourceCounter} does not track are ignored.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>{@code
+ * @QuotaRelease(resource = "T(com.example.Recipe)")
+ * public void deleteRecipe(Long recipeId) {
+ *     recipeRepository.deleteById(recipeId);
+ * }
+ * }</pre>
+ *
+ * @see QuotaConsume
+ * @see QuotaUsageAspect
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface QuotaRelease {
+
+	/**
+	 * SpEL expression to resolve the resource.
+	 *
+	 * @return the SpEL expression
+	 */
+	String resource();
+
+	/**
+	 * SpEL expression to resolve the tenant.
+	 *
+	 * <p>If empty, the default {@link com.github.tbcd.quota.TenantResolver} is used.</p>
+	 *
+	 * @return the SpEL expression, or empty to use the default TenantResolver
+	 */
+	String tenant() default "";
+
+	/**
+	 * The number of units released by the operation.
+	 *
+	 * @return the number of units, defaults to 1
+	 */
+	long amount() default 1;
+}
@@ -0,0 +1,99 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.HierarchicalTenant;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.TenantResolver;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import com.github.tbcd.quota.internal.TransactionCallbacks;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Maintains the usage tracked by an {@link InMemoryResourceCounter} from
+ * {@link QuotaConsume} and {@link QuotaRelease} annotated methods.
+ *
+ * <p>Quota checks of tracked resource types then read the maintained usage, and the
+ * seed counter of the {@link InMemoryResourceCounter} is only used to initialize and
+ * reconcile it. The usage of every ancestor of a
+ * {@link HierarchicalTenant} is maintained as well, for the levels the counter tracks.</p>
+ *
+ * <p>When the method runs within a Spring transaction, the usage is only changed once
+ * the transaction commits, so that rolled back operations are not counted.</p>
+ *
+ * @see QuotaAspect
+ */
+@Aspect
+public class QuotaUsageAspect {
+
+	private final InMemoryResourceCounter counter;
+	private final TenantResolver tenantResolver;
+	private final ExpressionParser expressionParser = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, QuotaUsageAspect.class.getClassLoader()));
+	private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+	private final Map<Method, QuotaInvocationPlan> consumePlans = new ConcurrentHashMap<>();
+	private final Map<Method, QuotaInvocationPlan> releasePlans = new ConcurrentHashMap<>();
+
+	public QuotaUsageAspect(InMemoryResourceCounter counter,
+							TenantResolver tenantResolver
+	) {
+		this.counter = counter;
+		this.tenantResolver = tenantResolver;
+	}
+
+	@AfterReturning(pointcut = "@annotation(quotaConsume)", returning = "result")
+	public void consume(JoinPoint joinPoint, QuotaConsume quotaConsume, Object result) {
+		QuotaInvocationPlan.Invocation invocation = getPlan(consumePlans, joinPoint, quotaConsume.resource(), quotaConsume.tenant())
+				.bind(joinPoint.getArgs(), result);
+		Object resource = invocation.resolveResource();
+		Tenant tenant = invocation.resolveTenant(tenantResolver);
+
+		apply(tenant, resource, level -> counter.add(level, resource, quotaConsume.amount()));
+	}
+
+	@AfterReturning(pointcut = "@annotation(quotaRelease)", returning = "result")
+	public void release(JoinPoint joinPoint, QuotaRelease quotaRelease, Object result) {
+		QuotaInvocationPlan.Invocation invocation = getPlan(releasePlans, joinPoint, quotaRelease.resource(), quotaRelease.tenant())
+				.bind(joinPoint.getArgs(), result);
+		Object resource = invocation.resolveResource();
+		Tenant tenant = invocation.resolveTenant(tenantResolver);
+
+		apply(tenant, resource, level -> counter.release(level, resource, quotaRelease.amount()));
+	}
+
+	/**
+	 * Applies the change to every tracked level of the tenant, after the commit of the
+	 * current transaction if there is one.
+	 */
+	private void apply(Tenant tenant, Object resource, Consumer<Tenant> change) {
+		List<Tenant> levels = HierarchicalTenant.lineage(tenant).stream().filter(level -> counter.supports(level, resource)).toList();
+		if (levels.isEmpty()) {
+			return;
+		}
+
+		Runnable update = () -> levels.forEach(change);
+		if (!TransactionCallbacks.afterCommit(update)) {
+			update.run();
+		}
+	}
+
+	private QuotaInvocationPlan getPlan(Map<Method, QuotaInvocationPlan> plans, JoinPoint joinPoint, String resource, String tenant) {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		return plans.computeIfAbsent(method,
+				m -> QuotaInvocationPlan.create(m, resource, tenant, null, expressionParser, parameterNameDiscoverer));
+	}
+
+}
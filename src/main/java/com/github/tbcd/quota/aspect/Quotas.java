@@ -0,0 +1,25 @@
+package com.github.tbcd.quota.aspect;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Container of the {@link Quota} annotations repeated on a method.
+ *
+ * @see Quota
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Quotas {
+
+	/**
+	 * The quotas enforced on the method.
+	 *
+	 * @return the quotas
+	 */
+	Quota[] value();
+}
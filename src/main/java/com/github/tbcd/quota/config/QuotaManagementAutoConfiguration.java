@@ -2,24 +2,95 @@ package com.github.tbcd.quota.config;
 
 import com.github.tbcd.quota.*;
 import com.github.tbcd.quota.aspect.QuotaAspect;
+import com.github.tbcd.quota.aspect.QuotaUsageAspect;
+import com.github.tbcd.quota.impl.CachingResourceCounterRegistry;
+import com.github.tbcd.quota.impl.CoalescingResourceCounterRegistry;
+import com.github.tbcd.quota.impl.DefaultAsyncQuotaManager;
 import com.github.tbcd.quota.impl.DefaultQuotaManager;
 import com.github.tbcd.quota.impl.DefaultResourceCounterRegistry;
 import com.github.tbcd.quota.impl.EmptyQuotaLimitResolver;
+import com.github.tbcd.quota.impl.GuardedResourceCounterRegistry;
+import com.github.tbcd.quota.impl.InMemoryQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import com.github.tbcd.quota.impl.LatencyGuard;
+import com.github.tbcd.quota.impl.LeasingQuotaManager;
+import com.github.tbcd.quota.impl.MicrometerQuotaMetrics;
 import com.github.tbcd.quota.impl.NullTenantResolver;
+import com.github.tbcd.quota.impl.QuotaWarmup;
+import com.github.tbcd.quota.impl.ResourceCounterTypes;
+import com.github.tbcd.quota.impl.UsageSnapshotPersistence;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 @AutoConfiguration
+@EnableConfigurationProperties(QuotaManagementProperties.class)
 public class QuotaManagementAutoConfiguration {
 
+	/**
+	 * Guard of the resource counters, a bean so that its executor is closed with the context.
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "quota.counter-guard", name = "enabled", havingValue = "true")
+	public LatencyGuard quotaCounterGuard(QuotaManagementProperties properties) {
+		return latencyGuard(properties.getCounterGuard());
+	}
+
+	/**
+	 * Guard of the quota limit resolver, a bean so that its executor is closed with the context.
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "quota.limit-guard", name = "enabled", havingValue = "true")
+	public LatencyGuard quotaLimitGuard(QuotaManagementProperties properties) {
+		return latencyGuard(properties.getLimitGuard());
+	}
+
+	/**
+	 * Resource types of the counters of this context, registered by the code generated by
+	 * Spring AOT.
+	 */
 	@Bean
 	@ConditionalOnMissingBean
-	public ResourceCounterRegistry resourceCounterRegistry(@Lazy List<ResourceCounter> resourceCounters) {
-		return new DefaultResourceCounterRegistry(resourceCounters);
+	public ResourceCounterTypes resourceCounterTypes() {
+		return new ResourceCounterTypes();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public ResourceCounterRegistry resourceCounterRegistry(ObjectProvider<ResourceCounter> resourceCounters,
+														   ResourceCounterTypes resourceCounterTypes,
+														   @Qualifier("quotaCounterGuard") ObjectProvider<LatencyGuard> quotaCounterGuard,
+														   QuotaManagementProperties properties
+	) {
+		ResourceCounterRegistry registry = new DefaultResourceCounterRegistry(resourceCounters, resourceCounterTypes);
+		LatencyGuard counterGuard = quotaCounterGuard.getIfAvailable();
+		if (counterGuard != null) {
+			registry = new GuardedResourceCounterRegistry(registry, counterGuard, properties.getCounterGuard().getMaximumSize());
+		}
+		if (properties.getCountCoalescing().isEnabled()) {
+			registry = new CoalescingResourceCounterRegistry(registry);
+		}
+		QuotaManagementProperties.UsageCache usageCache = properties.getUsageCache();
+		if (!usageCache.isEnabled()) {
+			return registry;
+		}
+		return new CachingResourceCounterRegistry(registry, usageCache.getMaximumSize(), usageCache::getTtl);
 	}
 
 	@Bean
@@ -28,10 +99,68 @@ public class QuotaManagementAutoConfiguration {
 		return new EmptyQuotaLimitResolver();
 	}
 
+	/**
+	 * Primary so that injecting a {@link com.github.tbcd.quota.QuotaCacheInvalidator}
+	 * yields the quota manager, which invalidates the counter and limit caches as well.
+	 */
+	@Bean
+	@Primary
+	@ConditionalOnMissingBean
+	public QuotaManager quotaManager(ResourceCounterRegistry resourceCounterRegistry,
+									 QuotaLimitResolver quotaLimitResolver,
+									 ObjectProvider<InMemoryResourceCounter> inMemoryResourceCounter,
+									 ObjectProvider<QuotaStore> quotaStore,
+									 ObjectProvider<QuotaMetrics> quotaMetrics,
+									 @Qualifier("quotaLimitGuard") ObjectProvider<LatencyGuard> quotaLimitGuard,
+									 QuotaManagementProperties properties
+	) {
+		QuotaStore store = quotaStore.getIfUnique();
+		InMemoryResourceCounter counter = inMemoryResourceCounter.getIfUnique();
+		DefaultQuotaManager quotaManager;
+		if (store != null) {
+			QuotaManagementProperties.Lease lease = properties.getLease();
+			quotaManager = new LeasingQuotaManager(resourceCounterRegistry, quotaLimitResolver, store, lease.getSize(), lease.getDuration());
+		} else if (counter != null) {
+			quotaManager = new InMemoryQuotaManager(resourceCounterRegistry, quotaLimitResolver, counter);
+		} else {
+			quotaManager = new DefaultQuotaManager(resourceCounterRegistry, quotaLimitResolver);
+		}
+		quotaManager.setMetrics(quotaMetrics.getIfUnique(() -> QuotaMetrics.NOOP));
+		LatencyGuard limitGuard = quotaLimitGuard.getIfAvailable();
+		if (limitGuard != null) {
+			quotaManager.enableLimitGuard(limitGuard, properties.getLimitGuard().getMaximumSize());
+		}
+		QuotaManagementProperties.LimitCache limitCache = properties.getLimitCache();
+		if (limitCache.isEnabled()) {
+			quotaManager.enableLimitCache(limitCache.getMaximumSize(), limitCache.getTtl(), limitCache.getNegativeTtl(),
+					limitCache.getRefreshAfter());
+		}
+		QuotaManagementProperties.AdaptivePrecision adaptivePrecision = properties.getAdaptivePrecision();
+		if (adaptivePrecision.isEnabled()) {
+			quotaManager.enableAdaptivePrecision(adaptivePrecision.getMaximumSize(), adaptivePrecision.getMaxAge(),
+					adaptivePrecision.getHeadroomRatio());
+		}
+		QuotaManagementProperties.DenialCache denialCache = properties.getDenialCache();
+		if (denialCache.isEnabled()) {
+			quotaManager.enableDenialCache(denialCache.getMaximumSize(), denialCache.getTtl());
+		}
+		return quotaManager;
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(prefix = "quota.persistence", name = "enabled", havingValue = "true")
+	public UsageSnapshotPersistence usageSnapshotPersistence(InMemoryResourceCounter inMemoryResourceCounter, QuotaManagementProperties properties) {
+		QuotaManagementProperties.Persistence persistence = properties.getPersistence();
+		return new UsageSnapshotPersistence(inMemoryResourceCounter, persistence.getDirectory(),
+				persistence.getSnapshotInterval(), persistence.getFlushInterval(), persistence.getReconciliationConcurrency());
+	}
+
 	@Bean
 	@ConditionalOnMissingBean
-	public QuotaManager quotaManager(ResourceCounterRegistry resourceCounterRegistry, QuotaLimitResolver quotaLimitResolver) {
-		return new DefaultQuotaManager(resourceCounterRegistry, quotaLimitResolver);
+	public AsyncQuotaManager asyncQuotaManager(QuotaManager quotaManager, @Qualifier("quotaExecutor") ObjectProvider<Executor> quotaExecutor) {
+		Executor executor = quotaExecutor.getIfAvailable();
+		return executor != null ? new DefaultAsyncQuotaManager(quotaManager, executor) : new DefaultAsyncQuotaManager(quotaManager);
 	}
 
 	@Bean
@@ -42,7 +171,64 @@ public class QuotaManagementAutoConfiguration {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public QuotaAspect quotaAspect(QuotaManager quotaManager, TenantResolver tenantResolver) {
-		return new QuotaAspect(quotaManager, tenantResolver);
+	public QuotaAspect quotaAspect(QuotaManager quotaManager, TenantResolver tenantResolver, QuotaManagementProperties properties,
+								   ObjectProvider<QuotaMetrics> quotaMetrics
+	) {
+		QuotaAspect quotaAspect = new QuotaAspect(quotaManager, tenantResolver);
+		quotaAspect.setReservationTimeout(properties.getReservationTimeout());
+		quotaAspect.setReserve(properties.isReserve());
+		quotaAspect.setMetrics(quotaMetrics.getIfUnique(() -> QuotaMetrics.NOOP));
+		return quotaAspect;
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnBean(InMemoryResourceCounter.class)
+	public QuotaUsageAspect quotaUsageAspect(InMemoryResourceCounter inMemoryResourceCounter, TenantResolver tenantResolver) {
+		return new QuotaUsageAspect(inMemoryResourceCounter, tenantResolver);
+	}
+
+	/**
+	 * Warms up the configured tenants synchronously once the application is ready, which
+	 * delays the readiness state until the warmup completed.
+	 *
+	 * <p>Configured tenant values are converted by the {@code quotaWarmupTenantConverter}
+	 * bean if there is one, or else wrapped in a {@link Tenant} returning the value.</p>
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "quota.warmup", name = "enabled", havingValue = "true")
+	public ApplicationListener<ApplicationReadyEvent> quotaWarmupListener(QuotaManager quotaManager,
+																		  ObjectProvider<WarmupTenantProvider> tenantProviders,
+																		  @Qualifier("quotaWarmupTenantConverter") ObjectProvider<Function<String, Tenant>> tenantConverter,
+																		  QuotaManagementProperties properties
+	) {
+		return event -> {
+			QuotaManagementProperties.Warmup warmup = properties.getWarmup();
+			Function<String, Tenant> converter = tenantConverter.getIfAvailable(() -> value -> () -> value);
+			List<Tenant> tenants = new ArrayList<>();
+			for (String value : warmup.getTenants()) {
+				tenants.add(converter.apply(value));
+			}
+			tenantProviders.orderedStream().forEach(provider -> tenants.addAll(provider.getTenants()));
+			new QuotaWarmup(quotaManager, warmup.getBatchSize(), warmup.getConcurrency()).warmUp(tenants, warmup.getResources());
+		};
+	}
+
+	private static LatencyGuard latencyGuard(QuotaManagementProperties.Guard guard) {
+		return new LatencyGuard(guard::getTimeout, guard.getFailureThreshold(), guard.getOpenDuration(), guard.getFallback(),
+				guard.getMaxStaleness(), guard.getMaxConcurrentCalls());
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	@ConditionalOnProperty(prefix = "quota.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+	static class QuotaMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public QuotaMetrics quotaMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+			MeterRegistry registry = meterRegistry.getIfUnique();
+			return registry != null ? new MicrometerQuotaMetrics(registry) : QuotaMetrics.NOOP;
+		}
 	}
 }
@@ -0,0 +1,365 @@
+package com.github.tbcd.quota.config;
+
+import com.github.tbcd.quota.impl.LatencyGuard;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "quota")
+public class QuotaManagementProperties {
+
+	/**
+	 * Duration after which a reservation taken by the quota aspect is released if the
+	 * annotated method has not completed.
+	 */
+	private Duration reservationTimeout = Duration.ofSeconds(30);
+
+	/**
+	 * Whether the quota aspect reserves the checked amount until the annotated method
+	 * returns. When disabled, quotas are only checked, which is cheaper but lets
+	 * concurrent calls exceed the limit.
+	 */
+	private boolean reserve = true;
+
+	/**
+	 * Sharing of in-flight {@link com.github.tbcd.quota.ResourceCounter} counts between
+	 * concurrent callers.
+	 */
+	private final CountCoalescing countCoalescing = new CountCoalescing();
+
+	/**
+	 * Caching of {@link com.github.tbcd.quota.ResourceCounter} results.
+	 */
+	private final UsageCache usageCache = new UsageCache();
+
+	/**
+	 * Caching of {@link com.github.tbcd.quota.QuotaLimitResolver} results.
+	 */
+	private final LimitCache limitCache = new LimitCache();
+
+	/**
+	 * Reuse of exact counts by checks far from the limit.
+	 */
+	private final AdaptivePrecision adaptivePrecision = new AdaptivePrecision();
+
+	/**
+	 * Caching of count quota denials, answering the retries of tenants at their limit.
+	 */
+	private final DenialCache denialCache = new DenialCache();
+
+	/**
+	 * Latency budget, circuit breaker and fallback of
+	 * {@link com.github.tbcd.quota.ResourceCounter} calls.
+	 */
+	private final Guard counterGuard = new Guard();
+
+	/**
+	 * Latency budget, circuit breaker and fallback of
+	 * {@link com.github.tbcd.quota.QuotaLimitResolver} calls.
+	 */
+	private final Guard limitGuard = new Guard();
+
+	/**
+	 * Leasing of headroom from a shared {@link com.github.tbcd.quota.QuotaStore}.
+	 */
+	private final Lease lease = new Lease();
+
+	/**
+	 * Persistence of {@link com.github.tbcd.quota.impl.InMemoryResourceCounter} usages
+	 * across restarts.
+	 */
+	private final Persistence persistence = new Persistence();
+
+	/**
+	 * Recording of quota evaluation metrics.
+	 */
+	private final Metrics metrics = new Metrics();
+
+	/**
+	 * Preloading of usages and limits when the application starts.
+	 */
+	private final Warmup warmup = new Warmup();
+
+	@Getter
+	@Setter
+	public static class CountCoalescing {
+
+		/**
+		 * Whether concurrent counts of the same tenant and resource type share a single
+		 * call to the resource counter. Counts made within a transaction are not shared,
+		 * as they must see its uncommitted resources.
+		 */
+		private boolean enabled = false;
+	}
+
+	@Getter
+	@Setter
+	public static class UsageCache {
+
+		/**
+		 * Whether resource counts are cached per tenant and resource type.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of cached counts.
+		 */
+		private int maximumSize = 10_000;
+
+		/**
+		 * Time to live of a cached count.
+		 */
+		private Duration ttl = Duration.ofSeconds(5);
+
+		/**
+		 * Time to live overrides per resource type.
+		 */
+		private Map<Class<?>, Duration> resourceTtl = new HashMap<>();
+
+		public Duration getTtl(Class<?> resourceType) {
+			return resourceTtl.getOrDefault(resourceType, ttl);
+		}
+	}
+
+	@Getter
+	@Setter
+	public static class LimitCache {
+
+		/**
+		 * Whether the quota limit resolver is decorated with a cache.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of cached limits.
+		 */
+		private int maximumSize = 10_000;
+
+		/**
+		 * Time to live of a cached limit.
+		 */
+		private Duration ttl = Duration.ofMinutes(10);
+
+		/**
+		 * Time to live of a cached "no quota" result. Defaults to the limit time to live.
+		 */
+		private Duration negativeTtl;
+
+		/**
+		 * Age after which a cached limit is reloaded in the background while still being
+		 * served. Refresh-ahead is disabled when unset.
+		 */
+		private Duration refreshAfter;
+
+		public Duration getNegativeTtl() {
+			return negativeTtl != null ? negativeTtl : ttl;
+		}
+	}
+
+	@Getter
+	@Setter
+	public static class AdaptivePrecision {
+
+		/**
+		 * Whether checks reuse the last exact count of a tenant while its remaining
+		 * headroom is large.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of retained counts.
+		 */
+		private int maximumSize = 10_000;
+
+		/**
+		 * Age after which a count is no longer reused.
+		 */
+		private Duration maxAge = Duration.ofSeconds(30);
+
+		/**
+		 * Fraction of the limit that must remain free to reuse a fresh count. The required
+		 * fraction doubles as the count ages towards the maximum age.
+		 */
+		private double headroomRatio = 0.1;
+	}
+
+	@Getter
+	@Setter
+	public static class DenialCache {
+
+		/**
+		 * Whether count quota denials are cached until usage drops or the limit changes.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of cached denials.
+		 */
+		private int maximumSize = 10_000;
+
+		/**
+		 * Time to live of a cached denial, bounding how long resources deleted without
+		 * invalidating the quota caches go unnoticed.
+		 */
+		private Duration ttl = Duration.ofSeconds(1);
+	}
+
+	@Getter
+	@Setter
+	public static class Guard {
+
+		/**
+		 * Whether calls are bounded by a latency budget and a circuit breaker.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Latency budget of a call, after which it is abandoned. Calls are made on the
+		 * caller thread, without budget, when unset.
+		 */
+		private Duration timeout = Duration.ofMillis(500);
+
+		/**
+		 * Latency budget overrides per resource type.
+		 */
+		private Map<Class<?>, Duration> resourceTimeout = new HashMap<>();
+
+		/**
+		 * Number of consecutive failures or timeouts of a resource type opening its
+		 * circuit.
+		 */
+		private int failureThreshold = 5;
+
+		/**
+		 * Time during which an open circuit fails calls immediately, before letting a
+		 * probe call through.
+		 */
+		private Duration openDuration = Duration.ofSeconds(30);
+
+		/**
+		 * Outcome of a failed call when no recent enough value is known.
+		 */
+		private LatencyGuard.Fallback fallback = LatencyGuard.Fallback.FAIL_CLOSED;
+
+		/**
+		 * Age up to which the last successful value is used in place of a failed call.
+		 * Last known values are not used when unset.
+		 */
+		private Duration maxStaleness = Duration.ofMinutes(5);
+
+		/**
+		 * Maximum number of last known values retained.
+		 */
+		private int maximumSize = 10_000;
+
+		/**
+		 * Maximum number of calls with a latency budget running at once per resource type,
+		 * including abandoned calls the dependency has not answered yet.
+		 */
+		private int maxConcurrentCalls = 64;
+
+		public Duration getTimeout(Class<?> resourceType) {
+			return resourceTimeout.getOrDefault(resourceType, timeout);
+		}
+	}
+
+	@Getter
+	@Setter
+	public static class Lease {
+
+		/**
+		 * Number of units leased from the quota store at once.
+		 */
+		private long size = 10;
+
+		/**
+		 * Duration of a lease, after which its unused units are given back to the quota
+		 * store by the next access or by a background sweep running at the same interval.
+		 */
+		private Duration duration = Duration.ofSeconds(10);
+	}
+
+	@Getter
+	@Setter
+	public static class Persistence {
+
+		/**
+		 * Whether in-memory usages are written to a snapshot file and a change journal.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Directory holding the snapshot file and the change journals.
+		 */
+		private Path directory = Path.of("quota");
+
+		/**
+		 * Interval between two snapshots.
+		 */
+		private Duration snapshotInterval = Duration.ofMinutes(5);
+
+		/**
+		 * Interval between two writes of the buffered change journal.
+		 */
+		private Duration flushInterval = Duration.ofSeconds(1);
+
+		/**
+		 * Maximum number of restored usages recounted through the seed counter at once.
+		 */
+		private int reconciliationConcurrency = 4;
+	}
+
+	@Getter
+	@Setter
+	public static class Metrics {
+
+		/**
+		 * Whether quota evaluations are recorded to the Micrometer meter registry, when
+		 * one is available.
+		 */
+		private boolean enabled = true;
+	}
+
+	@Getter
+	@Setter
+	public static class Warmup {
+
+		/**
+		 * Whether usages and limits are preloaded before the application reports itself
+		 * ready.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Values of the tenants to warm up, in addition to those of
+		 * {@link com.github.tbcd.quota.WarmupTenantProvider} beans. They are converted by a
+		 * {@code Function<String, Tenant>} bean named {@code quotaWarmupTenantConverter} if
+		 * there is one, which tenants of a richer type than their value require.
+		 */
+		private List<String> tenants = new ArrayList<>();
+
+		/**
+		 * Resource types to warm up.
+		 */
+		private List<Class<?>> resources = new ArrayList<>();
+
+		/**
+		 * Number of quota states loaded by a single batch.
+		 */
+		private int batchSize = 500;
+
+		/**
+		 * Maximum number of batches loaded concurrently.
+		 */
+		private int concurrency = 4;
+	}
+}
@@ -0,0 +1,84 @@
+package com.github.tbcd.quota.config;
+
+import com.github.tbcd.quota.CountsResource;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.impl.ResourceCounterTypes;
+import org.springframework.aot.generate.AccessControl;
+import org.springframework.aot.generate.GeneratedClass;
+import org.springframework.aot.generate.GeneratedMethod;
+import org.springframework.beans.factory.aot.BeanRegistrationAotContribution;
+import org.springframework.beans.factory.aot.BeanRegistrationAotProcessor;
+import org.springframework.beans.factory.support.RegisteredBean;
+import org.springframework.javapoet.ClassName;
+import org.springframework.javapoet.CodeBlock;
+import org.springframework.util.ReflectionUtils;
+
+import javax.lang.model.element.Modifier;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Generates the registration of the {@link CountsResource} declaration of
+ * {@link ResourceCounter} beans, so that startup does not read the annotation
+ * reflectively.
+ *
+ * <p>The generated code registers the declared types in the {@link ResourceCounterTypes}
+ * bean of the context when the counter is instantiated, before the registry indexes it. Counters overriding
+ * {@link ResourceCounter#resourceTypes()}, or whose resource types are not accessible
+ * from their package, are left to the reflective path, for which the runtime hints of
+ * the counter class are registered as well.</p>
+ */
+class ResourceCounterAotProcessor implements BeanRegistrationAotProcessor {
+
+	@Override
+	public BeanRegistrationAotContribution processAheadOfTime(RegisteredBean registeredBean) {
+		Class<?> beanClass = registeredBean.getBeanClass();
+		CountsResource declaration = beanClass.getAnnotation(CountsResource.class);
+		if (!ResourceCounter.class.isAssignableFrom(beanClass) || declaration == null) {
+			return null;
+		}
+
+		Class<?>[] resourceTypes = isStaticallyRegistrable(beanClass, declaration.value()) ? declaration.value() : null;
+		return (generationContext, beanRegistrationCode) -> {
+			generationContext.getRuntimeHints().reflection().registerType(beanClass);
+			if (resourceTypes == null) {
+				return;
+			}
+
+			GeneratedClass generatedClass = generationContext.getGeneratedClasses()
+					.addForFeatureComponent("ResourceTypes", beanClass, type -> {
+						type.addJavadoc("Resource types of {@link $T}.", beanClass);
+						type.addModifiers(Modifier.PUBLIC);
+					});
+			GeneratedMethod generatedMethod = generatedClass.getMethods().add("apply", method -> {
+				method.addJavadoc("Register the resource types counted by {@link $T}.", beanClass);
+				method.addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+				method.addParameter(RegisteredBean.class, "registeredBean");
+				method.addParameter(beanClass, "instance");
+				method.returns(beanClass);
+				method.addStatement("$T.register(registeredBean, $T.class, $L)", ResourceCounterTypes.class, beanClass,
+						CodeBlock.join(Arrays.stream(resourceTypes).map(type -> CodeBlock.of("$T.class", type)).toList(), ", "));
+				method.addStatement("return instance");
+			});
+			beanRegistrationCode.addInstancePostProcessor(generatedMethod.toMethodReference());
+		};
+	}
+
+	private static boolean isStaticallyRegistrable(Class<?> beanClass, Class<?>[] resourceTypes) {
+		Method declaringMethod = ReflectionUtils.findMethod(beanClass, "resourceTypes");
+		if (declaringMethod == null || declaringMethod.getDeclaringClass() != ResourceCounter.class) {
+			return false;
+		}
+
+		ClassName target = ClassName.get(beanClass);
+		if (!AccessControl.forClass(beanClass).isAccessibleFrom(target)) {
+			return false;
+		}
+		for (Class<?> resourceType : resourceTypes) {
+			if (!AccessControl.forClass(resourceType).isAccessibleFrom(target)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,220 @@
+package com.github.tbcd.quota.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded cache with per-entry expiration.
+ *
+ * <p>Reads are lock-free. Eviction follows the CLOCK policy: insertions are queued, and
+ * reads mark their entry as referenced. When the cache grows beyond its maximum size, a
+ * single writer takes entries from the head of the queue, giving referenced ones a
+ * second chance at the tail and dropping the others, down to three quarters of the
+ * capacity. Each insertion thus costs a constant amortized number of queue moves.
+ * Queued entries that were replaced or invalidated are dropped by the same pass, which
+ * also runs once the queue holds twice the capacity. The reference mark is set without
+ * synchronization, so recency is approximate.</p>
+ *
+ * <p>Loads bracketed by {@link #beginLoad} and {@link #completeLoad} are stamped with the
+ * generation of their key, which every invalidation of the key advances, so that a value
+ * loaded before an invalidation is dropped instead of being cached.</p>
+ */
+final class BoundedCache<K, V> {
+
+	private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+	private final Map<K, Loads> loads = new ConcurrentHashMap<>();
+	private final Queue<Candidate<K, V>> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final int maximumSize;
+
+	BoundedCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	V get(K key) {
+		Entry<V> entry = getEntry(key);
+		return entry == null ? null : entry.value;
+	}
+
+	Entry<V> getEntry(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		long now = System.nanoTime();
+		if (entry.isExpired(now)) {
+			entries.remove(key, entry);
+			return null;
+		}
+
+		if (!entry.referenced) {
+			entry.referenced = true;
+		}
+		return entry;
+	}
+
+	void put(K key, V value, Duration ttl) {
+		if (ttl.isZero() || ttl.isNegative()) {
+			return;
+		}
+
+		insert(key, new Entry<>(value, System.nanoTime(), ttl.toNanos()));
+		evictIfNecessary();
+	}
+
+	/**
+	 * Starts loading the value of the key.
+	 *
+	 * @return the generation to pass to {@link #completeLoad} or {@link #abandonLoad}
+	 */
+	long beginLoad(K key) {
+		return loads.merge(key, new Loads(1, 0), (current, started) -> new Loads(current.pending() + 1, current.generation()))
+				.generation();
+	}
+
+	/**
+	 * Caches the loaded value, unless the key was invalidated since the load began.
+	 *
+	 * @return {@code true} if the value was cached
+	 */
+	boolean completeLoad(K key, long generation, V value, Duration ttl) {
+		boolean[] cached = new boolean[1];
+		loads.computeIfPresent(key, (k, current) -> {
+			if (current.generation() == generation && !ttl.isZero() && !ttl.isNegative()) {
+				insert(key, new Entry<>(value, System.nanoTime(), ttl.toNanos()));
+				cached[0] = true;
+			}
+			return current.completed();
+		});
+		if (cached[0]) {
+			evictIfNecessary();
+		}
+		return cached[0];
+	}
+
+	/**
+	 * Ends a load that produced no value to cache.
+	 */
+	void abandonLoad(K key) {
+		loads.computeIfPresent(key, (k, current) -> current.completed());
+	}
+
+	void invalidate(K key) {
+		loads.computeIfPresent(key, (k, current) -> current.invalidated());
+		entries.remove(key);
+	}
+
+	void invalidateIf(Predicate<? super K> predicate) {
+		loads.replaceAll((key, current) -> predicate.test(key) ? current.invalidated() : current);
+		entries.keySet().removeIf(predicate);
+	}
+
+	void clear() {
+		loads.replaceAll((key, current) -> current.invalidated());
+		entries.clear();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	private void insert(K key, Entry<V> entry) {
+		entries.put(key, entry);
+		queue.offer(new Candidate<>(key, entry));
+		queued.incrementAndGet();
+	}
+
+	private void evictIfNecessary() {
+		if ((entries.size() <= maximumSize && queued.get() <= 2 * maximumSize) || !evictionLock.tryLock()) {
+			return;
+		}
+
+		try {
+			long now = System.nanoTime();
+			boolean overflowing = entries.size() > maximumSize;
+			int target = maximumSize - maximumSize / 4;
+			// A pass over the queue clears the reference marks, a second one evicts
+			int moves = overflowing ? 2 * queued.get() : queued.get();
+			while (moves-- > 0 && (!overflowing || entries.size() > target)) {
+				Candidate<K, V> candidate = queue.poll();
+				if (candidate == null) {
+					return;
+				}
+				queued.decrementAndGet();
+
+				Entry<V> entry = candidate.entry();
+				if (entries.get(candidate.key()) != entry) {
+					continue;
+				}
+				if (entry.isExpired(now) || (overflowing && !entry.referenced)) {
+					entries.remove(candidate.key(), entry);
+					continue;
+				}
+				if (overflowing) {
+					entry.referenced = false;
+				}
+				queue.offer(candidate);
+				queued.incrementAndGet();
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Entry queued for eviction, stale once its key maps to another entry.
+	 */
+	private record Candidate<K, V>(K key, Entry<V> entry) {
+	}
+
+	/**
+	 * Loads in flight for a key, removed once the last of them completes.
+	 */
+	private record Loads(int pending, long generation) {
+
+		private Loads completed() {
+			return pending == 1 ? null : new Loads(pending - 1, generation);
+		}
+
+		private Loads invalidated() {
+			return new Loads(pending, generation + 1);
+		}
+	}
+
+	static final class Entry<V> {
+
+		private final V value;
+		private final long createdAt;
+		private final long expiresAt;
+		private boolean referenced;
+
+		private Entry(V value, long createdAt, long ttlNanos) {
+			this.value = value;
+			this.createdAt = createdAt;
+			this.expiresAt = createdAt + ttlNanos;
+		}
+
+		V value() {
+			return value;
+		}
+
+		long ageNanos(long now) {
+			return now - createdAt;
+		}
+
+		private boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.AsyncQuotaLimitResolver;
+import com.github.tbcd.quota.BatchQuotaLimitResolver;
+import com.github.tbcd.quota.LongQuotaLimitResolver;
+import com.github.tbcd.quota.QuotaCacheInvalidator;
+import com.github.tbcd.quota.QuotaLimitResolver;
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.Tenant;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link QuotaLimitResolver} caching the limits and windows resolved by its delegate.
+ *
+ * <p>Limits are resolved asynchronously through the delegate when it is an
+ * {@link AsyncQuotaLimitResolver}, and on the refresh executor otherwise. The refresh
+ * executor is shut down on {@link #destroy()} when the resolver created it.</p>
+ *
+ * <p>A limit loaded while its key is evicted, including by a background refresh, is
+ * returned to the caller but not cached, so that a tier change is not hidden by the
+ * previous limit for the time to live.</p>
+ */
+public class CachingQuotaLimitResolver implements BatchQuotaLimitResolver, LongQuotaLimitResolver, AsyncQuotaLimitResolver,
+		QuotaCacheInvalidator, DisposableBean {
+
+	private final QuotaLimitResolver delegate;
+	private final BoundedCache<QuotaKey, Optional<Long>> cache;
+	private final BoundedCache<QuotaKey, Optional<QuotaWindow>> windowCache;
+	private final Duration ttl;
+	private final Duration negativeTtl;
+	private final Duration refreshAfter;
+	private final Executor refreshExecutor;
+	private final ExecutorService ownedExecutor;
+	private final Set<QuotaKey> refreshing = ConcurrentHashMap.newKeySet();
+
+	public CachingQuotaLimitResolver(QuotaLimitResolver delegate, int maximumSize, Duration ttl) {
+		this(delegate, maximumSize, ttl, ttl, null);
+	}
+
+	/**
+	 * Creates a resolver refreshing limits on virtual threads, shut down on {@link #destroy()}.
+	 */
+	public CachingQuotaLimitResolver(QuotaLimitResolver delegate, int maximumSize, Duration ttl, Duration negativeTtl,
+									 Duration refreshAfter
+	) {
+		this(delegate, maximumSize, ttl, negativeTtl, refreshAfter, Executors.newVirtualThreadPerTaskExecutor(), true);
+	}
+
+	public CachingQuotaLimitResolver(QuotaLimitResolver delegate, int maximumSize, Duration ttl, Duration negativeTtl,
+									 Duration refreshAfter, Executor refreshExecutor
+	) {
+		this(delegate, maximumSize, ttl, negativeTtl, refreshAfter, refreshExecutor, false);
+	}
+
+	private CachingQuotaLimitResolver(QuotaLimitResolver delegate, int maximumSize, Duration ttl, Duration negativeTtl,
+									  Duration refreshAfter, Executor refreshExecutor, boolean ownsExecutor
+	) {
+		this.delegate = delegate;
+		this.cache = new BoundedCache<>(maximumSize);
+		this.windowCache = new BoundedCache<>(maximumSize);
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.refreshAfter = refreshAfter;
+		this.refreshExecutor = refreshExecutor;
+		this.ownedExecutor = ownsExecutor ? (ExecutorService) refreshExecutor : null;
+	}
+
+	@Override
+	public long resolveLimit(Tenant tenant, Object resource) {
+		Optional<Long> limit = resolve(tenant, resource);
+		return limit.isEmpty() ? NO_QUOTA : limit.get();
+	}
+
+	@Override
+	public Optional<Long> resolve(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		BoundedCache.Entry<Optional<Long>> entry = cache.getEntry(key);
+		if (entry == null) {
+			return load(key, tenant, resource);
+		}
+
+		if (refreshAfter != null && entry.ageNanos(System.nanoTime()) >= refreshAfter.toNanos() && refreshing.add(key)) {
+			try {
+				refreshExecutor.execute(() -> {
+					try {
+						load(key, tenant, resource);
+					} finally {
+						refreshing.remove(key);
+					}
+				});
+			} catch (RuntimeException e) {
+				refreshing.remove(key);
+			}
+		}
+		return entry.value();
+	}
+
+	@Override
+	public CompletableFuture<Optional<Long>> resolveAsync(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		Optional<Long> cached = cache.get(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		if (!(delegate instanceof AsyncQuotaLimitResolver asyncDelegate)) {
+			return CompletableFuture.supplyAsync(() -> load(key, tenant, resource), refreshExecutor);
+		}
+
+		long generation = cache.beginLoad(key);
+		CompletableFuture<Outcome<Optional<Long>>> loading;
+		try {
+			loading = delegate instanceof GuardedQuotaLimitResolver guardedDelegate
+					? guardedDelegate.resolveGuardedAsync(tenant, resource)
+					: asyncDelegate.resolveAsync(tenant, resource).thenApply(limit -> new Outcome<>(limit, false));
+		} catch (RuntimeException | Error e) {
+			cache.abandonLoad(key);
+			throw e;
+		}
+		return loading.whenComplete((limit, failure) -> {
+			if (failure != null) {
+				cache.abandonLoad(key);
+			}
+		}).thenApply(limit -> complete(cache, key, generation, limit));
+	}
+
+	@Override
+	public Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource) {
+		Map<Object, Long> limits = new HashMap<>();
+		List<Tenant> misses = new ArrayList<>();
+		for (Tenant tenant : tenants) {
+			Optional<Long> cached = cache.get(QuotaKey.of(tenant, resource));
+			if (cached == null) {
+				misses.add(tenant);
+			} else if (cached.isPresent()) {
+				limits.put(QuotaKey.tenantValue(tenant), cached.get());
+			}
+		}
+
+		if (misses.isEmpty()) {
+			return limits;
+		}
+
+		if (delegate instanceof BatchQuotaLimitResolver batchDelegate) {
+			Map<QuotaKey, Long> generations = new HashMap<>();
+			for (Tenant tenant : misses) {
+				QuotaKey key = QuotaKey.of(tenant, resource);
+				generations.putIfAbsent(key, cache.beginLoad(key));
+			}
+			Outcome<Map<Object, Long>> loaded;
+			try {
+				loaded = delegate instanceof GuardedQuotaLimitResolver guardedDelegate
+						? guardedDelegate.resolveAllGuarded(misses, resource)
+						: new Outcome<>(batchDelegate.resolveAll(misses, resource), false);
+			} catch (RuntimeException | Error e) {
+				generations.keySet().forEach(cache::abandonLoad);
+				throw e;
+			}
+			generations.forEach((key, generation) -> {
+				Optional<Long> limit = Optional.ofNullable(loaded.value().get(key.tenant()));
+				complete(cache, key, generation, new Outcome<>(limit, loaded.fallback()))
+						.ifPresent(value -> limits.put(key.tenant(), value));
+			});
+		} else {
+			for (Tenant tenant : misses) {
+				load(QuotaKey.of(tenant, resource), tenant, resource)
+						.ifPresent(limit -> limits.put(QuotaKey.tenantValue(tenant), limit));
+			}
+		}
+		return limits;
+	}
+
+	@Override
+	public Optional<QuotaWindow> resolveWindow(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		Optional<QuotaWindow> cached = windowCache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		long generation = windowCache.beginLoad(key);
+		Outcome<Optional<QuotaWindow>> window;
+		try {
+			window = delegate instanceof GuardedQuotaLimitResolver guardedDelegate
+					? guardedDelegate.resolveWindowGuarded(tenant, resource)
+					: new Outcome<>(delegate.resolveWindow(tenant, resource), false);
+		} catch (RuntimeException | Error e) {
+			windowCache.abandonLoad(key);
+			throw e;
+		}
+		return complete(windowCache, key, generation, window);
+	}
+
+	public QuotaLimitResolver getDelegate() {
+		return delegate;
+	}
+
+	public void evict(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		cache.invalidate(key);
+		windowCache.invalidate(key);
+	}
+
+	public void evictTenant(Tenant tenant) {
+		Object tenantValue = QuotaKey.tenantValue(tenant);
+		cache.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+		windowCache.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+	}
+
+	@Override
+	public void invalidate(Tenant tenant, Object resource) {
+		evict(tenant, resource);
+	}
+
+	@Override
+	public void invalidateTenant(Tenant tenant) {
+		evictTenant(tenant);
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.clear();
+		windowCache.clear();
+	}
+
+	@Override
+	public void destroy() {
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Resolves and caches the limit, unless the delegate fell back on a default value.
+	 */
+	private Optional<Long> load(QuotaKey key, Tenant tenant, Object resource) {
+		long generation = cache.beginLoad(key);
+		Outcome<Optional<Long>> limit;
+		try {
+			limit = delegate instanceof GuardedQuotaLimitResolver guardedDelegate
+					? guardedDelegate.resolveGuarded(tenant, resource)
+					: new Outcome<>(resolveDelegate(tenant, resource), false);
+		} catch (RuntimeException | Error e) {
+			cache.abandonLoad(key);
+			throw e;
+		}
+		return complete(cache, key, generation, limit);
+	}
+
+	/**
+	 * Caches a loaded value, unless it is a fallback or its key was evicted since the load began.
+	 */
+	private <T> Optional<T> complete(BoundedCache<QuotaKey, Optional<T>> target, QuotaKey key, long generation,
+									 Outcome<Optional<T>> loaded
+	) {
+		if (loaded.fallback()) {
+			target.abandonLoad(key);
+		} else {
+			target.completeLoad(key, generation, loaded.value(), loaded.value().isPresent() ? ttl : negativeTtl);
+		}
+		return loaded.value();
+	}
+
+	private Optional<Long> resolveDelegate(Tenant tenant, Object resource) {
+		if (delegate instanceof LongQuotaLimitResolver longDelegate) {
+			long limit = longDelegate.resolveLimit(tenant, resource);
+			return limit < 0 ? Optional.empty() : Optional.of(limit);
+		}
+		return delegate.resolve(tenant, resource);
+	}
+}
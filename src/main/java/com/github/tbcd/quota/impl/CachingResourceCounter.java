@@ -0,0 +1,162 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.QuotaCacheInvalidator;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * {@link ResourceCounter} caching the counts of its delegate.
+ *
+ * <p>A count loaded while its key is invalidated is returned to the caller but not
+ * cached, so that an invalidation racing with a load is not lost for the time to live.
+ * Neither are the fallbacks of a {@link GuardedResourceCounter}, even behind a
+ * {@link CoalescingResourceCounter}, which are reported as such to the caller.</p>
+ */
+public class CachingResourceCounter implements FallbackAwareResourceCounter, QuotaCacheInvalidator {
+
+	private final ResourceCounter delegate;
+	private final BoundedCache<QuotaKey, Long> cache;
+	private final Function<Class<?>, Duration> ttlResolver;
+
+	public CachingResourceCounter(ResourceCounter delegate, int maximumSize, Duration ttl) {
+		this(delegate, maximumSize, resourceType -> ttl);
+	}
+
+	public CachingResourceCounter(ResourceCounter delegate, int maximumSize, Function<Class<?>, Duration> ttlResolver) {
+		this(delegate, new BoundedCache<>(maximumSize), ttlResolver);
+	}
+
+	CachingResourceCounter(ResourceCounter delegate, BoundedCache<QuotaKey, Long> cache, Function<Class<?>, Duration> ttlResolver) {
+		this.delegate = delegate;
+		this.cache = cache;
+		this.ttlResolver = ttlResolver;
+	}
+
+	@Override
+	public Long count(Tenant tenant, Object resource) {
+		return countOutcome(tenant, resource).value();
+	}
+
+	@Override
+	public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+		return countAllOutcome(tenants, resource).value();
+	}
+
+	@Override
+	public Outcome<Long> countOutcome(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		Long cached = cache.get(key);
+		if (cached != null) {
+			return new Outcome<>(cached, false);
+		}
+
+		long generation = cache.beginLoad(key);
+		Outcome<Long> count;
+		try {
+			count = delegate instanceof FallbackAwareResourceCounter fallbackAware
+					? fallbackAware.countOutcome(tenant, resource)
+					: new Outcome<>(delegate.count(tenant, resource), false);
+		} catch (RuntimeException | Error e) {
+			cache.abandonLoad(key);
+			throw e;
+		}
+		if (count.fallback()) {
+			cache.abandonLoad(key);
+		} else {
+			cache.completeLoad(key, generation, count.value(), ttlResolver.apply(key.resourceType()));
+		}
+		return count;
+	}
+
+	@Override
+	public Outcome<Map<Object, Long>> countAllOutcome(Collection<Tenant> tenants, Object resource) {
+		Map<Object, Long> counts = new HashMap<>();
+		List<Tenant> misses = new ArrayList<>();
+		for (Tenant tenant : tenants) {
+			Long cached = cache.get(QuotaKey.of(tenant, resource));
+			if (cached != null) {
+				counts.put(QuotaKey.tenantValue(tenant), cached);
+			} else {
+				misses.add(tenant);
+			}
+		}
+
+		if (misses.isEmpty()) {
+			return new Outcome<>(counts, false);
+		}
+
+		if (!(delegate instanceof BatchResourceCounter batchDelegate)) {
+			boolean fallback = false;
+			for (Tenant tenant : misses) {
+				Outcome<Long> count = countOutcome(tenant, resource);
+				counts.put(QuotaKey.tenantValue(tenant), count.value());
+				fallback |= count.fallback();
+			}
+			return new Outcome<>(counts, fallback);
+		}
+
+		Map<QuotaKey, Long> generations = new HashMap<>();
+		for (Tenant tenant : misses) {
+			QuotaKey key = QuotaKey.of(tenant, resource);
+			generations.putIfAbsent(key, cache.beginLoad(key));
+		}
+		Outcome<Map<Object, Long>> loaded;
+		try {
+			loaded = delegate instanceof FallbackAwareResourceCounter fallbackAware
+					? fallbackAware.countAllOutcome(misses, resource)
+					: new Outcome<>(batchDelegate.countAll(misses, resource), false);
+		} catch (RuntimeException | Error e) {
+			generations.keySet().forEach(cache::abandonLoad);
+			throw e;
+		}
+
+		Duration ttl = ttlResolver.apply(QuotaKey.resourceType(resource));
+		generations.forEach((key, generation) -> {
+			long count = loaded.value().getOrDefault(key.tenant(), 0L);
+			if (loaded.fallback()) {
+				cache.abandonLoad(key);
+			} else {
+				cache.completeLoad(key, generation, count, ttl);
+			}
+			counts.put(key.tenant(), count);
+		});
+		return new Outcome<>(counts, loaded.fallback());
+	}
+
+	@Override
+	public boolean supports(Tenant tenant, Object resource) {
+		return delegate.supports(tenant, resource);
+	}
+
+	@Override
+	public Set<Class<?>> resourceTypes() {
+		return delegate.resourceTypes();
+	}
+
+	@Override
+	public void invalidate(Tenant tenant, Object resource) {
+		cache.invalidate(QuotaKey.of(tenant, resource));
+	}
+
+	@Override
+	public void invalidateTenant(Tenant tenant) {
+		Object tenantValue = QuotaKey.tenantValue(tenant);
+		cache.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.clear();
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaCacheInvalidator;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.ResourceCounterRegistry;
+import com.github.tbcd.quota.Tenant;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+public class CachingResourceCounterRegistry implements ResourceCounterRegistry, QuotaCacheInvalidator, SmartInitializingSingleton {
+
+	private final ResourceCounterRegistry delegate;
+	private final BoundedCache<QuotaKey, Long> cache;
+	private final Function<Class<?>, Duration> ttlResolver;
+	private final Map<ResourceCounter, ResourceCounter> cachingCounters = new ConcurrentHashMap<>();
+
+	public CachingResourceCounterRegistry(ResourceCounterRegistry delegate, int maximumSize, Function<Class<?>, Duration> ttlResolver) {
+		this.delegate = delegate;
+		this.cache = new BoundedCache<>(maximumSize);
+		this.ttlResolver = ttlResolver;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (delegate instanceof SmartInitializingSingleton initializingDelegate) {
+			initializingDelegate.afterSingletonsInstantiated();
+		}
+	}
+
+	@Override
+	public ResourceCounter getResourceCounter(Tenant tenant, Object resource) {
+		ResourceCounter counter = delegate.getResourceCounter(tenant, resource);
+		return cachingCounters.computeIfAbsent(counter, c -> new CachingResourceCounter(c, cache, ttlResolver));
+	}
+
+	@Override
+	public void invalidate(Tenant tenant, Object resource) {
+		cache.invalidate(QuotaKey.of(tenant, resource));
+	}
+
+	@Override
+	public void invalidateTenant(Tenant tenant) {
+		Object tenantValue = QuotaKey.tenantValue(tenant);
+		cache.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.clear();
+	}
+}
@@ -0,0 +1,153 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Loads quota states chunk by chunk as they are consumed.
+ *
+ * <p>Each chunk covers a fixed number of tenants for every resource type and is loaded
+ * through a single {@link DefaultQuotaManager#getStates(List)} call. With a parallelism
+ * above one, up to that many chunks are loaded ahead of the consumer on virtual threads,
+ * and no further tenant is read until the oldest chunk has been consumed, so memory stays
+ * bounded by {@code parallelism} chunks whatever the speed of the consumer.</p>
+ *
+ * <p>Tenants are only read from the consuming thread.</p>
+ */
+final class ChunkedStateSpliterator implements Spliterator<QuotaState>, AutoCloseable {
+
+	private final DefaultQuotaManager quotaManager;
+	private final Iterator<? extends Tenant> tenants;
+	private final List<?> resources;
+	private final int chunkSize;
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final Deque<Future<List<Optional<QuotaState>>>> prefetched = new ArrayDeque<>();
+	private Iterator<Optional<QuotaState>> current = Collections.emptyIterator();
+
+	ChunkedStateSpliterator(DefaultQuotaManager quotaManager, Iterator<? extends Tenant> tenants, List<?> resources,
+							int chunkSize, int parallelism
+	) {
+		if (chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+		}
+		this.quotaManager = quotaManager;
+		this.tenants = tenants;
+		this.resources = resources;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+		this.executor = parallelism > 1 ? Executors.newVirtualThreadPerTaskExecutor() : null;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super QuotaState> action) {
+		while (true) {
+			while (current.hasNext()) {
+				Optional<QuotaState> state = current.next();
+				if (state.isPresent()) {
+					action.accept(state.get());
+					return true;
+				}
+			}
+
+			List<Optional<QuotaState>> chunk = nextChunk();
+			if (chunk == null) {
+				return false;
+			}
+			current = chunk.iterator();
+		}
+	}
+
+	@Override
+	public Spliterator<QuotaState> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Cancels the chunks loaded ahead of the consumer.
+	 */
+	@Override
+	public void close() {
+		if (executor == null) {
+			return;
+		}
+		for (Future<?> future : prefetched) {
+			future.cancel(true);
+		}
+		prefetched.clear();
+		executor.shutdownNow();
+	}
+
+	private List<Optional<QuotaState>> nextChunk() {
+		if (executor == null) {
+			List<QuotaRequest> requests = readChunk();
+			return requests == null ? null : quotaManager.getStates(requests);
+		}
+
+		while (prefetched.size() < parallelism) {
+			List<QuotaRequest> requests = readChunk();
+			if (requests == null) {
+				break;
+			}
+			prefetched.add(executor.submit(() -> quotaManager.getStates(requests)));
+		}
+
+		Future<List<Optional<QuotaState>>> next = prefetched.poll();
+		return next == null ? null : await(next);
+	}
+
+	private List<QuotaRequest> readChunk() {
+		List<QuotaRequest> requests = null;
+		for (int i = 0; i < chunkSize && tenants.hasNext(); i++) {
+			Tenant tenant = tenants.next();
+			if (requests == null) {
+				requests = new ArrayList<>(chunkSize * resources.size());
+			}
+			for (Object resource : resources) {
+				requests.add(QuotaRequest.of(tenant, resource));
+			}
+		}
+		return requests;
+	}
+
+	private List<Optional<QuotaState>> await(Future<List<Optional<QuotaState>>> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("Interrupted while loading quota states", e);
+		} catch (ExecutionException e) {
+			close();
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException("Failed to load quota states", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.internal.TransactionCallbacks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ResourceCounter} sharing one in-flight count between the concurrent callers
+ * asking for the same tenant and resource type.
+ *
+ * <p>A count is only shared while it runs: the first caller counts through the delegate,
+ * callers arriving before it completes wait for its result, and the next caller after
+ * completion starts a new count. Nothing is retained, so the returned usages are as
+ * fresh as those of the delegate.</p>
+ *
+ * <p>Batch counts take part as well: tenants already being counted are joined, and the
+ * remaining ones are counted in a single call that concurrent callers can join.</p>
+ *
+ * <p>Fallback counts of a {@link GuardedResourceCounter} delegate are reported as such to
+ * every caller sharing them.</p>
+ *
+ * <p>Callers running in a Spring transaction count on their own, neither sharing nor
+ * joining a count: a count running in another transaction would miss the resources the
+ * caller created but has not committed yet.</p>
+ */
+public class CoalescingResourceCounter implements FallbackAwareResourceCounter {
+
+	private final ResourceCounter delegate;
+	private final Map<QuotaKey, CompletableFuture<Outcome<Long>>> inFlight = new ConcurrentHashMap<>();
+
+	public CoalescingResourceCounter(ResourceCounter delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Long count(Tenant tenant, Object resource) {
+		return countOutcome(tenant, resource).value();
+	}
+
+	@Override
+	public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+		return countAllOutcome(tenants, resource).value();
+	}
+
+	@Override
+	public Outcome<Long> countOutcome(Tenant tenant, Object resource) {
+		if (TransactionCallbacks.isTransactionActive()) {
+			return countOwned(tenant, resource);
+		}
+
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		CompletableFuture<Outcome<Long>> flight = new CompletableFuture<>();
+		CompletableFuture<Outcome<Long>> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			return join(existing);
+		}
+
+		Outcome<Long> count;
+		try {
+			count = countOwned(tenant, resource);
+		} catch (RuntimeException | Error e) {
+			inFlight.remove(key, flight);
+			flight.completeExceptionally(e);
+			throw e;
+		}
+		inFlight.remove(key, flight);
+		flight.complete(count);
+		return count;
+	}
+
+	@Override
+	public Outcome<Map<Object, Long>> countAllOutcome(Collection<Tenant> tenants, Object resource) {
+		if (TransactionCallbacks.isTransactionActive()) {
+			return countOwned(List.copyOf(tenants), resource);
+		}
+
+		Map<Tenant, CompletableFuture<Outcome<Long>>> joined = new LinkedHashMap<>();
+		Map<QuotaKey, CompletableFuture<Outcome<Long>>> flights = new LinkedHashMap<>();
+		List<Tenant> owned = new ArrayList<>();
+		for (Tenant tenant : tenants) {
+			QuotaKey key = QuotaKey.of(tenant, resource);
+			CompletableFuture<Outcome<Long>> flight = new CompletableFuture<>();
+			CompletableFuture<Outcome<Long>> existing = inFlight.putIfAbsent(key, flight);
+			if (existing != null) {
+				joined.put(tenant, existing);
+			} else {
+				flights.put(key, flight);
+				owned.add(tenant);
+			}
+		}
+
+		Map<Object, Long> counts = new HashMap<>();
+		boolean fallback = false;
+		if (!owned.isEmpty()) {
+			Outcome<Map<Object, Long>> loaded;
+			try {
+				loaded = countOwned(owned, resource);
+			} catch (RuntimeException | Error e) {
+				flights.forEach((key, flight) -> {
+					inFlight.remove(key, flight);
+					flight.completeExceptionally(e);
+				});
+				throw e;
+			}
+			flights.forEach((key, flight) -> {
+				long count = loaded.value().getOrDefault(key.tenant(), 0L);
+				inFlight.remove(key, flight);
+				flight.complete(new Outcome<>(count, loaded.fallback()));
+				counts.put(key.tenant(), count);
+			});
+			fallback = loaded.fallback();
+		}
+
+		// Joined last, so that two batches joining each other's tenants cannot wait on one another
+		for (Map.Entry<Tenant, CompletableFuture<Outcome<Long>>> flight : joined.entrySet()) {
+			Outcome<Long> count = join(flight.getValue());
+			counts.put(QuotaKey.tenantValue(flight.getKey()), count.value());
+			fallback |= count.fallback();
+		}
+		return new Outcome<>(counts, fallback);
+	}
+
+	@Override
+	public boolean supports(Tenant tenant, Object resource) {
+		return delegate.supports(tenant, resource);
+	}
+
+	@Override
+	public Set<Class<?>> resourceTypes() {
+		return delegate.resourceTypes();
+	}
+
+	private Outcome<Long> countOwned(Tenant tenant, Object resource) {
+		return delegate instanceof FallbackAwareResourceCounter fallbackAware
+				? fallbackAware.countOutcome(tenant, resource)
+				: new Outcome<>(delegate.count(tenant, resource), false);
+	}
+
+	private Outcome<Map<Object, Long>> countOwned(List<Tenant> tenants, Object resource) {
+		if (delegate instanceof FallbackAwareResourceCounter fallbackAware) {
+			return fallbackAware.countAllOutcome(tenants, resource);
+		}
+		if (delegate instanceof BatchResourceCounter batchDelegate) {
+			return new Outcome<>(batchDelegate.countAll(tenants, resource), false);
+		}
+		Map<Object, Long> counts = new HashMap<>();
+		for (Tenant tenant : tenants) {
+			Long count = delegate.count(tenant, resource);
+			counts.put(QuotaKey.tenantValue(tenant), count == null ? 0L : count);
+		}
+		return new Outcome<>(counts, false);
+	}
+
+	private static Outcome<Long> join(CompletableFuture<Outcome<Long>> flight) {
+		try {
+			return flight.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw e;
+		}
+	}
+}
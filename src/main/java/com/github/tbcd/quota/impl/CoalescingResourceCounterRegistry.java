@@ -0,0 +1,44 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.LongResourceCounter;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.ResourceCounterRegistry;
+import com.github.tbcd.quota.Tenant;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ResourceCounterRegistry} decorating the counters of its delegate with a
+ * {@link CoalescingResourceCounter}.
+ *
+ * <p>{@link LongResourceCounter}s are returned as is: they count from memory, and
+ * decorating them would disable the allocation-free path of
+ * {@link com.github.tbcd.quota.QuotaManager#quickCheck}.</p>
+ */
+public class CoalescingResourceCounterRegistry implements ResourceCounterRegistry, SmartInitializingSingleton {
+
+	private final ResourceCounterRegistry delegate;
+	private final Map<ResourceCounter, ResourceCounter> coalescingCounters = new ConcurrentHashMap<>();
+
+	public CoalescingResourceCounterRegistry(ResourceCounterRegistry delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (delegate instanceof SmartInitializingSingleton initializingDelegate) {
+			initializingDelegate.afterSingletonsInstantiated();
+		}
+	}
+
+	@Override
+	public ResourceCounter getResourceCounter(Tenant tenant, Object resource) {
+		ResourceCounter counter = delegate.getResourceCounter(tenant, resource);
+		if (counter instanceof LongResourceCounter) {
+			return counter;
+		}
+		return coalescingCounters.computeIfAbsent(counter, CoalescingResourceCounter::new);
+	}
+}
@@ -0,0 +1,62 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.*;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link AsyncQuotaManager} checking quotas through a {@link QuotaManager}.
+ *
+ * <p>With a {@link DefaultQuotaManager}, limits and usages are obtained through
+ * {@link AsyncQuotaLimitResolver} and {@link AsyncResourceCounter} when possible, and the
+ * usage is only counted for tenants having a quota. Other calls run on the executor,
+ * which is shut down on {@link #destroy()} when this manager created it.</p>
+ */
+public class DefaultAsyncQuotaManager implements AsyncQuotaManager, DisposableBean {
+
+	private final QuotaManager quotaManager;
+	private final Executor executor;
+	private final ExecutorService ownedExecutor;
+
+	public DefaultAsyncQuotaManager(QuotaManager quotaManager) {
+		this(quotaManager, Executors.newVirtualThreadPerTaskExecutor(), true);
+	}
+
+	public DefaultAsyncQuotaManager(QuotaManager quotaManager, Executor executor) {
+		this(quotaManager, executor, false);
+	}
+
+	private DefaultAsyncQuotaManager(QuotaManager quotaManager, Executor executor, boolean ownsExecutor) {
+		this.quotaManager = quotaManager;
+		this.executor = executor;
+		this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+	}
+
+	@Override
+	public CompletableFuture<QuotaResult> checkAsync(Tenant tenant, Object resource, long amount) {
+		if (quotaManager instanceof DefaultQuotaManager defaultQuotaManager) {
+			return defaultQuotaManager.checkAsync(tenant, resource, amount, executor);
+		}
+		return CompletableFuture.supplyAsync(() -> quotaManager.check(tenant, resource, amount), executor);
+	}
+
+	@Override
+	public CompletableFuture<Optional<QuotaState>> getStateAsync(Tenant tenant, Object resource) {
+		if (quotaManager instanceof DefaultQuotaManager defaultQuotaManager) {
+			return defaultQuotaManager.getStateAsync(tenant, resource, executor);
+		}
+		return CompletableFuture.supplyAsync(() -> quotaManager.getState(tenant, resource), executor);
+	}
+
+	@Override
+	public void destroy() {
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+}
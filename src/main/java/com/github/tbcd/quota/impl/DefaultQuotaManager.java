@@ -1,45 +1,1014 @@
 package com.github.tbcd.quota.impl;
 
 import com.github.tbcd.quota.*;
+import org.springframework.beans.factory.DisposableBean;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class DefaultQuotaManager implements QuotaManager {
+public class DefaultQuotaManager implements WindowedQuotaManager, QuotaCacheInvalidator, DisposableBean {
+
+	private static final int DEFAULT_REPORT_CHUNK_SIZE = 500;
 
 	private final ResourceCounterRegistry resourceCounterRegistry;
-	private final QuotaLimitResolver limitResolver;
+	private final ReservationLedger reservations = new ReservationLedger();
+	private final WindowUsageStore windows = new WindowUsageStore();
+	// Volatile since the setter and enable methods may run after the manager was shared
+	private volatile QuotaLimitResolver limitResolver;
+	private volatile CachingQuotaLimitResolver limitCache;
+	private volatile QuotaMetrics metrics = QuotaMetrics.NOOP;
+	private volatile UsageEstimates estimates;
+	private volatile DenialCache denials;
 
 	public DefaultQuotaManager(ResourceCounterRegistry resourceCounterRegistry, QuotaLimitResolver limitResolver) {
 		this.resourceCounterRegistry = resourceCounterRegistry;
 		this.limitResolver = limitResolver;
 	}
 
+	public void setMetrics(QuotaMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Lets checks reuse the last exact count of a tenant while it stays far from its limit.
+	 *
+	 * <p>A count is reused when the headroom left after the requested amount is at least
+	 * {@code headroomRatio} of the limit, a margin which doubles as the count ages towards
+	 * {@code maxAge}. Checks and reservations close to the limit, reservations of nested
+	 * tenants or of several requests, acquisitions and {@link #getState(Tenant, Object)}
+	 * always count exactly, and their counts are the ones reused. Counters implementing
+	 * {@link LongResourceCounter} are always used directly.</p>
+	 *
+	 * <p>Asynchronous checks then resolve the limit before counting, rather than
+	 * concurrently, since the limit decides whether the count can be spared.</p>
+	 *
+	 * @param maximumSize   the maximum number of counts retained
+	 * @param maxAge        the age after which a count is no longer reused
+	 * @param headroomRatio the fraction of the limit that must remain free to reuse a fresh count
+	 */
+	public void enableAdaptivePrecision(int maximumSize, Duration maxAge, double headroomRatio) {
+		this.estimates = new UsageEstimates(maximumSize, maxAge, headroomRatio);
+	}
+
+	/**
+	 * Lets a tenant denied by its count quota be denied again without resolving its limit
+	 * or counting its usage, for the given time to live.
+	 *
+	 * <p>A cached denial answers checks and reservations of any amount that would have
+	 * been denied as well, and is dropped as soon as a reservation of the tenant is
+	 * cancelled or expires, or through {@link #invalidate(Tenant, Object)} when resources
+	 * are deleted or the limit changes. Rate limit denials, nested tenants and counters
+	 * implementing {@link LongResourceCounter}, whose usage drops on release, are never
+	 * cached.</p>
+	 *
+	 * @param maximumSize the maximum number of denials retained
+	 * @param ttl         the time after which a denial is evaluated again
+	 */
+	public void enableDenialCache(int maximumSize, Duration ttl) {
+		this.denials = new DenialCache(maximumSize, ttl);
+	}
+
+	/**
+	 * Resolves limits within the latency budget of the guard, falling back on the last
+	 * known limit of a tenant when its resolution fails. Must be enabled before
+	 * {@link #enableLimitCache(int, Duration, Duration, Duration)}, so that cached limits
+	 * are not subject to the guard.
+	 *
+	 * @param maximumSize the maximum number of last known limits retained
+	 * @see GuardedQuotaLimitResolver
+	 */
+	public void enableLimitGuard(LatencyGuard guard, int maximumSize) {
+		if (limitCache != null) {
+			throw new IllegalStateException("The limit guard must be enabled before the limit cache");
+		}
+		this.limitResolver = new GuardedQuotaLimitResolver(limitResolver, guard, maximumSize);
+	}
+
+	/**
+	 * Caches the limits and windows resolved by the {@link QuotaLimitResolver}, which are
+	 * invalidated along with the other caches of this manager.
+	 *
+	 * @param maximumSize  the maximum number of limits retained
+	 * @param ttl          the time to live of a limit
+	 * @param negativeTtl  the time to live of the absence of a limit
+	 * @param refreshAfter the age after which a limit is refreshed in the background, or
+	 *                     {@code null} to disable
+	 * @see CachingQuotaLimitResolver
+	 */
+	public void enableLimitCache(int maximumSize, Duration ttl, Duration negativeTtl, Duration refreshAfter) {
+		if (limitCache != null) {
+			limitCache.destroy();
+		}
+		this.limitCache = new CachingQuotaLimitResolver(limitResolver, maximumSize, ttl, negativeTtl, refreshAfter);
+		this.limitResolver = limitCache;
+	}
+
+	@Override
+	public void destroy() {
+		if (limitCache != null) {
+			limitCache.destroy();
+		}
+	}
+
 	@Override
 	public QuotaResult check(Tenant tenant, Object resource, long amount) {
-		Optional<QuotaState> stateOpt = getState(tenant, resource);
-		if (stateOpt.isEmpty()) {
-			return new QuotaResult.NoQuota(resource);
+		return check(tenant, resource, amount, null);
+	}
+
+	@Override
+	public QuotaResult check(Tenant tenant, Object resource, long amount, QuotaWindow window) {
+		QuotaResult result;
+		if (isNested(tenant)) {
+			result = evaluateLevels(List.of(new QuotaRequest(tenant, resource, amount))).getFirst();
+		} else {
+			QuotaResult.Denied denied = cachedDenial(tenant, resource, amount);
+			if (denied != null) {
+				return recorded(resource, denied);
+			}
+			Optional<QuotaState> stateOpt = getState(tenant, resource, amount);
+			result = stateOpt.isEmpty() ? new QuotaResult.NoQuota(resource) : rememberDenial(evaluate(stateOpt.get(), amount));
 		}
 
-		QuotaState state = stateOpt.get();
-		if (state.getUsed() + amount > state.getLimit()) {
-			return new QuotaResult.Denied(state);
+		return recorded(resource, consumeWindow(tenant, resource, amount, resolveWindow(tenant, resource, window), result));
+	}
+
+	@Override
+	public QuotaResult quickCheck(Tenant tenant, Object resource, long amount) {
+		if (isNested(tenant)) {
+			return check(tenant, resource, amount, null);
 		}
 
-		return new QuotaResult.Allowed(state);
+		QuotaResult.Denied denied = cachedDenial(tenant, resource, amount);
+		if (denied != null) {
+			return recorded(resource, denied);
+		}
+
+		long limit = resolveLimit(tenant, resource);
+		if (limit >= 0) {
+			long used = estimateUsage(tenant, resource, limit, amount);
+			if (amount > limit - used) {
+				return recorded(resource, rememberDenial(new QuotaResult.Denied(new QuotaState(tenant, resource, used, limit))));
+			}
+		}
+
+		QuotaWindow window = resolveWindow(tenant, resource, null);
+		if (window != null) {
+			long used = windows.tryConsume(tenant, resource, window, amount);
+			if (amount > window.limit() - used) {
+				return recorded(resource, new QuotaResult.Denied(new QuotaState(tenant, resource, used, window.limit())));
+			}
+		}
+
+		return recorded(resource, limit < 0 && window == null ? QuotaResult.NO_QUOTA : QuotaResult.ALLOWED);
+	}
+
+	@Override
+	public List<QuotaResult> checkAll(Collection<QuotaRequest> requests) {
+		return checkAll(List.copyOf(requests), Collections.nCopies(requests.size(), null));
+	}
+
+	@Override
+	public List<QuotaResult> checkAll(List<QuotaRequest> requests, List<QuotaWindow> windows) {
+		List<QuotaResult> evaluated = evaluateLevels(requests);
+
+		List<QuotaResult> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			QuotaResult result = evaluated.get(i);
+			QuotaWindow window = resolveWindow(request.tenant(), request.resource(), windows.get(i));
+			results.add(recorded(request.resource(), consumeWindow(request.tenant(), request.resource(), request.amount(), window, result)));
+		}
+		return results;
 	}
 
 	@Override
 	public Optional<QuotaState> getState(Tenant tenant, Object resource) {
-		Optional<Long> limitOpt = limitResolver.resolve(tenant, resource);
-		if (limitOpt.isEmpty()) {
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
 			return Optional.empty();
 		}
 
-		ResourceCounter counter = resourceCounterRegistry.getResourceCounter(tenant, resource);
-		long limit = limitOpt.get();
-		long usage = counter.count(tenant, resource);
+		long usage = countUsage(tenant, resource);
 
 		return Optional.of(new QuotaState(tenant, resource, usage, limit));
 	}
+
+	/**
+	 * Streams the states in chunks of 500 tenants, loaded one at a time.
+	 *
+	 * @see #streamStates(Stream, Collection, int, int)
+	 */
+	@Override
+	public Stream<QuotaState> streamStates(Stream<? extends Tenant> tenants, Collection<?> resources) {
+		return streamStates(tenants, resources, DEFAULT_REPORT_CHUNK_SIZE, 1);
+	}
+
+	/**
+	 * Streams the quota state of every tenant for every resource type.
+	 *
+	 * <p>The states of {@code chunkSize} tenants are loaded together through
+	 * {@link #getStates(List)}, and up to {@code parallelism} chunks are loaded ahead of
+	 * the consumer. No further tenant is read until the oldest chunk has been consumed,
+	 * so memory stays bounded however slow the consumer is. Closing the stream cancels
+	 * the chunks loaded ahead and closes {@code tenants}.</p>
+	 *
+	 * @param tenants     the tenants to report, each consumed once
+	 * @param resources   the resource types to report, either instances or {@link Class}es
+	 * @param chunkSize   the number of tenants loaded together
+	 * @param parallelism the maximum number of chunks loaded concurrently
+	 * @return the states, ordered by tenant then by resource type
+	 */
+	public Stream<QuotaState> streamStates(Stream<? extends Tenant> tenants, Collection<?> resources, int chunkSize, int parallelism) {
+		ChunkedStateSpliterator spliterator = new ChunkedStateSpliterator(this, tenants.iterator(), List.copyOf(resources), chunkSize, parallelism);
+		return StreamSupport.stream(spliterator, false)
+				.onClose(spliterator::close)
+				.onClose(tenants::close);
+	}
+
+	/**
+	 * Checks the quota like {@link #check(Tenant, Object, long)}, resolving the limit and
+	 * counting the usage through {@link AsyncQuotaLimitResolver} and
+	 * {@link AsyncResourceCounter} when possible, and on the executor otherwise.
+	 */
+	CompletableFuture<QuotaResult> checkAsync(Tenant tenant, Object resource, long amount, Executor executor) {
+		if (isNested(tenant)) {
+			return CompletableFuture.supplyAsync(() -> check(tenant, resource, amount), executor);
+		}
+
+		QuotaResult.Denied denied = cachedDenial(tenant, resource, amount);
+		if (denied != null) {
+			return CompletableFuture.completedFuture(recorded(resource, denied));
+		}
+
+		return getStateAsync(tenant, resource, amount, true, executor).thenApply(stateOpt -> {
+			QuotaResult result = stateOpt.isEmpty() ? new QuotaResult.NoQuota(resource) : rememberDenial(evaluate(stateOpt.get(), amount));
+			return recorded(resource, consumeWindow(tenant, resource, amount, resolveWindow(tenant, resource, null), result));
+		});
+	}
+
+	/**
+	 * Retrieves the state like {@link #getState(Tenant, Object)}, asynchronously like
+	 * {@link #checkAsync(Tenant, Object, long, Executor)}.
+	 */
+	CompletableFuture<Optional<QuotaState>> getStateAsync(Tenant tenant, Object resource, Executor executor) {
+		return getStateAsync(tenant, resource, 0, false, executor);
+	}
+
+	/**
+	 * Resolves the limit and counts the usage concurrently. The count is ignored, failed
+	 * or not, if the tenant has no quota. When the usage may be estimated, the limit is
+	 * resolved first instead, since the estimate depends on it and spares the count.
+	 *
+	 * @param estimate whether a usage far from the limit may be estimated
+	 */
+	private CompletableFuture<Optional<QuotaState>> getStateAsync(Tenant tenant, Object resource, long amount, boolean estimate,
+																  Executor executor
+	) {
+		CompletableFuture<Long> limitFuture = resolveLimitAsync(tenant, resource, executor);
+		if (!estimate || estimates == null) {
+			CompletableFuture<Long> countFuture = countResourcesAsync(tenant, resource, executor);
+			return limitFuture.thenCompose(limit -> limit < 0 ? CompletableFuture.completedFuture(Optional.empty())
+					: countFuture.thenApply(count -> Optional.of(new QuotaState(tenant, resource, count + reservations.pending(tenant, resource), limit))));
+		}
+
+		return limitFuture.thenCompose(limit -> {
+			if (limit < 0) {
+				return CompletableFuture.completedFuture(Optional.empty());
+			}
+
+			ResourceCounter counter = resourceCounterRegistry.getResourceCounter(tenant, resource);
+			if (!(counter instanceof LongResourceCounter)) {
+				long pending = reservations.pending(tenant, resource);
+				long estimated = estimates.estimate(tenant, resource, limit - pending, amount);
+				if (estimated >= 0) {
+					return CompletableFuture.completedFuture(Optional.of(new QuotaState(tenant, resource, estimated + pending, limit)));
+				}
+			}
+			return countResourcesAsync(counter, tenant, resource, executor).thenApply(count ->
+					Optional.of(new QuotaState(tenant, resource, count + reservations.pending(tenant, resource), limit)));
+		});
+	}
+
+	private CompletableFuture<Long> countResourcesAsync(Tenant tenant, Object resource, Executor executor) {
+		ResourceCounter counter;
+		try {
+			counter = resourceCounterRegistry.getResourceCounter(tenant, resource);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return countResourcesAsync(counter, tenant, resource, executor);
+	}
+
+	private CompletableFuture<Long> resolveLimitAsync(Tenant tenant, Object resource, Executor executor) {
+		// Read at call time, since enabling the limit guard or cache decorates the resolver
+		if (!(limitResolver instanceof AsyncQuotaLimitResolver asyncLimitResolver)) {
+			return CompletableFuture.supplyAsync(() -> resolveLimit(tenant, resource), executor);
+		}
+
+		QuotaLimitResolutionEvent event = new QuotaLimitResolutionEvent();
+		event.begin();
+		QuotaMetrics metrics = this.metrics;
+		long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+		CompletableFuture<Optional<Long>> limitFuture;
+		try {
+			limitFuture = asyncLimitResolver.resolveAsync(tenant, resource);
+		} catch (RuntimeException e) {
+			limitFuture = CompletableFuture.failedFuture(e);
+		}
+		return limitFuture.whenComplete((limitOpt, failure) -> {
+			if (metrics != QuotaMetrics.NOOP) {
+				metrics.recordLimitResolution(resource, System.nanoTime() - start);
+			}
+			event.complete(resource, 1);
+		}).thenApply(limitOpt -> limitOpt.isEmpty() ? LongQuotaLimitResolver.NO_QUOTA : limitOpt.get());
+	}
+
+	private CompletableFuture<Long> countResourcesAsync(ResourceCounter counter, Tenant tenant, Object resource, Executor executor) {
+		if (!(counter instanceof AsyncResourceCounter asyncCounter)) {
+			return CompletableFuture.supplyAsync(() -> countResources(counter, tenant, resource), executor);
+		}
+
+		QuotaCountEvent event = new QuotaCountEvent();
+		event.begin();
+		QuotaMetrics metrics = this.metrics;
+		long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+		CompletableFuture<Long> countFuture;
+		try {
+			countFuture = asyncCounter.countAsync(tenant, resource);
+		} catch (RuntimeException e) {
+			countFuture = CompletableFuture.failedFuture(e);
+		}
+		return countFuture.whenComplete((count, failure) -> {
+			if (metrics != QuotaMetrics.NOOP) {
+				metrics.recordCount(resource, System.nanoTime() - start);
+			}
+			event.complete(resource, counter, 1);
+		}).thenApply(count -> {
+			long used = count == null ? 0 : count;
+			if (estimates != null && !(counter instanceof LongResourceCounter)) {
+				estimates.record(tenant, resource, used);
+			}
+			return used;
+		});
+	}
+
+	private Optional<QuotaState> getState(Tenant tenant, Object resource, long amount) {
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			return Optional.empty();
+		}
+
+		return Optional.of(new QuotaState(tenant, resource, estimateUsage(tenant, resource, limit, amount), limit));
+	}
+
+	/**
+	 * Evaluates every request against the quota of each level of its tenant hierarchy.
+	 *
+	 * <p>The levels of all requests are counted together through
+	 * {@link #getStates(List)}, then evaluated from the most specific one, stopping at the
+	 * first denial. An allowed result reports the state of the most specific level having
+	 * a quota.</p>
+	 */
+	List<QuotaResult> evaluateLevels(List<QuotaRequest> requests) {
+		List<QuotaRequest> levels = new ArrayList<>(requests.size());
+		int[] offsets = new int[requests.size() + 1];
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			offsets[i] = levels.size();
+			for (Tenant level : HierarchicalTenant.lineage(request.tenant())) {
+				levels.add(new QuotaRequest(level, request.resource(), request.amount()));
+			}
+		}
+		offsets[requests.size()] = levels.size();
+
+		List<Optional<QuotaState>> states = getStates(levels, true, estimates != null);
+		List<QuotaResult> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			QuotaResult result = null;
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				Optional<QuotaState> stateOpt = states.get(j);
+				if (stateOpt.isEmpty()) {
+					continue;
+				}
+				QuotaResult levelResult = evaluate(stateOpt.get(), request.amount());
+				if (!levelResult.allowed()) {
+					result = levelResult;
+					break;
+				}
+				if (result == null) {
+					result = levelResult;
+				}
+			}
+			results.add(result != null ? result : new QuotaResult.NoQuota(request.resource()));
+		}
+		return results;
+	}
+
+	/**
+	 * Retrieves the quota state of every request, resolving each distinct tenant and
+	 * resource type once, through {@link BatchQuotaLimitResolver} and
+	 * {@link BatchResourceCounter} when possible.
+	 */
+	List<Optional<QuotaState>> getStates(List<QuotaRequest> requests) {
+		return getStates(requests, true);
+	}
+
+	/**
+	 * Retrieves the quota state of every request.
+	 *
+	 * @param includePending whether pending reservations count as used
+	 */
+	List<Optional<QuotaState>> getStates(List<QuotaRequest> requests, boolean includePending) {
+		return getStates(requests, includePending, false);
+	}
+
+	/**
+	 * Retrieves the quota state of every request.
+	 *
+	 * @param includePending whether pending reservations count as used
+	 * @param estimate       whether usages far from the limit may be estimated, see
+	 *                       {@link #enableAdaptivePrecision(int, Duration, double)}
+	 */
+	List<Optional<QuotaState>> getStates(List<QuotaRequest> requests, boolean includePending, boolean estimate) {
+		Map<QuotaKey, StateSlot> slots = new LinkedHashMap<>();
+		List<StateSlot> requestSlots = new ArrayList<>(requests.size());
+		for (QuotaRequest request : requests) {
+			StateSlot slot = slots.computeIfAbsent(QuotaKey.of(request.tenant(), request.resource()),
+					key -> new StateSlot(key, request.tenant(), request.resource()));
+			slot.amount = Math.max(slot.amount, request.amount());
+			requestSlots.add(slot);
+		}
+
+		resolveLimits(slots.values());
+
+		Map<ResourceCounter, Map<Class<?>, List<StateSlot>>> groups = new LinkedHashMap<>();
+		for (StateSlot slot : slots.values()) {
+			if (slot.limit >= 0) {
+				ResourceCounter counter = resourceCounterRegistry.getResourceCounter(slot.tenant, slot.resource);
+				groups.computeIfAbsent(counter, c -> new LinkedHashMap<>())
+						.computeIfAbsent(slot.key.resourceType(), t -> new ArrayList<>())
+						.add(slot);
+			}
+		}
+
+		groups.forEach((counter, slotsByType) -> slotsByType.values().forEach(group -> count(counter, group, includePending, estimate)));
+
+		List<Optional<QuotaState>> states = new ArrayList<>(requestSlots.size());
+		for (StateSlot slot : requestSlots) {
+			states.add(slot.toState());
+		}
+		return states;
+	}
+
+	private void resolveLimits(Collection<StateSlot> slots) {
+		if (!(limitResolver instanceof BatchQuotaLimitResolver batchLimitResolver) || slots.size() < 2) {
+			for (StateSlot slot : slots) {
+				slot.limit = resolveLimit(slot.tenant, slot.resource);
+			}
+			return;
+		}
+
+		Map<Class<?>, List<StateSlot>> groups = new LinkedHashMap<>();
+		for (StateSlot slot : slots) {
+			groups.computeIfAbsent(slot.key.resourceType(), t -> new ArrayList<>()).add(slot);
+		}
+
+		for (List<StateSlot> group : groups.values()) {
+			if (group.size() == 1) {
+				StateSlot slot = group.getFirst();
+				slot.limit = resolveLimit(slot.tenant, slot.resource);
+				continue;
+			}
+
+			List<Tenant> tenants = new ArrayList<>(group.size());
+			for (StateSlot slot : group) {
+				tenants.add(slot.tenant);
+			}
+			Object resource = group.getFirst().resource;
+			QuotaLimitResolutionEvent event = new QuotaLimitResolutionEvent();
+			event.begin();
+			QuotaMetrics metrics = this.metrics;
+			long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+			Map<Object, Long> limits;
+			try {
+				limits = batchLimitResolver.resolveAll(tenants, resource);
+			} finally {
+				if (metrics != QuotaMetrics.NOOP) {
+					metrics.recordLimitResolution(resource, System.nanoTime() - start);
+				}
+				event.complete(resource, tenants.size());
+			}
+			for (StateSlot slot : group) {
+				Long limit = limits.get(slot.key.tenant());
+				slot.limit = limit == null ? LongQuotaLimitResolver.NO_QUOTA : limit;
+			}
+		}
+	}
+
+	private void count(ResourceCounter counter, List<StateSlot> group, boolean includePending, boolean estimate) {
+		if (estimate && estimates != null && !(counter instanceof LongResourceCounter)) {
+			List<StateSlot> exact = new ArrayList<>(group.size());
+			for (StateSlot slot : group) {
+				long pending = includePending ? reservations.pending(slot.tenant, slot.resource) : 0;
+				long estimated = estimates.estimate(slot.tenant, slot.resource, slot.limit - pending, slot.amount);
+				if (estimated >= 0) {
+					slot.usage = estimated + pending;
+				} else {
+					exact.add(slot);
+				}
+			}
+			if (exact.isEmpty()) {
+				return;
+			}
+			group = exact;
+		}
+
+		if (counter instanceof BatchResourceCounter batchCounter && group.size() > 1) {
+			List<Tenant> tenants = new ArrayList<>(group.size());
+			for (StateSlot slot : group) {
+				tenants.add(slot.tenant);
+			}
+			Object resource = group.getFirst().resource;
+			QuotaCountEvent event = new QuotaCountEvent();
+			event.begin();
+			QuotaMetrics metrics = this.metrics;
+			long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+			Outcome<Map<Object, Long>> counts;
+			try {
+				counts = counter instanceof FallbackAwareResourceCounter fallbackAware
+						? fallbackAware.countAllOutcome(tenants, resource)
+						: new Outcome<>(batchCounter.countAll(tenants, resource), false);
+			} finally {
+				if (metrics != QuotaMetrics.NOOP) {
+					metrics.recordCount(resource, System.nanoTime() - start);
+				}
+				event.complete(resource, counter, tenants.size());
+			}
+			for (StateSlot slot : group) {
+				long count = counts.value().getOrDefault(slot.key.tenant(), 0L);
+				if (estimates != null && !counts.fallback() && !(counter instanceof LongResourceCounter)) {
+					estimates.record(slot.tenant, slot.resource, count);
+				}
+				slot.usage = count + (includePending ? reservations.pending(slot.tenant, slot.resource) : 0);
+			}
+			return;
+		}
+
+		for (StateSlot slot : group) {
+			slot.usage = countResources(counter, slot.tenant, slot.resource) + (includePending ? reservations.pending(slot.tenant, slot.resource) : 0);
+		}
+	}
+
+	@Override
+	public QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout) {
+		return reserve(tenant, resource, amount, timeout, null);
+	}
+
+	@Override
+	public QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout, QuotaWindow window) {
+		if (isNested(tenant)) {
+			return reserveLevels(tenant, resource, amount, timeout, window);
+		}
+
+		QuotaResult.Denied denied = cachedDenial(tenant, resource, amount);
+		if (denied != null) {
+			return ReservationLedger.unheld(recorded(resource, denied));
+		}
+
+		QuotaWindow resolvedWindow = resolveWindow(tenant, resource, window);
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			QuotaResult result = consumeWindow(tenant, resource, amount, resolvedWindow, new QuotaResult.NoQuota(resource));
+			return refundingWindow(ReservationLedger.unheld(recorded(resource, result)), tenant, resource, amount, resolvedWindow);
+		}
+
+		long used = estimateCount(tenant, resource, limit, reservations.pending(tenant, resource), amount);
+		QuotaReservation reservation = hold(tenant, resource, amount, limit, used, timeout);
+		if (!reservation.result().allowed()) {
+			recorded(resource, rememberDenial(reservation.result()));
+			return reservation;
+		}
+
+		QuotaResult result = consumeWindow(tenant, resource, amount, resolvedWindow, reservation.result());
+		if (!result.allowed()) {
+			reservation.cancel();
+			return ReservationLedger.unheld(recorded(resource, result));
+		}
+
+		recorded(resource, result);
+		return refundingWindow(reservation, tenant, resource, amount, resolvedWindow);
+	}
+
+	/**
+	 * Reserves the requests after counting the usage of all of them, and of their
+	 * ancestors, through a single {@link #getStates(List, boolean)} call.
+	 */
+	@Override
+	public List<QuotaReservation> reserveAll(List<QuotaRequest> requests, List<QuotaWindow> windows, Duration timeout) {
+		List<QuotaRequest> levels = new ArrayList<>(requests.size());
+		int[] offsets = new int[requests.size() + 1];
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			offsets[i] = levels.size();
+			for (Tenant level : HierarchicalTenant.lineage(request.tenant())) {
+				levels.add(new QuotaRequest(level, request.resource(), request.amount()));
+			}
+		}
+		offsets[requests.size()] = levels.size();
+
+		List<Optional<QuotaState>> states = getStates(levels, false);
+		List<QuotaReservation> reservations = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			QuotaRequest request = requests.get(i);
+			List<QuotaReservation> held = new ArrayList<>(offsets[i + 1] - offsets[i]);
+			QuotaResult result = null;
+			for (int j = offsets[i]; j < offsets[i + 1] && (result == null || result.allowed()); j++) {
+				Optional<QuotaState> stateOpt = states.get(j);
+				if (stateOpt.isEmpty()) {
+					continue;
+				}
+				QuotaState counted = stateOpt.get();
+				QuotaReservation reservation = hold(levels.get(j).tenant(), request.resource(), request.amount(),
+						counted.getLimit(), counted.getUsed(), timeout);
+				if (reservation.result().allowed()) {
+					held.add(reservation);
+				}
+				if (result == null || !reservation.result().allowed()) {
+					result = reservation.result();
+				}
+			}
+
+			QuotaWindow window = resolveWindow(request.tenant(), request.resource(), windows.get(i));
+			if (result == null || result.allowed()) {
+				result = consumeWindow(request.tenant(), request.resource(), request.amount(), window,
+						result != null ? result : new QuotaResult.NoQuota(request.resource()));
+			}
+			recorded(request.resource(), result);
+
+			if (!result.allowed()) {
+				held.forEach(QuotaReservation::cancel);
+				reservations.forEach(QuotaReservation::cancel);
+				reservations.add(ReservationLedger.unheld(result));
+				return reservations;
+			}
+			QuotaReservation reservation = held.isEmpty() ? ReservationLedger.unheld(result)
+					: held.size() == 1 ? held.getFirst() : ReservationLedger.combine(result, held);
+			reservations.add(refundingWindow(reservation, request.tenant(), request.resource(), request.amount(), window));
+		}
+		return reservations;
+	}
+
+	/**
+	 * Reserves the requests one at a time through
+	 * {@link #reserve(Tenant, Object, long, Duration, QuotaWindow)}, for subclasses
+	 * reserving differently.
+	 */
+	List<QuotaReservation> reserveEach(List<QuotaRequest> requests, List<QuotaWindow> windows, Duration timeout) {
+		return WindowedQuotaManager.super.reserveAll(requests, windows, timeout);
+	}
+
+	/**
+	 * Holds the amount at every level of the tenant hierarchy, or at none of them.
+	 */
+	private QuotaReservation reserveLevels(Tenant tenant, Object resource, long amount, Duration timeout, QuotaWindow window) {
+		List<Tenant> lineage = HierarchicalTenant.lineage(tenant);
+		List<QuotaRequest> levels = new ArrayList<>(lineage.size());
+		for (Tenant level : lineage) {
+			levels.add(new QuotaRequest(level, resource, amount));
+		}
+
+		List<Optional<QuotaState>> states = getStates(levels, false);
+		List<QuotaReservation> held = new ArrayList<>(levels.size());
+		QuotaResult granted = null;
+		for (int i = 0; i < levels.size(); i++) {
+			Optional<QuotaState> stateOpt = states.get(i);
+			if (stateOpt.isEmpty()) {
+				continue;
+			}
+			QuotaState counted = stateOpt.get();
+			QuotaReservation reservation = hold(lineage.get(i), resource, amount, counted.getLimit(), counted.getUsed(), timeout);
+			if (!reservation.result().allowed()) {
+				held.forEach(QuotaReservation::cancel);
+				return ReservationLedger.unheld(recorded(resource, reservation.result()));
+			}
+			held.add(reservation);
+			if (granted == null) {
+				granted = reservation.result();
+			}
+		}
+
+		QuotaWindow resolvedWindow = resolveWindow(tenant, resource, window);
+		QuotaResult result = consumeWindow(tenant, resource, amount, resolvedWindow, granted != null ? granted : new QuotaResult.NoQuota(resource));
+		if (!result.allowed()) {
+			held.forEach(QuotaReservation::cancel);
+			return ReservationLedger.unheld(recorded(resource, result));
+		}
+
+		recorded(resource, result);
+		QuotaReservation reservation = held.isEmpty() ? ReservationLedger.unheld(result) : ReservationLedger.combine(result, held);
+		return refundingWindow(reservation, tenant, resource, amount, resolvedWindow);
+	}
+
+	/**
+	 * Lets cancelling an allowed reservation give back the units it consumed from the
+	 * window, so that operations which failed do not count towards the rate limit.
+	 */
+	QuotaReservation refundingWindow(QuotaReservation reservation, Tenant tenant, Object resource, long amount, QuotaWindow window) {
+		if (window == null || !reservation.result().allowed()) {
+			return reservation;
+		}
+		long consumedAt = windows.now();
+		return ReservationLedger.onCancel(reservation, () -> windows.refund(tenant, resource, window, amount, consumedAt));
+	}
+
+	private QuotaReservation hold(Tenant tenant, Object resource, long amount, long limit, long used, Duration timeout) {
+		long pending = reservations.tryHold(tenant, resource, used, amount, limit);
+
+		QuotaState state = new QuotaState(tenant, resource, used + pending, limit);
+		if (amount > limit - used - pending) {
+			return ReservationLedger.unheld(new QuotaResult.Denied(state));
+		}
+
+		return reservations.register(tenant, resource, new QuotaResult.Allowed(state), timeout,
+				() -> onReservationCommitted(tenant, resource, amount),
+				() -> {
+					reservations.releasePending(tenant, resource, amount);
+					if (denials != null) {
+						denials.invalidate(tenant, resource);
+					}
+				});
+	}
+
+	/**
+	 * Returns the cached denial of the tenant for the amount, if denials are cached.
+	 *
+	 * @return the denial, or {@code null} if the quota must be evaluated
+	 */
+	private QuotaResult.Denied cachedDenial(Tenant tenant, Object resource, long amount) {
+		return denials == null ? null : denials.get(tenant, resource, amount);
+	}
+
+	/**
+	 * Caches the result if it denies the count quota of a tenant whose usage only drops
+	 * through the invalidation hooks.
+	 *
+	 * @return the result
+	 */
+	private QuotaResult rememberDenial(QuotaResult result) {
+		if (denials != null && result instanceof QuotaResult.Denied denied) {
+			QuotaState state = denied.state();
+			if (!(resourceCounterRegistry.getResourceCounter(state.getTenant(), state.getResource()) instanceof LongResourceCounter)) {
+				denials.record(state.getTenant(), state.getResource(), denied);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Invalidates the cached counts and limits of the tenant, in this manager as well as
+	 * in its {@link ResourceCounterRegistry} and {@link QuotaLimitResolver}.
+	 */
+	@Override
+	public void invalidate(Tenant tenant, Object resource) {
+		if (resourceCounterRegistry instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidate(tenant, resource);
+		}
+		if (limitResolver instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidate(tenant, resource);
+		}
+		if (estimates != null) {
+			estimates.invalidate(tenant, resource);
+		}
+		if (denials != null) {
+			denials.invalidate(tenant, resource);
+		}
+	}
+
+	@Override
+	public void invalidateTenant(Tenant tenant) {
+		if (resourceCounterRegistry instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidateTenant(tenant);
+		}
+		if (limitResolver instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidateTenant(tenant);
+		}
+		if (estimates != null) {
+			estimates.invalidateTenant(tenant);
+		}
+		if (denials != null) {
+			denials.invalidateTenant(tenant);
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		if (resourceCounterRegistry instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidateAll();
+		}
+		if (limitResolver instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidateAll();
+		}
+		if (estimates != null) {
+			estimates.clear();
+		}
+		if (denials != null) {
+			denials.clear();
+		}
+	}
+
+	/**
+	 * Called when a reservation is committed, before its amount stops counting as pending.
+	 * The committed resources are expected to be visible to the {@link ResourceCounter}
+	 * from now on, so cached counts are invalidated.
+	 */
+	protected void onReservationCommitted(Tenant tenant, Object resource, long amount) {
+		if (resourceCounterRegistry instanceof QuotaCacheInvalidator invalidator) {
+			invalidator.invalidate(tenant, resource);
+		}
+		if (estimates != null) {
+			estimates.invalidate(tenant, resource);
+		}
+	}
+
+	ReservationLedger getReservations() {
+		return reservations;
+	}
+
+	/**
+	 * Resolves the limit without boxing when the resolver is a {@link LongQuotaLimitResolver}.
+	 *
+	 * @return the limit, or a negative value if no quota is configured
+	 */
+	long resolveLimit(Tenant tenant, Object resource) {
+		QuotaLimitResolutionEvent event = new QuotaLimitResolutionEvent();
+		event.begin();
+		QuotaMetrics metrics = this.metrics;
+		long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+		try {
+			return doResolveLimit(tenant, resource);
+		} finally {
+			if (metrics != QuotaMetrics.NOOP) {
+				metrics.recordLimitResolution(resource, System.nanoTime() - start);
+			}
+			event.complete(resource, 1);
+		}
+	}
+
+	private long doResolveLimit(Tenant tenant, Object resource) {
+		if (limitResolver instanceof LongQuotaLimitResolver longLimitResolver) {
+			return longLimitResolver.resolveLimit(tenant, resource);
+		}
+		Optional<Long> limitOpt = limitResolver.resolve(tenant, resource);
+		return limitOpt.isEmpty() ? LongQuotaLimitResolver.NO_QUOTA : limitOpt.get();
+	}
+
+	/**
+	 * Returns the given window, or the one resolved by the {@link QuotaLimitResolver}.
+	 *
+	 * @return the window, or {@code null} if the resource is not rate limited
+	 */
+	QuotaWindow resolveWindow(Tenant tenant, Object resource, QuotaWindow window) {
+		if (window != null) {
+			return window;
+		}
+		Optional<QuotaWindow> resolved = limitResolver.resolveWindow(tenant, resource);
+		return resolved.isEmpty() ? null : resolved.get();
+	}
+
+	/**
+	 * Consumes {@code amount} from the window if the count quota granted the operation.
+	 *
+	 * @return {@code granted} if the window is {@code null} or allows the operation, a
+	 *         {@link QuotaResult.Allowed} result reporting the window usage if the count
+	 *         quota was absent, or a {@link QuotaResult.Denied} result reporting the window usage
+	 */
+	QuotaResult consumeWindow(Tenant tenant, Object resource, long amount, QuotaWindow window, QuotaResult granted) {
+		if (window == null || !granted.allowed()) {
+			return granted;
+		}
+
+		long used = windows.tryConsume(tenant, resource, window, amount);
+		if (amount > window.limit() - used) {
+			return new QuotaResult.Denied(new QuotaState(tenant, resource, used, window.limit()));
+		}
+		if (granted instanceof QuotaResult.NoQuota) {
+			return new QuotaResult.Allowed(new QuotaState(tenant, resource, used + amount, window.limit()));
+		}
+		return granted;
+	}
+
+	/**
+	 * Counts the current usage, including pending reservations.
+	 */
+	long countUsage(Tenant tenant, Object resource) {
+		return countResources(resourceCounterRegistry.getResourceCounter(tenant, resource), tenant, resource) + reservations.pending(tenant, resource);
+	}
+
+	/**
+	 * Counts the current usage like {@link #countUsage(Tenant, Object)}, or reuses the last
+	 * exact count when adaptive precision is enabled and the headroom allows it.
+	 */
+	long estimateUsage(Tenant tenant, Object resource, long limit, long amount) {
+		long pending = reservations.pending(tenant, resource);
+		return estimateCount(tenant, resource, limit, pending, amount) + pending;
+	}
+
+	/**
+	 * Counts the resources, excluding pending reservations, or reuses the last exact count
+	 * when adaptive precision is enabled and the headroom left by {@code pending} allows it.
+	 */
+	private long estimateCount(Tenant tenant, Object resource, long limit, long pending, long amount) {
+		ResourceCounter counter = resourceCounterRegistry.getResourceCounter(tenant, resource);
+		if (estimates != null && !(counter instanceof LongResourceCounter)) {
+			long estimated = estimates.estimate(tenant, resource, limit - pending, amount);
+			if (estimated >= 0) {
+				return estimated;
+			}
+		}
+		return countResources(counter, tenant, resource);
+	}
+
+	long countResources(ResourceCounter counter, Tenant tenant, Object resource) {
+		QuotaCountEvent event = new QuotaCountEvent();
+		event.begin();
+		QuotaMetrics metrics = this.metrics;
+		long start = metrics == QuotaMetrics.NOOP ? 0 : System.nanoTime();
+		long count;
+		boolean fallback = false;
+		try {
+			if (counter instanceof FallbackAwareResourceCounter fallbackAware) {
+				Outcome<Long> outcome = fallbackAware.countOutcome(tenant, resource);
+				count = outcome.value();
+				fallback = outcome.fallback();
+			} else {
+				count = count(counter, tenant, resource);
+			}
+		} finally {
+			if (metrics != QuotaMetrics.NOOP) {
+				metrics.recordCount(resource, System.nanoTime() - start);
+			}
+			event.complete(resource, counter, 1);
+		}
+
+		// Fallbacks of a guarded counter are not exact, and must not be reused on their headroom
+		if (estimates != null && !fallback && !(counter instanceof LongResourceCounter)) {
+			estimates.record(tenant, resource, count);
+		}
+		return count;
+	}
+
+	QuotaResult recorded(Object resource, QuotaResult result) {
+		metrics.recordResult(resource, result);
+		return result;
+	}
+
+	private static long count(ResourceCounter counter, Tenant tenant, Object resource) {
+		if (counter instanceof LongResourceCounter longCounter) {
+			return longCounter.countAsLong(tenant, resource);
+		}
+		return counter.count(tenant, resource);
+	}
+
+	static boolean isNested(Tenant tenant) {
+		return tenant instanceof HierarchicalTenant hierarchical && hierarchical.getParent() != null;
+	}
+
+	static QuotaResult evaluate(QuotaState state, long amount) {
+		if (state.getUsed() + amount > state.getLimit()) {
+			return new QuotaResult.Denied(state);
+		}
+
+		return new QuotaResult.Allowed(state);
+	}
+
+	private static final class StateSlot {
+
+		private final QuotaKey key;
+		private final Tenant tenant;
+		private final Object resource;
+		private long limit = LongQuotaLimitResolver.NO_QUOTA;
+		private long amount;
+		private long usage;
+
+		private StateSlot(QuotaKey key, Tenant tenant, Object resource) {
+			this.key = key;
+			this.tenant = tenant;
+			this.resource = resource;
+		}
+
+		private Optional<QuotaState> toState() {
+			return limit < 0 ? Optional.empty() : Optional.of(new QuotaState(tenant, resource, usage, limit));
+		}
+	}
 }
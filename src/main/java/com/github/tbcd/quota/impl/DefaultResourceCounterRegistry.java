@@ -3,23 +3,182 @@ package com.github.tbcd.quota.impl;
 import com.github.tbcd.quota.ResourceCounter;
 import com.github.tbcd.quota.ResourceCounterRegistry;
 import com.github.tbcd.quota.Tenant;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.util.ClassUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
-public class DefaultResourceCounterRegistry implements ResourceCounterRegistry {
+/**
+ * {@link ResourceCounterRegistry} indexing counters by the resource types they declare.
+ *
+ * <p>The declared types are read from the {@link ResourceCounterTypes} of the context
+ * when Spring AOT registered them there, and through
+ * {@link ResourceCounter#resourceTypes()} otherwise.</p>
+ *
+ * <p>A resource is resolved to the counter declaring its class or its closest superclass.
+ * Otherwise, among the counters declaring one of its interfaces, those declaring a
+ * super-interface of another matching interface are discarded, and the first remaining
+ * counter, in the order the counters were given, wins. Two counters declaring the same
+ * type are rejected when the index is built.</p>
+ *
+ * <p>Counters declaring no type are asked through
+ * {@link ResourceCounter#supports(Tenant, Object)}, in order, once no declared counter
+ * matches.</p>
+ */
+public class DefaultResourceCounterRegistry implements ResourceCounterRegistry, SmartInitializingSingleton {
 
-	private final List<ResourceCounter> resourceCounters;
+	private final Supplier<List<ResourceCounter>> resourceCounters;
+	private final ResourceCounterTypes resourceCounterTypes;
+	private final Map<Class<?>, ResourceCounter> resolvedCounters = new ConcurrentHashMap<>();
+	private volatile CounterIndex index;
 
-	public DefaultResourceCounterRegistry(@Lazy List<ResourceCounter> resourceCounters) {
-		this.resourceCounters = resourceCounters;
+	public DefaultResourceCounterRegistry(List<ResourceCounter> resourceCounters) {
+		this(resourceCounters, new ResourceCounterTypes());
+	}
+
+	public DefaultResourceCounterRegistry(List<ResourceCounter> resourceCounters, ResourceCounterTypes resourceCounterTypes) {
+		this.resourceCounters = () -> resourceCounters;
+		this.resourceCounterTypes = resourceCounterTypes;
+	}
+
+	public DefaultResourceCounterRegistry(ObjectProvider<ResourceCounter> resourceCounters) {
+		this(resourceCounters, new ResourceCounterTypes());
+	}
+
+	/**
+	 * Creates a registry retrieving the counters from the provider the first time it is
+	 * used, at the latest once all singletons are instantiated.
+	 */
+	public DefaultResourceCounterRegistry(ObjectProvider<ResourceCounter> resourceCounters, ResourceCounterTypes resourceCounterTypes) {
+		this.resourceCounters = () -> resourceCounters.orderedStream().toList();
+		this.resourceCounterTypes = resourceCounterTypes;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		getIndex();
 	}
 
 	@Override
 	public ResourceCounter getResourceCounter(Tenant tenant, Object resource) {
-		return resourceCounters.stream()
-				.filter(rc -> rc.supports(tenant, resource))
-				.findFirst()
-				.orElseThrow(() -> new IllegalArgumentException("No resource counter registered for: " + resource.getClass().getSimpleName()));
+		Class<?> type = QuotaKey.resourceType(resource);
+		ResourceCounter counter = resolvedCounters.get(type);
+		if (counter != null) {
+			return counter;
+		}
+
+		counter = resolve(tenant, resource, type);
+		ResourceCounter previous = resolvedCounters.putIfAbsent(type, counter);
+		return previous != null ? previous : counter;
+	}
+
+	private ResourceCounter resolve(Tenant tenant, Object resource, Class<?> type) {
+		CounterIndex index = getIndex();
+
+		ResourceCounter declared = index.lookup(type);
+		if (declared != null) {
+			return declared;
+		}
+
+		for (ResourceCounter counter : index.undeclaredCounters) {
+			if (counter.supports(tenant, resource)) {
+				return counter;
+			}
+		}
+
+		throw new IllegalArgumentException("No resource counter registered for: " + type.getSimpleName());
+	}
+
+	private CounterIndex getIndex() {
+		CounterIndex current = index;
+		if (current == null) {
+			synchronized (this) {
+				current = index;
+				if (current == null) {
+					current = CounterIndex.build(resourceCounters.get(), resourceCounterTypes);
+					index = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private record CounterIndex(Map<Class<?>, Declaration> declarations, List<ResourceCounter> undeclaredCounters) {
+
+		static CounterIndex build(List<ResourceCounter> resourceCounters, ResourceCounterTypes resourceCounterTypes) {
+			Map<Class<?>, Declaration> declared = new HashMap<>();
+			List<ResourceCounter> undeclared = new ArrayList<>();
+
+			for (int position = 0; position < resourceCounters.size(); position++) {
+				ResourceCounter counter = resourceCounters.get(position);
+				Set<Class<?>> types = resourceCounterTypes.of(counter);
+				if (types == null || types.isEmpty()) {
+					undeclared.add(counter);
+					continue;
+				}
+				for (Class<?> type : types) {
+					Declaration existing = declared.putIfAbsent(type, new Declaration(type, counter, position));
+					if (existing != null && existing.counter() != counter) {
+						throw new IllegalStateException("Ambiguous resource counters for " + type.getName() + ": "
+								+ existing.counter().getClass().getName() + " and " + counter.getClass().getName());
+					}
+				}
+			}
+
+			return new CounterIndex(Map.copyOf(declared), List.copyOf(undeclared));
+		}
+
+		ResourceCounter lookup(Class<?> type) {
+			if (declarations.isEmpty()) {
+				return null;
+			}
+
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				Declaration declaration = declarations.get(current);
+				if (declaration != null) {
+					return declaration.counter();
+				}
+			}
+
+			List<Declaration> matches = new ArrayList<>();
+			for (Class<?> contract : ClassUtils.getAllInterfacesForClassAsSet(type)) {
+				Declaration declaration = declarations.get(contract);
+				if (declaration != null) {
+					matches.add(declaration);
+				}
+			}
+			Declaration resolved = null;
+			for (Declaration match : matches) {
+				if (!isOverridden(match, matches) && (resolved == null || match.position() < resolved.position())) {
+					resolved = match;
+				}
+			}
+			return resolved != null ? resolved.counter() : null;
+		}
+
+		/**
+		 * Whether another match declares a sub-interface of the type of the given one.
+		 */
+		private static boolean isOverridden(Declaration declaration, List<Declaration> matches) {
+			for (Declaration match : matches) {
+				if (match.type() != declaration.type() && declaration.type().isAssignableFrom(match.type())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Type declared by a counter, with the position of the counter in the registry.
+	 */
+	private record Declaration(Class<?> type, ResourceCounter counter, int position) {
 	}
 }
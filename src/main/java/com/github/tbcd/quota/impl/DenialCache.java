@@ -0,0 +1,72 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.Tenant;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Recent count quota denials per tenant and resource type, answering the retries of a
+ * tenant at its limit without resolving the limit or counting again.
+ *
+ * <p>A denial is reused for any amount its state cannot accommodate either, until it
+ * expires or is invalidated. Usage only drops while a denial is cached when reservations
+ * held by the quota manager are cancelled or expire, which it reports through
+ * {@link #invalidate(Tenant, Object)}; resources deleted behind its back are noticed
+ * once the denial expires, or as soon as the application invalidates the quota
+ * manager.</p>
+ *
+ * <p>The other release paths never call {@link #invalidate(Tenant, Object)}: releases of
+ * an {@link InMemoryResourceCounter}, including those of the {@code QuotaUsageAspect},
+ * and the units a {@link LeasingQuotaManager} gives back to its store. They are safe to
+ * bypass because the denials of counters implementing
+ * {@link com.github.tbcd.quota.LongResourceCounter}, which both managers count through,
+ * are never cached.</p>
+ */
+final class DenialCache {
+
+	private final BoundedCache<QuotaKey, QuotaResult.Denied> denials;
+	private final Duration ttl;
+
+	DenialCache(int maximumSize, Duration ttl) {
+		if (ttl.isZero() || ttl.isNegative()) {
+			throw new IllegalArgumentException("Time to live must be positive: " + ttl);
+		}
+		this.denials = new BoundedCache<>(maximumSize);
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Returns the cached denial of the tenant if it also denies the amount.
+	 *
+	 * @return the denial, or {@code null} if the quota must be evaluated
+	 */
+	QuotaResult.Denied get(Tenant tenant, Object resource, long amount) {
+		QuotaResult.Denied denied = denials.get(QuotaKey.of(tenant, resource));
+		if (denied == null) {
+			return null;
+		}
+
+		QuotaState state = denied.state();
+		return amount > state.getLimit() - state.getUsed() ? denied : null;
+	}
+
+	void record(Tenant tenant, Object resource, QuotaResult.Denied denied) {
+		denials.put(QuotaKey.of(tenant, resource), denied, ttl);
+	}
+
+	void invalidate(Tenant tenant, Object resource) {
+		denials.invalidate(QuotaKey.of(tenant, resource));
+	}
+
+	void invalidateTenant(Tenant tenant) {
+		Object tenantValue = QuotaKey.tenantValue(tenant);
+		denials.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+	}
+
+	void clear() {
+		denials.clear();
+	}
+}
@@ -0,0 +1,19 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link BatchResourceCounter} telling counts apart from the fallbacks of a
+ * {@link LatencyGuard}, so that {@link CachingResourceCounter} does not cache the latter
+ * and {@link DefaultQuotaManager} does not reuse them as exact counts.
+ */
+interface FallbackAwareResourceCounter extends BatchResourceCounter {
+
+	Outcome<Long> countOutcome(Tenant tenant, Object resource);
+
+	Outcome<Map<Object, Long>> countAllOutcome(Collection<Tenant> tenants, Object resource);
+}
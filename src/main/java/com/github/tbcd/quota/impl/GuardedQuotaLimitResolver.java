@@ -0,0 +1,146 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.AsyncQuotaLimitResolver;
+import com.github.tbcd.quota.BatchQuotaLimitResolver;
+import com.github.tbcd.quota.LongQuotaLimitResolver;
+import com.github.tbcd.quota.QuotaLimitResolver;
+import com.github.tbcd.quota.QuotaUnavailableException;
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link QuotaLimitResolver} resolving through its delegate within the budget of a
+ * {@link LatencyGuard}.
+ *
+ * <p>When a resolution fails, the last limit of the tenant is returned if it is recent
+ * enough. Otherwise the tenant has no quota when failing open, or
+ * {@link QuotaUnavailableException} is thrown when failing closed. A
+ * {@link CachingQuotaLimitResolver} wrapping this resolver does not cache these
+ * fallbacks.</p>
+ *
+ * <p>Asynchronous resolutions go through the delegate when it is an
+ * {@link AsyncQuotaLimitResolver}, and run on the executor of the guard otherwise.</p>
+ */
+public class GuardedQuotaLimitResolver implements BatchQuotaLimitResolver, LongQuotaLimitResolver, AsyncQuotaLimitResolver {
+
+	private final QuotaLimitResolver delegate;
+	private final LatencyGuard guard;
+	private final BoundedCache<QuotaKey, Optional<Long>> lastKnown;
+	private final BoundedCache<QuotaKey, Optional<QuotaWindow>> lastKnownWindows;
+
+	public GuardedQuotaLimitResolver(QuotaLimitResolver delegate, LatencyGuard guard, int maximumSize) {
+		this.delegate = delegate;
+		this.guard = guard;
+		this.lastKnown = new BoundedCache<>(maximumSize);
+		this.lastKnownWindows = new BoundedCache<>(maximumSize);
+	}
+
+	@Override
+	public Optional<Long> resolve(Tenant tenant, Object resource) {
+		return resolveGuarded(tenant, resource).value();
+	}
+
+	@Override
+	public long resolveLimit(Tenant tenant, Object resource) {
+		Optional<Long> limit = resolve(tenant, resource);
+		return limit.isEmpty() ? NO_QUOTA : limit.get();
+	}
+
+	@Override
+	public CompletableFuture<Optional<Long>> resolveAsync(Tenant tenant, Object resource) {
+		return resolveGuardedAsync(tenant, resource).thenApply(Outcome::value);
+	}
+
+	@Override
+	public Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource) {
+		return resolveAllGuarded(tenants, resource).value();
+	}
+
+	@Override
+	public Optional<QuotaWindow> resolveWindow(Tenant tenant, Object resource) {
+		return resolveWindowGuarded(tenant, resource).value();
+	}
+
+	public QuotaLimitResolver getDelegate() {
+		return delegate;
+	}
+
+	Outcome<Optional<Long>> resolveGuarded(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		try {
+			Optional<Long> limit = guard.call(key.resourceType(), () -> delegate.resolve(tenant, resource));
+			guard.remember(lastKnown, key, limit);
+			return new Outcome<>(limit, false);
+		} catch (QuotaUnavailableException e) {
+			return new Outcome<>(guard.fallback(lastKnown, key, Optional.empty(), e), true);
+		}
+	}
+
+	CompletableFuture<Outcome<Optional<Long>>> resolveGuardedAsync(Tenant tenant, Object resource) {
+		if (!(delegate instanceof AsyncQuotaLimitResolver asyncDelegate)) {
+			return CompletableFuture.supplyAsync(() -> resolveGuarded(tenant, resource), guard.executor());
+		}
+
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		return guard.callAsync(key.resourceType(), () -> asyncDelegate.resolveAsync(tenant, resource)).handle((limit, failure) -> {
+			if (failure == null) {
+				guard.remember(lastKnown, key, limit);
+				return new Outcome<>(limit, false);
+			}
+			Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+			if (cause instanceof QuotaUnavailableException unavailable) {
+				return new Outcome<>(guard.fallback(lastKnown, key, Optional.empty(), unavailable), true);
+			}
+			throw new CompletionException(cause);
+		});
+	}
+
+	Outcome<Map<Object, Long>> resolveAllGuarded(Collection<Tenant> tenants, Object resource) {
+		Class<?> resourceType = QuotaKey.resourceType(resource);
+		try {
+			Map<Object, Long> limits = guard.call(resourceType, () -> resolveEach(tenants, resource));
+			for (Tenant tenant : tenants) {
+				Object tenantValue = QuotaKey.tenantValue(tenant);
+				guard.remember(lastKnown, new QuotaKey(tenantValue, resourceType), Optional.ofNullable(limits.get(tenantValue)));
+			}
+			return new Outcome<>(limits, false);
+		} catch (QuotaUnavailableException e) {
+			Map<Object, Long> limits = new HashMap<>();
+			for (Tenant tenant : tenants) {
+				Object tenantValue = QuotaKey.tenantValue(tenant);
+				guard.fallback(lastKnown, new QuotaKey(tenantValue, resourceType), Optional.<Long>empty(), e)
+						.ifPresent(limit -> limits.put(tenantValue, limit));
+			}
+			return new Outcome<>(limits, true);
+		}
+	}
+
+	Outcome<Optional<QuotaWindow>> resolveWindowGuarded(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		try {
+			Optional<QuotaWindow> window = guard.call(key.resourceType(), () -> delegate.resolveWindow(tenant, resource));
+			guard.remember(lastKnownWindows, key, window);
+			return new Outcome<>(window, false);
+		} catch (QuotaUnavailableException e) {
+			return new Outcome<>(guard.fallback(lastKnownWindows, key, Optional.empty(), e), true);
+		}
+	}
+
+	private Map<Object, Long> resolveEach(Collection<Tenant> tenants, Object resource) {
+		if (delegate instanceof BatchQuotaLimitResolver batchDelegate) {
+			return batchDelegate.resolveAll(tenants, resource);
+		}
+		Map<Object, Long> limits = new HashMap<>();
+		for (Tenant tenant : tenants) {
+			delegate.resolve(tenant, resource).ifPresent(limit -> limits.put(QuotaKey.tenantValue(tenant), limit));
+		}
+		return limits;
+	}
+}
@@ -0,0 +1,97 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.QuotaUnavailableException;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ResourceCounter} counting through its delegate within the budget of a
+ * {@link LatencyGuard}.
+ *
+ * <p>When a count fails, the last count of the tenant is returned if it is recent
+ * enough. Otherwise the count is zero when failing open, or
+ * {@link QuotaUnavailableException} is thrown when failing closed. Either fallback is
+ * reported as such to a {@link CachingResourceCounter}, which does not cache it.</p>
+ */
+public class GuardedResourceCounter implements FallbackAwareResourceCounter {
+
+	private final ResourceCounter delegate;
+	private final LatencyGuard guard;
+	private final BoundedCache<QuotaKey, Long> lastKnown;
+
+	public GuardedResourceCounter(ResourceCounter delegate, LatencyGuard guard, int maximumSize) {
+		this.delegate = delegate;
+		this.guard = guard;
+		this.lastKnown = new BoundedCache<>(maximumSize);
+	}
+
+	@Override
+	public Long count(Tenant tenant, Object resource) {
+		return countOutcome(tenant, resource).value();
+	}
+
+	@Override
+	public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+		return countAllOutcome(tenants, resource).value();
+	}
+
+	@Override
+	public Outcome<Long> countOutcome(Tenant tenant, Object resource) {
+		QuotaKey key = QuotaKey.of(tenant, resource);
+		try {
+			Long count = guard.call(key.resourceType(), () -> delegate.count(tenant, resource));
+			guard.remember(lastKnown, key, count);
+			return new Outcome<>(count, false);
+		} catch (QuotaUnavailableException e) {
+			return new Outcome<>(guard.fallback(lastKnown, key, 0L, e), true);
+		}
+	}
+
+	@Override
+	public Outcome<Map<Object, Long>> countAllOutcome(Collection<Tenant> tenants, Object resource) {
+		Class<?> resourceType = QuotaKey.resourceType(resource);
+		try {
+			Map<Object, Long> counts = guard.call(resourceType, () -> countEach(tenants, resource));
+			for (Tenant tenant : tenants) {
+				Object tenantValue = QuotaKey.tenantValue(tenant);
+				guard.remember(lastKnown, new QuotaKey(tenantValue, resourceType), counts.getOrDefault(tenantValue, 0L));
+			}
+			return new Outcome<>(counts, false);
+		} catch (QuotaUnavailableException e) {
+			Map<Object, Long> counts = new HashMap<>();
+			for (Tenant tenant : tenants) {
+				Object tenantValue = QuotaKey.tenantValue(tenant);
+				counts.put(tenantValue, guard.fallback(lastKnown, new QuotaKey(tenantValue, resourceType), 0L, e));
+			}
+			return new Outcome<>(counts, true);
+		}
+	}
+
+	@Override
+	public boolean supports(Tenant tenant, Object resource) {
+		return delegate.supports(tenant, resource);
+	}
+
+	@Override
+	public Set<Class<?>> resourceTypes() {
+		return delegate.resourceTypes();
+	}
+
+	private Map<Object, Long> countEach(Collection<Tenant> tenants, Object resource) {
+		if (delegate instanceof BatchResourceCounter batchDelegate) {
+			return batchDelegate.countAll(tenants, resource);
+		}
+		Map<Object, Long> counts = new HashMap<>();
+		for (Tenant tenant : tenants) {
+			Long count = delegate.count(tenant, resource);
+			counts.put(QuotaKey.tenantValue(tenant), count == null ? 0L : count);
+		}
+		return counts;
+	}
+}
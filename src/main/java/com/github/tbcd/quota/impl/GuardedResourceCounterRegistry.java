@@ -0,0 +1,46 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.LongResourceCounter;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.ResourceCounterRegistry;
+import com.github.tbcd.quota.Tenant;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ResourceCounterRegistry} decorating the counters of its delegate with a
+ * {@link GuardedResourceCounter}.
+ *
+ * <p>{@link LongResourceCounter}s are returned as is, since they count from memory.</p>
+ */
+public class GuardedResourceCounterRegistry implements ResourceCounterRegistry, SmartInitializingSingleton {
+
+	private final ResourceCounterRegistry delegate;
+	private final LatencyGuard guard;
+	private final int maximumSize;
+	private final Map<ResourceCounter, ResourceCounter> guardedCounters = new ConcurrentHashMap<>();
+
+	public GuardedResourceCounterRegistry(ResourceCounterRegistry delegate, LatencyGuard guard, int maximumSize) {
+		this.delegate = delegate;
+		this.guard = guard;
+		this.maximumSize = maximumSize;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (delegate instanceof SmartInitializingSingleton initializingDelegate) {
+			initializingDelegate.afterSingletonsInstantiated();
+		}
+	}
+
+	@Override
+	public ResourceCounter getResourceCounter(Tenant tenant, Object resource) {
+		ResourceCounter counter = delegate.getResourceCounter(tenant, resource);
+		if (counter instanceof LongResourceCounter) {
+			return counter;
+		}
+		return guardedCounters.computeIfAbsent(counter, c -> new GuardedResourceCounter(c, guard, maximumSize));
+	}
+}
@@ -0,0 +1,185 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class InMemoryQuotaManager extends DefaultQuotaManager implements AcquiringQuotaManager {
+
+	private final InMemoryResourceCounter counter;
+
+	public InMemoryQuotaManager(ResourceCounterRegistry resourceCounterRegistry, QuotaLimitResolver limitResolver, InMemoryResourceCounter counter) {
+		super(new TrackingResourceCounterRegistry(resourceCounterRegistry, counter), limitResolver);
+		this.counter = counter;
+	}
+
+	@Override
+	public QuotaResult tryAcquire(Tenant tenant, Object resource, long amount) {
+		requireTracked(tenant, resource);
+		getReservations().expire(tenant, resource);
+
+		QuotaWindow window = resolveWindow(tenant, resource, null);
+		if (isNested(tenant)) {
+			return recorded(resource, acquireLevels(tenant, resource, amount, window, new ArrayList<>()));
+		}
+
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			return recorded(resource, consumeWindow(tenant, resource, amount, window, new QuotaResult.NoQuota(resource)));
+		}
+
+		return recorded(resource, acquire(tenant, resource, amount, limit, window));
+	}
+
+	@Override
+	public QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout, QuotaWindow window) {
+		if (!counter.supports(tenant, resource)) {
+			return super.reserve(tenant, resource, amount, timeout, window);
+		}
+
+		getReservations().expire(tenant, resource);
+		QuotaWindow resolvedWindow = resolveWindow(tenant, resource, window);
+		if (isNested(tenant)) {
+			List<Tenant> acquired = new ArrayList<>();
+			QuotaResult result = recorded(resource, acquireLevels(tenant, resource, amount, resolvedWindow, acquired));
+			if (!result.allowed() || acquired.isEmpty()) {
+				return refundingWindow(ReservationLedger.unheld(result), tenant, resource, amount, resolvedWindow);
+			}
+			return refundingWindow(getReservations().registerAcquired(tenant, resource, result, timeout, () -> release(acquired, resource, amount)),
+					tenant, resource, amount, resolvedWindow);
+		}
+
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			return super.reserve(tenant, resource, amount, timeout, window);
+		}
+
+		QuotaResult result = recorded(resource, acquire(tenant, resource, amount, limit, resolvedWindow));
+		if (!result.allowed()) {
+			return ReservationLedger.unheld(result);
+		}
+
+		return refundingWindow(getReservations().registerAcquired(tenant, resource, result, timeout, () -> counter.release(tenant, resource, amount)),
+				tenant, resource, amount, resolvedWindow);
+	}
+
+	@Override
+	public List<QuotaReservation> reserveAll(List<QuotaRequest> requests, List<QuotaWindow> windows, Duration timeout) {
+		return reserveEach(requests, windows, timeout);
+	}
+
+	/**
+	 * Releases the amount at the tenant and, for a {@link HierarchicalTenant}, at each of
+	 * its ancestors having a quota.
+	 */
+	@Override
+	public void release(Tenant tenant, Object resource, long amount) {
+		requireTracked(tenant, resource);
+		if (!isNested(tenant)) {
+			counter.release(tenant, resource, amount);
+			return;
+		}
+
+		for (Tenant level : HierarchicalTenant.lineage(tenant)) {
+			if (resolveLimit(level, resource) >= 0) {
+				counter.release(level, resource, amount);
+			}
+		}
+	}
+
+	private QuotaResult acquire(Tenant tenant, Object resource, long amount, long limit, QuotaWindow window) {
+		long used = counter.acquire(tenant, resource, amount, limit);
+		if (amount > limit - used) {
+			return new QuotaResult.Denied(new QuotaState(tenant, resource, used, limit));
+		}
+
+		QuotaResult result = consumeWindow(tenant, resource, amount, window,
+				new QuotaResult.Allowed(new QuotaState(tenant, resource, used + amount, limit)));
+		if (!result.allowed()) {
+			counter.release(tenant, resource, amount);
+		}
+		return result;
+	}
+
+	/**
+	 * Acquires the amount at every level of the tenant hierarchy having a quota, or at
+	 * none of them: levels already acquired are released when a later level or the
+	 * window denies the acquisition.
+	 *
+	 * @param acquired receives the levels at which the amount was acquired
+	 */
+	private QuotaResult acquireLevels(Tenant tenant, Object resource, long amount, QuotaWindow window, List<Tenant> acquired) {
+		QuotaResult granted = null;
+		for (Tenant level : HierarchicalTenant.lineage(tenant)) {
+			long limit = resolveLimit(level, resource);
+			if (limit < 0) {
+				continue;
+			}
+			long used = counter.acquire(level, resource, amount, limit);
+			if (amount > limit - used) {
+				release(acquired, resource, amount);
+				acquired.clear();
+				return new QuotaResult.Denied(new QuotaState(level, resource, used, limit));
+			}
+			acquired.add(level);
+			if (granted == null) {
+				granted = new QuotaResult.Allowed(new QuotaState(level, resource, used + amount, limit));
+			}
+		}
+
+		QuotaResult result = consumeWindow(tenant, resource, amount, window, granted != null ? granted : new QuotaResult.NoQuota(resource));
+		if (!result.allowed()) {
+			release(acquired, resource, amount);
+			acquired.clear();
+		}
+		return result;
+	}
+
+	private void release(List<Tenant> levels, Object resource, long amount) {
+		for (Tenant level : levels) {
+			counter.release(level, resource, amount);
+		}
+	}
+
+	private void requireTracked(Tenant tenant, Object resource) {
+		if (!counter.supports(tenant, resource)) {
+			throw new IllegalArgumentException("Resource usage is not tracked in memory: " + QuotaKey.resourceType(resource).getSimpleName());
+		}
+	}
+
+	/**
+	 * Registry resolving the resources tracked in memory to their counter, and the other
+	 * ones through the delegate, to which cache invalidations are forwarded.
+	 */
+	private record TrackingResourceCounterRegistry(ResourceCounterRegistry delegate, InMemoryResourceCounter counter)
+			implements ResourceCounterRegistry, QuotaCacheInvalidator {
+
+		@Override
+		public ResourceCounter getResourceCounter(Tenant tenant, Object resource) {
+			return counter.supports(tenant, resource) ? counter : delegate.getResourceCounter(tenant, resource);
+		}
+
+		@Override
+		public void invalidate(Tenant tenant, Object resource) {
+			if (delegate instanceof QuotaCacheInvalidator invalidator) {
+				invalidator.invalidate(tenant, resource);
+			}
+		}
+
+		@Override
+		public void invalidateTenant(Tenant tenant) {
+			if (delegate instanceof QuotaCacheInvalidator invalidator) {
+				invalidator.invalidateTenant(tenant);
+			}
+		}
+
+		@Override
+		public void invalidateAll() {
+			if (delegate instanceof QuotaCacheInvalidator invalidator) {
+				invalidator.invalidateAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaLease;
+import com.github.tbcd.quota.QuotaStore;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process {@link QuotaStore}.
+ *
+ * <p>Intended for tests and single-node deployments: sharing one instance between
+ * several {@link LeasingQuotaManager}s behaves like a cluster whose nodes share a store,
+ * without any network round trip.</p>
+ */
+public class InMemoryQuotaStore implements QuotaStore {
+
+	private final TenantResourceMap<AtomicLong> usage = new TenantResourceMap<>();
+
+	@Override
+	public boolean initialize(Tenant tenant, Object resource, LongSupplier initialUsage) {
+		if (usage.get(tenant, resource) != null) {
+			return false;
+		}
+
+		AtomicLong created = new AtomicLong(initialUsage.getAsLong());
+		return usage.getOrCreate(tenant, resource, () -> created) == created;
+	}
+
+	@Override
+	public QuotaLease lease(Tenant tenant, Object resource, long minimum, long preferred, long limit) {
+		AtomicLong current = usage.getOrCreate(tenant, resource, AtomicLong::new);
+		while (true) {
+			long used = current.get();
+			long headroom = limit - used;
+			if (headroom <= 0 || headroom < minimum) {
+				return new QuotaLease(0, used);
+			}
+			long granted = Math.min(preferred, headroom);
+			if (current.compareAndSet(used, used + granted)) {
+				return new QuotaLease(granted, used + granted);
+			}
+		}
+	}
+
+	@Override
+	public void release(Tenant tenant, Object resource, long amount) {
+		AtomicLong current = usage.get(tenant, resource);
+		if (current != null) {
+			current.updateAndGet(used -> Math.max(0, used - amount));
+		}
+	}
+
+	@Override
+	public long usage(Tenant tenant, Object resource) {
+		AtomicLong current = usage.get(tenant, resource);
+		return current == null ? 0 : current.get();
+	}
+}
@@ -0,0 +1,283 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.LongResourceCounter;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.springframework.util.ClassUtils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * {@link LongResourceCounter} keeping the usage of each tenant in memory.
+ *
+ * <p>Usage is kept per tracked resource type: instances of subclasses and proxies of a
+ * tracked type, such as Hibernate proxies, share the usage of the declared type they
+ * match, so that a limit cannot be split across concrete classes.</p>
+ *
+ * <p>Once changes are tracked for persistence, each changed usage is queued at most once
+ * until it is drained; draining reads its value at that time, so the last value drained
+ * for a usage is always its current one, whatever the order of concurrent updates.</p>
+ */
+public class InMemoryResourceCounter implements LongResourceCounter {
+
+	private static final int DEFAULT_RECONCILIATION_CONCURRENCY = 4;
+
+	private final Set<Class<?>> resourceTypes;
+	private final ClassValue<Class<?>> trackedTypes = new ClassValue<>() {
+
+		@Override
+		protected Class<?> computeValue(Class<?> type) {
+			return trackedType(type);
+		}
+	};
+	private final ResourceCounter seedCounter;
+	private final TenantResourceMap<Usage> usages = new TenantResourceMap<>();
+	private final ConcurrentLinkedQueue<Usage> changes = new ConcurrentLinkedQueue<>();
+	private volatile boolean trackingChanges;
+	private volatile Semaphore reconciliations = new Semaphore(DEFAULT_RECONCILIATION_CONCURRENCY);
+
+	public InMemoryResourceCounter(Set<Class<?>> resourceTypes) {
+		this(resourceTypes, null);
+	}
+
+	public InMemoryResourceCounter(Set<Class<?>> resourceTypes, ResourceCounter seedCounter) {
+		this.resourceTypes = Set.copyOf(resourceTypes);
+		this.seedCounter = seedCounter;
+	}
+
+	@Override
+	public long countAsLong(Tenant tenant, Object resource) {
+		return usage(tenant, resource).get();
+	}
+
+	@Override
+	public boolean supports(Tenant tenant, Object resource) {
+		return resourceTypes.contains(trackedTypes.get(QuotaKey.resourceType(resource)));
+	}
+
+	/**
+	 * Declares no type, so that the registry does not index this counter under the types
+	 * of its seed counter, which it tracks as well: it is resolved through
+	 * {@link #supports(Tenant, Object)} once no declared counter matches, and the
+	 * {@link InMemoryQuotaManager} consults it before the registry anyway.
+	 */
+	@Override
+	public Set<Class<?>> resourceTypes() {
+		return Set.of();
+	}
+
+	/**
+	 * Adds {@code amount} to the usage unless it would exceed {@code limit}.
+	 *
+	 * @return the usage the decision was based on; the acquisition succeeded if
+	 *         {@code amount <= limit - usage}
+	 */
+	public long acquire(Tenant tenant, Object resource, long amount, long limit) {
+		requireNonNegative(amount);
+		Usage usage = usage(tenant, resource);
+		while (true) {
+			long current = usage.get();
+			if (amount > limit - current) {
+				return current;
+			}
+			if (usage.compareAndSet(current, current + amount)) {
+				changed(usage);
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Adds {@code amount} to the usage regardless of any limit, for resources created
+	 * without a quota check.
+	 */
+	public void add(Tenant tenant, Object resource, long amount) {
+		requireNonNegative(amount);
+		Usage usage = usage(tenant, resource);
+		usage.addAndGet(amount);
+		changed(usage);
+	}
+
+	public void release(Tenant tenant, Object resource, long amount) {
+		requireNonNegative(amount);
+		Usage usage = usage(tenant, resource);
+		while (true) {
+			long current = usage.get();
+			long released = Math.max(0, current - amount);
+			if (usage.compareAndSet(current, released)) {
+				changed(usage);
+				return;
+			}
+		}
+	}
+
+	public void set(Tenant tenant, Object resource, long value) {
+		Usage usage = usage(tenant, resource);
+		usage.set(value);
+		changed(usage);
+	}
+
+	/**
+	 * Replaces the usage with the count of the seed counter, discarding any drift.
+	 *
+	 * @throws IllegalStateException if the counter has no seed counter
+	 */
+	public void recount(Tenant tenant, Object resource) {
+		if (seedCounter == null) {
+			throw new IllegalStateException("No seed counter to recount usage from");
+		}
+		set(tenant, resource, seedCounter.count(tenant, resource));
+	}
+
+	public void reset(Tenant tenant, Object resource) {
+		Usage removed = usages.remove(tenant, trackedTypes.get(QuotaKey.resourceType(resource)));
+		if (removed != null) {
+			removed.removed = true;
+			changed(removed);
+		}
+	}
+
+	/**
+	 * Starts queuing changed usages for {@link #drainChanges(UsageJournal)}.
+	 */
+	void trackChanges() {
+		trackingChanges = true;
+	}
+
+	/**
+	 * Records the current value of every usage changed since the last drain.
+	 */
+	void drainChanges(UsageJournal journal) {
+		Usage usage;
+		while ((usage = changes.poll()) != null) {
+			usage.dirty.set(false);
+			journal.record(usage.tenantValue, usage.resourceType, usage.removed ? UsageJournal.REMOVED : usage.get());
+		}
+	}
+
+	/**
+	 * Limits the number of restored usages reconciled with the seed counter at once.
+	 * Usages accessed while the limit is reached are reconciled on a later access.
+	 */
+	void setReconciliationConcurrency(int reconciliationConcurrency) {
+		this.reconciliations = new Semaphore(reconciliationConcurrency);
+	}
+
+	/**
+	 * Restores a persisted usage. Restored usages are recounted through the seed counter
+	 * the first time they are accessed, to reconcile changes missed while not running.
+	 */
+	void restore(QuotaKey key, long value) {
+		if (value == UsageJournal.REMOVED) {
+			usages.remove(key::tenant, key.resourceType());
+		} else {
+			usages.put(key, new Usage(key.tenant(), key.resourceType(), value, seedCounter != null));
+		}
+	}
+
+	void forEachUsage(ObjLongConsumer<QuotaKey> action) {
+		usages.forEach((key, usage) -> action.accept(key, usage.get()));
+	}
+
+	private void changed(Usage usage) {
+		if (trackingChanges && !usage.dirty.get() && usage.dirty.compareAndSet(false, true)) {
+			changes.add(usage);
+		}
+	}
+
+	private Usage usage(Tenant tenant, Object resource) {
+		Class<?> resourceType = trackedTypes.get(QuotaKey.resourceType(resource));
+		Usage usage = usages.get(tenant, resourceType);
+		if (usage != null) {
+			if (usage.unverified) {
+				startReconciliation(tenant, resourceType, usage);
+			}
+			return usage;
+		}
+
+		long seed = seedCounter == null ? 0 : seedCounter.count(tenant, resourceType);
+		return usages.getOrCreate(tenant, resourceType, () -> new Usage(QuotaKey.tenantValue(tenant), resourceType, seed, false));
+	}
+
+	private void startReconciliation(Tenant tenant, Class<?> resourceType, Usage usage) {
+		Semaphore permits = reconciliations;
+		if (!permits.tryAcquire()) {
+			return;
+		}
+		if (!usage.claimReconciliation()) {
+			permits.release();
+			return;
+		}
+		Thread.ofVirtual().start(() -> {
+			try {
+				reconcile(tenant, resourceType, usage);
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	/**
+	 * Returns the tracked type matched by the type, the most specific one along its
+	 * superclasses first, or the type itself if it is not tracked.
+	 */
+	private Class<?> trackedType(Class<?> type) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			if (resourceTypes.contains(current)) {
+				return current;
+			}
+		}
+		for (Class<?> contract : ClassUtils.getAllInterfacesForClassAsSet(type)) {
+			if (resourceTypes.contains(contract)) {
+				return contract;
+			}
+		}
+		return type;
+	}
+
+	private static void requireNonNegative(long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("Amount must not be negative: " + amount);
+		}
+	}
+
+	/**
+	 * Applies the difference between the seed count and the restored usage, keeping the
+	 * acquisitions and releases made meanwhile.
+	 */
+	private void reconcile(Tenant tenant, Object resource, Usage usage) {
+		long restored = usage.get();
+		long counted = seedCounter.count(tenant, resource);
+		usage.updateAndGet(current -> Math.max(0, current + counted - restored));
+		changed(usage);
+	}
+
+	private static final class Usage extends AtomicLong {
+
+		private final Object tenantValue;
+		private final Class<?> resourceType;
+		private final AtomicBoolean dirty = new AtomicBoolean();
+		private volatile boolean removed;
+		private volatile boolean unverified;
+
+		private Usage(Object tenantValue, Class<?> resourceType, long value, boolean unverified) {
+			super(value);
+			this.tenantValue = tenantValue;
+			this.resourceType = resourceType;
+			this.unverified = unverified;
+		}
+
+		private synchronized boolean claimReconciliation() {
+			if (!unverified) {
+				return false;
+			}
+			unverified = false;
+			return true;
+		}
+	}
+}
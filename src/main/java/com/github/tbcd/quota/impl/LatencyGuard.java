@@ -0,0 +1,381 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaUnavailableException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the latency of calls to a quota dependency, such as a counting database, per
+ * resource type.
+ *
+ * <p>Calls taking longer than the latency budget of their resource type are abandoned
+ * and interrupted. After {@code failureThreshold} consecutive failures or timeouts, the
+ * circuit of the resource type opens and calls fail immediately for
+ * {@code openDuration}; a single probe call is then let through, which closes the
+ * circuit if it succeeds. Failed calls throw {@link QuotaUnavailableException}, which
+ * the guarded decorators turn into their {@link Fallback}.</p>
+ *
+ * <p>Only failures of the dependency count: timeouts, {@link QuotaUnavailableException},
+ * I/O and SQL exceptions, and Spring {@code DataAccessException} or JPA
+ * {@code PersistenceException}, anywhere in the cause chain. Other exceptions, such as
+ * programming errors, are rethrown unchanged and leave the circuit as it was.</p>
+ *
+ * <p>Calls with a latency budget run on a virtual thread, so they do not see the
+ * thread-bound state of the caller, such as its transaction. An abandoned call may keep
+ * running until the dependency answers, so at most {@code maxConcurrentCalls} calls of a
+ * resource type run at once; further calls fail immediately. Resource types without a
+ * budget are called on the caller thread, and only benefit from the circuit breaker.</p>
+ *
+ * @see GuardedResourceCounterRegistry
+ * @see GuardedQuotaLimitResolver
+ */
+public class LatencyGuard implements AutoCloseable {
+
+	/**
+	 * Outcome of a failed call when no last known value is available.
+	 */
+	public enum Fallback {
+
+		/**
+		 * The dependency is ignored: counts are considered zero and limits absent.
+		 */
+		FAIL_OPEN,
+
+		/**
+		 * The call throws {@link QuotaUnavailableException}.
+		 */
+		FAIL_CLOSED
+	}
+
+	private static final Set<String> DEPENDENCY_FAILURES = Set.of(
+			"org.springframework.dao.DataAccessException", "jakarta.persistence.PersistenceException");
+	private static final int MAX_CAUSE_DEPTH = 16;
+
+	private final Function<Class<?>, Duration> budgetResolver;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final Fallback fallback;
+	private final Duration maxStaleness;
+	private final int maxConcurrentCalls;
+	private final LongSupplier nanoClock;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Map<Class<?>, Circuit> circuits = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a guard without bound on the calls running at once.
+	 *
+	 * @see #LatencyGuard(Function, int, Duration, Fallback, Duration, int)
+	 */
+	public LatencyGuard(Function<Class<?>, Duration> budgetResolver, int failureThreshold, Duration openDuration,
+						Fallback fallback, Duration maxStaleness
+	) {
+		this(budgetResolver, failureThreshold, openDuration, fallback, maxStaleness, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param budgetResolver     the latency budget of each resource type, or {@code null} for none
+	 * @param failureThreshold   the number of consecutive failures opening the circuit
+	 * @param openDuration       the time during which an open circuit rejects calls
+	 * @param fallback           the outcome of failed calls without a last known value
+	 * @param maxStaleness       the age up to which the last successful value is used in
+	 *                           place of a failed call, or zero to disable
+	 * @param maxConcurrentCalls the number of calls with a latency budget that may run at
+	 *                           once per resource type, abandoned ones included
+	 */
+	public LatencyGuard(Function<Class<?>, Duration> budgetResolver, int failureThreshold, Duration openDuration,
+						Fallback fallback, Duration maxStaleness, int maxConcurrentCalls
+	) {
+		this(budgetResolver, failureThreshold, openDuration, fallback, maxStaleness, maxConcurrentCalls, System::nanoTime);
+	}
+
+	LatencyGuard(Function<Class<?>, Duration> budgetResolver, int failureThreshold, Duration openDuration,
+				 Fallback fallback, Duration maxStaleness, int maxConcurrentCalls, LongSupplier nanoClock
+	) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+		}
+		if (maxConcurrentCalls < 1) {
+			throw new IllegalArgumentException("Maximum concurrent calls must be positive: " + maxConcurrentCalls);
+		}
+		this.budgetResolver = budgetResolver;
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+		this.fallback = fallback;
+		this.maxStaleness = maxStaleness;
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Records the value of a successful call, to be used if later calls fail.
+	 */
+	<K, V> void remember(BoundedCache<K, V> lastKnown, K key, V value) {
+		if (value != null && maxStaleness != null) {
+			lastKnown.put(key, value, maxStaleness);
+		}
+	}
+
+	/**
+	 * Returns the outcome of a failed call: the last known value if recent enough,
+	 * otherwise {@code openValue} when failing open.
+	 *
+	 * @throws QuotaUnavailableException when failing closed without a last known value
+	 */
+	<K, V> V fallback(BoundedCache<K, V> lastKnown, K key, V openValue, QuotaUnavailableException failure) {
+		V known = lastKnown.get(key);
+		if (known != null) {
+			return known;
+		}
+		if (fallback == Fallback.FAIL_OPEN) {
+			return openValue;
+		}
+		throw failure;
+	}
+
+	/**
+	 * Performs the call within the latency budget of the resource type.
+	 *
+	 * @throws QuotaUnavailableException if the circuit is open, too many calls are running,
+	 *                                   or the call failed or timed out
+	 */
+	<T> T call(Class<?> resourceType, Supplier<T> call) {
+		Circuit circuit = circuits.computeIfAbsent(resourceType, type -> new Circuit());
+		int entry = circuit.tryEnter(nanoClock.getAsLong());
+		if (entry == Circuit.REJECTED) {
+			throw unavailable(resourceType);
+		}
+
+		Duration budget = budgetResolver.apply(resourceType);
+		if (budget != null && !circuit.calls.tryAcquire()) {
+			circuit.onIgnored(entry);
+			throw saturated(resourceType);
+		}
+		T result;
+		try {
+			result = budget == null ? call.get() : callWithin(budget, circuit.calls, call);
+		} catch (RuntimeException | Error e) {
+			if (!isDependencyFailure(e)) {
+				circuit.onIgnored(entry);
+				throw e;
+			}
+			circuit.onFailure(nanoClock.getAsLong());
+			if (e instanceof QuotaUnavailableException unavailable) {
+				throw unavailable;
+			}
+			throw new QuotaUnavailableException("Quota dependency of " + resourceType.getName() + " failed", e);
+		}
+		circuit.onSuccess();
+		return result;
+	}
+
+	/**
+	 * Performs an asynchronous call within the latency budget of the resource type.
+	 *
+	 * @return the future of the call, failed with {@link QuotaUnavailableException} if the
+	 *         circuit is open, too many calls are running, or the call failed or timed out
+	 */
+	<T> CompletableFuture<T> callAsync(Class<?> resourceType, Supplier<CompletableFuture<T>> call) {
+		Circuit circuit = circuits.computeIfAbsent(resourceType, type -> new Circuit());
+		int entry = circuit.tryEnter(nanoClock.getAsLong());
+		if (entry == Circuit.REJECTED) {
+			return CompletableFuture.failedFuture(unavailable(resourceType));
+		}
+
+		Duration budget = budgetResolver.apply(resourceType);
+		if (budget != null && !circuit.calls.tryAcquire()) {
+			circuit.onIgnored(entry);
+			return CompletableFuture.failedFuture(saturated(resourceType));
+		}
+		CompletableFuture<T> future;
+		try {
+			CompletableFuture<T> running = call.get();
+			if (budget != null) {
+				running.whenComplete((value, failure) -> circuit.calls.release());
+			}
+			future = running.copy();
+		} catch (RuntimeException e) {
+			if (budget != null) {
+				circuit.calls.release();
+			}
+			future = CompletableFuture.failedFuture(e);
+		}
+		if (budget != null) {
+			future.orTimeout(budget.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		return future.handle((value, failure) -> {
+			if (failure == null) {
+				circuit.onSuccess();
+				return value;
+			}
+			Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+			if (!isDependencyFailure(cause)) {
+				circuit.onIgnored(entry);
+				throw failure instanceof CompletionException completion ? completion : new CompletionException(cause);
+			}
+			circuit.onFailure(nanoClock.getAsLong());
+			if (cause instanceof QuotaUnavailableException unavailable) {
+				throw unavailable;
+			}
+			throw new QuotaUnavailableException("Quota dependency of " + resourceType.getName() + " failed", cause);
+		});
+	}
+
+	/**
+	 * Returns the executor running the calls with a latency budget.
+	 */
+	Executor executor() {
+		return executor;
+	}
+
+	/**
+	 * Interrupts the running calls and rejects new calls with a latency budget.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tells whether the failure, or any of its causes, is a failure of the dependency
+	 * rather than of the caller.
+	 */
+	static boolean isDependencyFailure(Throwable failure) {
+		Throwable cause = failure;
+		for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++) {
+			if (cause instanceof TimeoutException || cause instanceof QuotaUnavailableException || cause instanceof IOException
+					|| cause instanceof UncheckedIOException || cause instanceof SQLException) {
+				return true;
+			}
+			for (Class<?> type = cause.getClass(); type != null; type = type.getSuperclass()) {
+				if (DEPENDENCY_FAILURES.contains(type.getName())) {
+					return true;
+				}
+			}
+			cause = cause.getCause() == cause ? null : cause.getCause();
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the call on the executor, releasing its slot in {@code calls} once it finishes,
+	 * or once abandoned if it had not started yet.
+	 */
+	private <T> T callWithin(Duration budget, Semaphore calls, Supplier<T> call) {
+		AtomicBoolean claimed = new AtomicBoolean();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				if (!claimed.compareAndSet(false, true)) {
+					return null;
+				}
+				try {
+					return call.get();
+				} finally {
+					calls.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			calls.release();
+			throw e;
+		}
+		try {
+			return future.get(budget.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			abandon(future, claimed, calls);
+			throw new QuotaUnavailableException("Quota dependency did not respond within " + budget.toMillis() + " ms", e);
+		} catch (InterruptedException e) {
+			abandon(future, claimed, calls);
+			Thread.currentThread().interrupt();
+			throw new QuotaUnavailableException("Interrupted while waiting for a quota dependency", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+			throw new CompletionException(e.getCause());
+		}
+	}
+
+	private static void abandon(Future<?> future, AtomicBoolean claimed, Semaphore calls) {
+		future.cancel(true);
+		if (claimed.compareAndSet(false, true)) {
+			calls.release();
+		}
+	}
+
+	private static QuotaUnavailableException unavailable(Class<?> resourceType) {
+		return new QuotaUnavailableException("Quota dependency of " + resourceType.getName() + " is unavailable");
+	}
+
+	private static QuotaUnavailableException saturated(Class<?> resourceType) {
+		return new QuotaUnavailableException("Too many calls to the quota dependency of " + resourceType.getName() + " are running");
+	}
+
+	private final class Circuit {
+
+		private static final int REJECTED = 0;
+		private static final int CLOSED = 1;
+		private static final int PROBE = 2;
+
+		private final AtomicInteger failures = new AtomicInteger();
+		private final AtomicBoolean probing = new AtomicBoolean();
+		private final Semaphore calls = new Semaphore(maxConcurrentCalls);
+		private volatile long openUntil;
+
+		/**
+		 * @return {@link #CLOSED} if the circuit is closed, {@link #PROBE} if the caller
+		 *         probes the open circuit, or {@link #REJECTED}
+		 */
+		private int tryEnter(long now) {
+			if (failures.get() < failureThreshold) {
+				return CLOSED;
+			}
+			return now - openUntil >= 0 && probing.compareAndSet(false, true) ? PROBE : REJECTED;
+		}
+
+		private void onSuccess() {
+			failures.set(0);
+			probing.set(false);
+		}
+
+		/**
+		 * Leaves the circuit as it was after a call that did not reach the dependency or
+		 * failed for a reason of its own, letting another probe through.
+		 */
+		private void onIgnored(int entry) {
+			if (entry == PROBE) {
+				probing.set(false);
+			}
+		}
+
+		private void onFailure(long now) {
+			if (failures.incrementAndGet() >= failureThreshold) {
+				openUntil = now + openNanos;
+				probing.set(false);
+			}
+		}
+	}
+}
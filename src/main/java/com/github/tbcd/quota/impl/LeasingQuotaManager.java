@@ -0,0 +1,359 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link QuotaManager} enforcing limits shared by several nodes through a {@link QuotaStore}.
+ *
+ * <p>Each node leases chunks of a tenant's remaining headroom from the store and serves
+ * acquisitions and reservations from its local allowance, so that only the acquisition
+ * exhausting a chunk contacts the store. Unused units are given back on the first access
+ * after the lease expired, by a background sweep running every lease duration, so that
+ * an idle node does not hold them past twice the lease duration, when the manager is
+ * destroyed, or through {@link #returnLeases()}.</p>
+ *
+ * <p>The global usage of a tenant is initialized from the {@link ResourceCounter} of the
+ * resource the first time a node leases it, and maintained by acquisitions and releases
+ * from then on. Checks read the global usage from the store.</p>
+ */
+public class LeasingQuotaManager extends DefaultQuotaManager implements AcquiringQuotaManager {
+
+	private static final Log logger = LogFactory.getLog(LeasingQuotaManager.class);
+
+	private final StoreCounter storeCounter;
+	private final QuotaStore store;
+	private final TenantResourceMap<Allowance> allowances;
+	private final long leaseSize;
+	private final long leaseDurationNanos;
+	private final ScheduledExecutorService sweeper;
+
+	public LeasingQuotaManager(ResourceCounterRegistry resourceCounterRegistry, QuotaLimitResolver limitResolver, QuotaStore store,
+							   long leaseSize, Duration leaseDuration
+	) {
+		this(new StoreCounter(resourceCounterRegistry, store, new TenantResourceMap<>()), limitResolver, leaseSize, leaseDuration);
+	}
+
+	private LeasingQuotaManager(StoreCounter storeCounter, QuotaLimitResolver limitResolver, long leaseSize, Duration leaseDuration) {
+		super((tenant, resource) -> storeCounter, limitResolver);
+		this.storeCounter = storeCounter;
+		this.store = storeCounter.store();
+		this.allowances = storeCounter.allowances();
+		this.leaseSize = leaseSize;
+		this.leaseDurationNanos = leaseDuration.toNanos();
+		this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("quota-lease-sweeper").daemon().factory());
+		sweeper.scheduleWithFixedDelay(this::sweepExpiredLeases, leaseDurationNanos, leaseDurationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public QuotaResult tryAcquire(Tenant tenant, Object resource, long amount) {
+		getReservations().expire(tenant, resource);
+
+		QuotaWindow window = resolveWindow(tenant, resource, null);
+		if (isNested(tenant)) {
+			return recorded(resource, acquireLevels(tenant, resource, amount, window, new ArrayList<>()));
+		}
+
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			return recorded(resource, consumeWindow(tenant, resource, amount, window, new QuotaResult.NoQuota(resource)));
+		}
+
+		return recorded(resource, acquire(tenant, resource, amount, limit, window));
+	}
+
+	@Override
+	public QuotaReservation reserve(Tenant tenant, Object resource, long amount, Duration timeout, QuotaWindow window) {
+		getReservations().expire(tenant, resource);
+		QuotaWindow resolvedWindow = resolveWindow(tenant, resource, window);
+		if (isNested(tenant)) {
+			List<Allowance> acquired = new ArrayList<>();
+			QuotaResult result = recorded(resource, acquireLevels(tenant, resource, amount, resolvedWindow, acquired));
+			if (!result.allowed() || acquired.isEmpty()) {
+				return refundingWindow(ReservationLedger.unheld(result), tenant, resource, amount, resolvedWindow);
+			}
+			return refundingWindow(getReservations().registerAcquired(tenant, resource, result, timeout, () -> giveBack(acquired, amount)),
+					tenant, resource, amount, resolvedWindow);
+		}
+
+		long limit = resolveLimit(tenant, resource);
+		if (limit < 0) {
+			return super.reserve(tenant, resource, amount, timeout, window);
+		}
+
+		QuotaResult result = recorded(resource, acquire(tenant, resource, amount, limit, resolvedWindow));
+		if (!result.allowed()) {
+			return ReservationLedger.unheld(result);
+		}
+
+		Allowance allowance = storeCounter.allowance(tenant, resource);
+		return refundingWindow(getReservations().registerAcquired(tenant, resource, result, timeout, () -> giveBack(allowance, amount)),
+				tenant, resource, amount, resolvedWindow);
+	}
+
+	@Override
+	public List<QuotaReservation> reserveAll(List<QuotaRequest> requests, List<QuotaWindow> windows, Duration timeout) {
+		return reserveEach(requests, windows, timeout);
+	}
+
+	/**
+	 * Gives the released units back to the store, since the resources may have been
+	 * acquired through another node. For a {@link HierarchicalTenant}, units are given back
+	 * at each of its ancestors having a quota as well.
+	 */
+	@Override
+	public void release(Tenant tenant, Object resource, long amount) {
+		if (!isNested(tenant)) {
+			store.release(tenant, resource, amount);
+			return;
+		}
+
+		for (Tenant level : HierarchicalTenant.lineage(tenant)) {
+			if (resolveLimit(level, resource) >= 0) {
+				store.release(level, resource, amount);
+			}
+		}
+	}
+
+	/**
+	 * Gives every unused leased unit back to the store.
+	 */
+	public void returnLeases() {
+		allowances.forEach((key, allowance) -> {
+			long unused = allowance.available.getAndSet(0);
+			if (unused > 0) {
+				store.release(key::tenant, key.resourceType(), unused);
+			}
+		});
+	}
+
+	/**
+	 * Gives the unused units of every expired lease back to the store.
+	 */
+	public void returnExpiredLeases() {
+		long now = System.nanoTime();
+		allowances.forEach((key, allowance) -> {
+			if (allowance.expired(now)) {
+				returnExpired(allowance, now);
+			}
+		});
+	}
+
+	@Override
+	public void destroy() {
+		sweeper.shutdown();
+		returnLeases();
+		super.destroy();
+	}
+
+	/**
+	 * Returns the expired leases, logging failures so that the next sweep still runs.
+	 */
+	private void sweepExpiredLeases() {
+		try {
+			returnExpiredLeases();
+		} catch (RuntimeException e) {
+			logger.warn("Failed to give expired leases back to the quota store", e);
+		}
+	}
+
+	private QuotaResult acquire(Tenant tenant, Object resource, long amount, long limit, QuotaWindow window) {
+		Allowance allowance = storeCounter.allowance(tenant, resource);
+		QuotaResult result = take(tenant, resource, allowance, amount, limit);
+		if (!result.allowed()) {
+			return result;
+		}
+
+		QuotaResult windowed = consumeWindow(tenant, resource, amount, window, result);
+		if (!windowed.allowed()) {
+			giveBack(allowance, amount);
+		}
+		return windowed;
+	}
+
+	/**
+	 * Takes the amount from the allowance of every level of the tenant hierarchy having a
+	 * quota, or from none of them.
+	 *
+	 * @param acquired receives the allowances the amount was taken from
+	 */
+	private QuotaResult acquireLevels(Tenant tenant, Object resource, long amount, QuotaWindow window, List<Allowance> acquired) {
+		QuotaResult granted = null;
+		for (Tenant level : HierarchicalTenant.lineage(tenant)) {
+			long limit = resolveLimit(level, resource);
+			if (limit < 0) {
+				continue;
+			}
+			Allowance allowance = storeCounter.allowance(level, resource);
+			QuotaResult result = take(level, resource, allowance, amount, limit);
+			if (!result.allowed()) {
+				giveBack(acquired, amount);
+				acquired.clear();
+				return result;
+			}
+			acquired.add(allowance);
+			if (granted == null) {
+				granted = result;
+			}
+		}
+
+		QuotaResult result = consumeWindow(tenant, resource, amount, window, granted != null ? granted : new QuotaResult.NoQuota(resource));
+		if (!result.allowed()) {
+			giveBack(acquired, amount);
+			acquired.clear();
+		}
+		return result;
+	}
+
+	private void giveBack(List<Allowance> allowances, long amount) {
+		for (Allowance allowance : allowances) {
+			giveBack(allowance, amount);
+		}
+	}
+
+	/**
+	 * Adds the units back to the allowance while its lease is held, or gives them back to
+	 * the store once the lease was returned, since the store no longer counts them as
+	 * leased by this node.
+	 */
+	private void giveBack(Allowance allowance, long amount) {
+		synchronized (allowance) {
+			if (allowance.leased) {
+				allowance.available.addAndGet(amount);
+				return;
+			}
+		}
+		store.release(allowance.tenant, allowance.resourceType, amount);
+	}
+
+	/**
+	 * Takes the amount from the allowance, leasing only the units it lacks from the store,
+	 * so that the units left in the allowance count towards a request near the limit.
+	 */
+	private QuotaResult take(Tenant tenant, Object resource, Allowance allowance, long amount, long limit) {
+		long now = System.nanoTime();
+		if (allowance.expired(now)) {
+			returnExpired(allowance, now);
+		}
+		if (allowance.tryTake(amount)) {
+			return allowed(tenant, resource, allowance, limit);
+		}
+
+		synchronized (allowance) {
+			if (allowance.tryTake(amount)) {
+				return allowed(tenant, resource, allowance, limit);
+			}
+
+			long leftover = allowance.available.getAndSet(0);
+			long shortfall = amount - leftover;
+			QuotaLease lease = store.lease(tenant, resource, shortfall, Math.max(shortfall, leaseSize - leftover), limit);
+			allowance.usage = lease.usage();
+			if (lease.granted() < shortfall) {
+				if (lease.granted() > 0) {
+					store.release(tenant, resource, lease.granted());
+				}
+				long available = allowance.available.addAndGet(leftover);
+				return new QuotaResult.Denied(new QuotaState(tenant, resource, lease.usage() - available, limit));
+			}
+
+			allowance.expiresAt = now + leaseDurationNanos;
+			allowance.leased = true;
+			allowance.available.addAndGet(lease.granted() - shortfall);
+			return allowed(tenant, resource, allowance, limit);
+		}
+	}
+
+	private void returnExpired(Allowance allowance, long now) {
+		synchronized (allowance) {
+			if (!allowance.expired(now)) {
+				return;
+			}
+			allowance.leased = false;
+			long unused = allowance.available.getAndSet(0);
+			if (unused > 0) {
+				store.release(allowance.tenant, allowance.resourceType, unused);
+			}
+		}
+	}
+
+	/**
+	 * Reports the usage known from the last lease, which does not account for leases
+	 * taken by other nodes since then.
+	 */
+	private static QuotaResult allowed(Tenant tenant, Object resource, Allowance allowance, long limit) {
+		return new QuotaResult.Allowed(new QuotaState(tenant, resource, allowance.usage - allowance.available.get(), limit));
+	}
+
+	private static final class Allowance {
+
+		private final Tenant tenant;
+		private final Class<?> resourceType;
+		private final AtomicLong available = new AtomicLong();
+		private volatile long usage;
+		private volatile long expiresAt;
+		private volatile boolean leased;
+
+		private Allowance(Tenant tenant, Object resource) {
+			this.tenant = tenant;
+			this.resourceType = QuotaKey.resourceType(resource);
+		}
+
+		private boolean expired(long now) {
+			return leased && now - expiresAt >= 0;
+		}
+
+		private boolean tryTake(long amount) {
+			while (true) {
+				long current = available.get();
+				if (current < amount) {
+					return false;
+				}
+				if (available.compareAndSet(current, current - amount)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts usage from the store, seeding it from the delegate registry on first use.
+	 * Units leased by this node but not yet consumed are not counted.
+	 */
+	private record StoreCounter(ResourceCounterRegistry delegate, QuotaStore store, TenantResourceMap<Allowance> allowances)
+			implements LongResourceCounter {
+
+		@Override
+		public long countAsLong(Tenant tenant, Object resource) {
+			Allowance allowance = allowance(tenant, resource);
+			return Math.max(0, store.usage(tenant, resource) - allowance.available.get());
+		}
+
+		@Override
+		public boolean supports(Tenant tenant, Object resource) {
+			return true;
+		}
+
+		private Allowance allowance(Tenant tenant, Object resource) {
+			Allowance allowance = allowances.get(tenant, resource);
+			return allowance != null ? allowance : seed(tenant, resource);
+		}
+
+		private Allowance seed(Tenant tenant, Object resource) {
+			store.initialize(tenant, resource, () -> {
+				ResourceCounter counter = delegate.getResourceCounter(tenant, resource);
+				Long count = counter.count(tenant, resource);
+				return count == null ? 0 : count;
+			});
+			return allowances.getOrCreate(tenant, resource, () -> new Allowance(tenant, resource));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaMetrics;
+import com.github.tbcd.quota.QuotaResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+public class MicrometerQuotaMetrics implements QuotaMetrics {
+
+	private final ClassValue<ResourceMeters> meters;
+
+	public MicrometerQuotaMetrics(MeterRegistry meterRegistry) {
+		this.meters = new ClassValue<>() {
+
+			@Override
+			protected ResourceMeters computeValue(Class<?> type) {
+				return new ResourceMeters(meterRegistry, type.getSimpleName());
+			}
+		};
+	}
+
+	@Override
+	public void recordLimitResolution(Object resource, long nanos) {
+		meters(resource).limitResolution.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordCount(Object resource, long nanos) {
+		meters(resource).count.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordEvaluation(Object resource, long nanos) {
+		meters(resource).evaluation.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordResult(Object resource, QuotaResult result) {
+		ResourceMeters resourceMeters = meters(resource);
+		switch (result) {
+			case QuotaResult.Denied denied -> resourceMeters.denied.increment();
+			case QuotaResult.NoQuota noQuota -> resourceMeters.noQuota.increment();
+			default -> resourceMeters.allowed.increment();
+		}
+	}
+
+	private ResourceMeters meters(Object resource) {
+		return meters.get(QuotaKey.resourceType(resource));
+	}
+
+	private static final class ResourceMeters {
+
+		private final Timer limitResolution;
+		private final Timer count;
+		private final Timer evaluation;
+		private final Counter allowed;
+		private final Counter denied;
+		private final Counter noQuota;
+
+		private ResourceMeters(MeterRegistry meterRegistry, String resource) {
+			this.limitResolution = Timer.builder("quota.limit.resolution")
+					.description("Time spent resolving quota limits")
+					.tag("resource", resource)
+					.register(meterRegistry);
+			this.count = Timer.builder("quota.count")
+					.description("Time spent counting resources")
+					.tag("resource", resource)
+					.register(meterRegistry);
+			this.evaluation = Timer.builder("quota.evaluation")
+					.description("Time spent by the quota aspect before invoking the guarded method")
+					.tag("resource", resource)
+					.register(meterRegistry);
+			this.allowed = outcome(meterRegistry, resource, "allowed");
+			this.denied = outcome(meterRegistry, resource, "denied");
+			this.noQuota = outcome(meterRegistry, resource, "no_quota");
+		}
+
+		private static Counter outcome(MeterRegistry meterRegistry, String resource, String outcome) {
+			return Counter.builder("quota.checks")
+					.description("Quota checks by outcome")
+					.tag("resource", resource)
+					.tag("outcome", outcome)
+					.register(meterRegistry);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.github.tbcd.quota.impl;
+
+/**
+ * Result of a guarded resolution or count.
+ *
+ * @param value    the resolved value
+ * @param fallback whether the value is a fallback that must not be cached
+ */
+record Outcome<T>(T value, boolean fallback) {
+}
@@ -0,0 +1,47 @@
+package com.github.tbcd.quota.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event covering a call to the {@link com.github.tbcd.quota.ResourceCounter}
+ * of a {@link DefaultQuotaManager}.
+ *
+ * <p>Only calls lasting longer than the threshold are recorded. It can be changed like
+ * that of JDK events, for instance with
+ * {@code -XX:StartFlightRecording:com.github.tbcd.quota.Count#threshold=0ms}.</p>
+ */
+@Name("com.github.tbcd.quota.Count")
+@Label("Quota Count")
+@Category("Quota")
+@Description("Count of the resources used by tenants")
+@Threshold("1 ms")
+final class QuotaCountEvent extends Event {
+
+	@Label("Resource Type")
+	Class<?> resourceType;
+
+	@Label("Counter")
+	Class<?> counter;
+
+	@Label("Tenants")
+	@Description("Number of tenants counted together")
+	int tenants;
+
+	/**
+	 * Ends the event and commits it if it lasted longer than the threshold.
+	 */
+	void complete(Object resource, Object counter, int tenants) {
+		end();
+		if (shouldCommit()) {
+			this.resourceType = QuotaKey.resourceType(resource);
+			this.counter = counter.getClass();
+			this.tenants = tenants;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+
+record QuotaKey(Object tenant, Class<?> resourceType) {
+
+	static QuotaKey of(Tenant tenant, Object resource) {
+		return new QuotaKey(tenantValue(tenant), resourceType(resource));
+	}
+
+	static Object tenantValue(Tenant tenant) {
+		return tenant == null ? null : tenant.getValue();
+	}
+
+	static Class<?> resourceType(Object resource) {
+		return resource instanceof Class<?> type ? type : resource.getClass();
+	}
+}
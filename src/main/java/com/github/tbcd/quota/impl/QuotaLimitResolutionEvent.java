@@ -0,0 +1,43 @@
+package com.github.tbcd.quota.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event covering a call to the {@link com.github.tbcd.quota.QuotaLimitResolver}
+ * of a {@link DefaultQuotaManager}.
+ *
+ * <p>Only calls lasting longer than the threshold are recorded. It can be changed like
+ * that of JDK events, for instance with
+ * {@code -XX:StartFlightRecording:com.github.tbcd.quota.LimitResolution#threshold=0ms}.</p>
+ */
+@Name("com.github.tbcd.quota.LimitResolution")
+@Label("Quota Limit Resolution")
+@Category("Quota")
+@Description("Resolution of the quota limits of tenants")
+@Threshold("1 ms")
+final class QuotaLimitResolutionEvent extends Event {
+
+	@Label("Resource Type")
+	Class<?> resourceType;
+
+	@Label("Tenants")
+	@Description("Number of tenants whose limit was resolved together")
+	int tenants;
+
+	/**
+	 * Ends the event and commits it if it lasted longer than the threshold.
+	 */
+	void complete(Object resource, int tenants) {
+		end();
+		if (shouldCommit()) {
+			this.resourceType = QuotaKey.resourceType(resource);
+			this.tenants = tenants;
+			commit();
+		}
+	}
+}
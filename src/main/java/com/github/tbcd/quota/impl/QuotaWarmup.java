@@ -0,0 +1,147 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.HierarchicalTenant;
+import com.github.tbcd.quota.QuotaManager;
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.Tenant;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloads the usage and limits of a set of tenants, so that their first quota check
+ * after startup hits warm caches.
+ *
+ * <p>Tenants are split into batches per resource type, and each batch is loaded through a
+ * single {@link DefaultQuotaManager#getStates(List)} call, which resolves limits through
+ * {@link com.github.tbcd.quota.BatchQuotaLimitResolver} and counts usages through
+ * {@link com.github.tbcd.quota.BatchResourceCounter} when available. Other quota managers
+ * are warmed up one state at a time through {@link QuotaManager#getState}.</p>
+ *
+ * <p>Warming up only pays off when the loaded values are retained, for instance by
+ * {@link CachingQuotaLimitResolver}, {@link CachingResourceCounterRegistry},
+ * {@link InMemoryResourceCounter} or a {@link LeasingQuotaManager}.</p>
+ */
+public class QuotaWarmup {
+
+	private static final Log logger = LogFactory.getLog(QuotaWarmup.class);
+
+	private final QuotaManager quotaManager;
+	private final int batchSize;
+	private final int concurrency;
+
+	public QuotaWarmup(QuotaManager quotaManager, int batchSize, int concurrency) {
+		if (batchSize < 1 || concurrency < 1) {
+			throw new IllegalArgumentException("Batch size and concurrency must be positive");
+		}
+		this.quotaManager = quotaManager;
+		this.batchSize = batchSize;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Loads the state of every tenant for every resource type, running at most
+	 * {@code concurrency} batches at once, and blocks until all batches completed.
+	 *
+	 * @param tenants   the tenants to warm up
+	 * @param resources the resource types to warm up, either instances or {@link Class}es
+	 * @return the outcome of the warmup
+	 */
+	public Result warmUp(Collection<? extends Tenant> tenants, Collection<?> resources) {
+		long start = System.nanoTime();
+		List<List<QuotaRequest>> batches = batches(tenants, resources);
+		int total = batches.stream().mapToInt(List::size).sum();
+		if (total == 0) {
+			return new Result(0, 0, Duration.ZERO);
+		}
+
+		logger.info("Warming up " + total + " quota states in " + batches.size() + " batches");
+		AtomicLong loaded = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+		AtomicInteger reportedDecile = new AtomicInteger();
+		Semaphore permits = new Semaphore(concurrency);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (List<QuotaRequest> batch : batches) {
+				permits.acquireUninterruptibly();
+				executor.execute(() -> {
+					try {
+						load(batch);
+						loaded.addAndGet(batch.size());
+					} catch (RuntimeException e) {
+						failed.addAndGet(batch.size());
+						logger.warn("Failed to warm up " + batch.size() + " quota states", e);
+					} finally {
+						permits.release();
+					}
+					reportProgress(loaded.get() + failed.get(), total, reportedDecile);
+				});
+			}
+		}
+
+		Result result = new Result(loaded.get(), failed.get(), Duration.ofNanos(System.nanoTime() - start));
+		logger.info("Warmed up " + result.loaded() + " quota states in " + result.duration().toMillis() + " ms"
+				+ (result.failed() > 0 ? " (" + result.failed() + " failed)" : ""));
+		return result;
+	}
+
+	private void load(List<QuotaRequest> batch) {
+		if (quotaManager instanceof DefaultQuotaManager defaultQuotaManager) {
+			defaultQuotaManager.getStates(batch);
+			return;
+		}
+		for (QuotaRequest request : batch) {
+			quotaManager.getState(request.tenant(), request.resource());
+		}
+	}
+
+	/**
+	 * Splits the requests into batches of a single resource type, including the ancestors
+	 * of nested tenants.
+	 */
+	private List<List<QuotaRequest>> batches(Collection<? extends Tenant> tenants, Collection<?> resources) {
+		List<List<QuotaRequest>> batches = new ArrayList<>();
+		for (Object resource : resources) {
+			List<QuotaRequest> batch = new ArrayList<>(batchSize);
+			for (Tenant tenant : tenants) {
+				for (Tenant level : HierarchicalTenant.lineage(tenant)) {
+					batch.add(QuotaRequest.of(level, resource));
+					if (batch.size() == batchSize) {
+						batches.add(batch);
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+			}
+			if (!batch.isEmpty()) {
+				batches.add(batch);
+			}
+		}
+		return batches;
+	}
+
+	private static void reportProgress(long done, int total, AtomicInteger reportedDecile) {
+		int decile = (int) (done * 10 / total);
+		int reported = reportedDecile.get();
+		if (decile > reported && decile < 10 && reportedDecile.compareAndSet(reported, decile)) {
+			logger.info("Quota warmup " + decile * 10 + "% complete (" + done + "/" + total + ")");
+		}
+	}
+
+	/**
+	 * Outcome of a warmup.
+	 *
+	 * @param loaded   the number of quota states loaded
+	 * @param failed   the number of quota states whose batch failed
+	 * @param duration the time taken by the warmup
+	 */
+	public record Result(long loaded, long failed, Duration duration) {
+	}
+}
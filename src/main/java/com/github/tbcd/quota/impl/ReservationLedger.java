@@ -0,0 +1,353 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaReservation;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.internal.TransactionCallbacks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks active reservations per tenant and resource type.
+ *
+ * <p>Reservations are expired lazily, whenever their key is accessed again. Expiry only
+ * drops what the ledger itself holds, such as a pending amount: the operation may still
+ * be running and succeed, so units acquired from a counter stay acquired until the
+ * reservation is cancelled.</p>
+ *
+ * <p>A reservation committed within a Spring transaction keeps holding its amount until
+ * the transaction completes: its usage is only visible to counters once the transaction
+ * commits, and is settled as cancelled if it rolls back.</p>
+ *
+ * <p>The holdings of a tenant and resource type are removed once nothing is pending or
+ * active anymore. Removed holdings are marked so that a concurrent hold retries on fresh
+ * ones.</p>
+ */
+final class ReservationLedger {
+
+	private static final long EVICTED = Long.MIN_VALUE;
+
+	private final TenantResourceMap<Holdings> holdings = new TenantResourceMap<>();
+
+	static QuotaReservation unheld(QuotaResult result) {
+		return new Unheld(result);
+	}
+
+	/**
+	 * Returns a reservation running {@code onCancel} once when cancelled, even if it held
+	 * nothing or expired.
+	 */
+	static QuotaReservation onCancel(QuotaReservation reservation, Runnable onCancel) {
+		return new Cancellable(reservation, onCancel);
+	}
+
+	/**
+	 * Combines reservations taken at several levels of a tenant hierarchy, committed or
+	 * cancelled together.
+	 */
+	static QuotaReservation combine(QuotaResult result, List<QuotaReservation> reservations) {
+		return new Combined(result, List.copyOf(reservations));
+	}
+
+	long pending(Tenant tenant, Object resource) {
+		Holdings current = holdings.get(tenant, resource);
+		if (current == null) {
+			return 0;
+		}
+		current.expire(System.nanoTime());
+		long pending = current.pending.get();
+		return pending == EVICTED ? 0 : pending;
+	}
+
+	/**
+	 * Adds {@code amount} to the pending amount of the tenant and resource type unless it
+	 * would exceed {@code limit} given the current {@code used} count.
+	 *
+	 * @return the pending amount the decision was based on; the amount is held if
+	 *         {@code amount <= limit - used - pending}
+	 */
+	long tryHold(Tenant tenant, Object resource, long used, long amount, long limit) {
+		Holdings current = holdings(tenant, resource);
+		current.expire(System.nanoTime());
+		while (true) {
+			long pending = current.pending.get();
+			if (pending == EVICTED) {
+				holdings.remove(tenant, resource, current);
+				current = holdings(tenant, resource);
+				continue;
+			}
+			if (amount > limit - used - pending) {
+				current.evictIfIdle();
+				return pending;
+			}
+			if (current.pending.compareAndSet(pending, pending + amount)) {
+				return pending;
+			}
+		}
+	}
+
+	void releasePending(Tenant tenant, Object resource, long amount) {
+		Holdings current = holdings.get(tenant, resource);
+		if (amount == 0 || current == null) {
+			return;
+		}
+		current.pending.addAndGet(-amount);
+		current.evictIfIdle();
+	}
+
+	/**
+	 * Registers a reservation of an amount held by the ledger.
+	 *
+	 * @param onCommit  run when the reservation is committed, even after it expired, and
+	 *                  its transaction if any commits
+	 * @param onRelease run once when the reservation is settled or expires, to stop
+	 *                  holding the amount
+	 */
+	QuotaReservation register(Tenant tenant, Object resource, QuotaResult result, Duration timeout, Runnable onCommit, Runnable onRelease) {
+		return register(tenant, resource, result, timeout, onCommit, onRelease, () -> {});
+	}
+
+	/**
+	 * Registers a reservation of units already acquired from a counter. The units are
+	 * kept when the reservation is committed or expires, and given back when it is
+	 * cancelled, even after it expired, or when the transaction it was committed in rolls
+	 * back.
+	 *
+	 * @param onCancel run when the reservation is cancelled, to give the units back
+	 */
+	QuotaReservation registerAcquired(Tenant tenant, Object resource, QuotaResult result, Duration timeout, Runnable onCancel) {
+		return register(tenant, resource, result, timeout, () -> {}, () -> {}, onCancel);
+	}
+
+	private QuotaReservation register(Tenant tenant, Object resource, QuotaResult result, Duration timeout,
+									  Runnable onCommit, Runnable onRelease, Runnable onCancel
+	) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (true) {
+			Holdings current = holdings(tenant, resource);
+			Reservation reservation = new Reservation(current, result, deadline, onCommit, onRelease, onCancel);
+			current.active.add(reservation);
+			if (current.pending.get() != EVICTED) {
+				return reservation;
+			}
+			current.active.remove(reservation);
+			holdings.remove(tenant, resource, current);
+		}
+	}
+
+	void expire(Tenant tenant, Object resource) {
+		Holdings current = holdings.get(tenant, resource);
+		if (current != null) {
+			current.expire(System.nanoTime());
+		}
+	}
+
+	/**
+	 * Returns the number of tenant and resource type pairs with holdings.
+	 */
+	int size() {
+		int[] size = {0};
+		holdings.forEach((key, current) -> size[0]++);
+		return size[0];
+	}
+
+	private Holdings holdings(Tenant tenant, Object resource) {
+		return holdings.getOrCreate(tenant, resource, () -> new Holdings(QuotaKey.of(tenant, resource)));
+	}
+
+	private final class Holdings {
+
+		private final QuotaKey key;
+		private final AtomicLong pending = new AtomicLong();
+		private final Set<Reservation> active = ConcurrentHashMap.newKeySet();
+
+		private Holdings(QuotaKey key) {
+			this.key = key;
+		}
+
+		/**
+		 * Removes the holdings if nothing is pending or active. A reservation registered
+		 * concurrently notices the mark and registers again on fresh holdings.
+		 */
+		private void evictIfIdle() {
+			if (active.isEmpty() && pending.get() == 0 && pending.compareAndSet(0, EVICTED)) {
+				holdings.remove(key::tenant, key.resourceType(), this);
+			}
+		}
+
+		private void expire(long now) {
+			if (active.isEmpty()) {
+				return;
+			}
+			for (Reservation reservation : active) {
+				if (now - reservation.deadline >= 0) {
+					reservation.expire();
+				}
+			}
+		}
+	}
+
+	private static final class Reservation implements QuotaReservation {
+
+		private static final int ACTIVE = 0;
+		private static final int EXPIRED = 1;
+		private static final int SETTLED = 2;
+
+		private final Holdings holdings;
+		private final QuotaResult result;
+		private final long deadline;
+		private final Runnable onCommit;
+		private final Runnable onRelease;
+		private final Runnable onCancel;
+		private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+		private Reservation(Holdings holdings, QuotaResult result, long deadline, Runnable onCommit, Runnable onRelease, Runnable onCancel) {
+			this.holdings = holdings;
+			this.result = result;
+			this.deadline = deadline;
+			this.onCommit = onCommit;
+			this.onRelease = onRelease;
+			this.onCancel = onCancel;
+		}
+
+		@Override
+		public QuotaResult result() {
+			return result;
+		}
+
+		/**
+		 * Commits the reservation. A reservation past its deadline is committed as well,
+		 * since its resources exist, but reports {@code false} as its amount may have been
+		 * granted to other callers meanwhile.
+		 */
+		@Override
+		public boolean commit() {
+			if (state.compareAndSet(ACTIVE, SETTLED)) {
+				holdings.active.remove(this);
+				settle(onRelease);
+				return System.nanoTime() - deadline < 0;
+			}
+			if (state.compareAndSet(EXPIRED, SETTLED)) {
+				settle(() -> {});
+			}
+			return false;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (state.compareAndSet(ACTIVE, SETTLED)) {
+				holdings.active.remove(this);
+				onRelease.run();
+				onCancel.run();
+				holdings.evictIfIdle();
+				return true;
+			}
+			if (state.compareAndSet(EXPIRED, SETTLED)) {
+				onCancel.run();
+			}
+			return false;
+		}
+
+		private void expire() {
+			if (state.compareAndSet(ACTIVE, EXPIRED)) {
+				holdings.active.remove(this);
+				onRelease.run();
+				holdings.evictIfIdle();
+			}
+		}
+
+		/**
+		 * Commits now, or once the current transaction completes: {@code onCommit} only
+		 * runs if it commits, and {@code onCancel} if it rolls back.
+		 */
+		private void settle(Runnable release) {
+			if (TransactionCallbacks.afterCompletion(committed -> {
+				if (committed) {
+					onCommit.run();
+				}
+				release.run();
+				if (!committed) {
+					onCancel.run();
+				}
+				holdings.evictIfIdle();
+			})) {
+				return;
+			}
+			onCommit.run();
+			release.run();
+			holdings.evictIfIdle();
+		}
+	}
+
+	private static final class Cancellable implements QuotaReservation {
+
+		private final QuotaReservation reservation;
+		private final Runnable onCancel;
+		private final AtomicBoolean settled = new AtomicBoolean();
+
+		private Cancellable(QuotaReservation reservation, Runnable onCancel) {
+			this.reservation = reservation;
+			this.onCancel = onCancel;
+		}
+
+		@Override
+		public QuotaResult result() {
+			return reservation.result();
+		}
+
+		@Override
+		public boolean commit() {
+			return settled.compareAndSet(false, true) && reservation.commit();
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!settled.compareAndSet(false, true)) {
+				return false;
+			}
+			boolean cancelled = reservation.cancel();
+			onCancel.run();
+			return cancelled;
+		}
+	}
+
+	private record Combined(QuotaResult result, List<QuotaReservation> reservations) implements QuotaReservation {
+
+		@Override
+		public boolean commit() {
+			boolean committed = true;
+			for (QuotaReservation reservation : reservations) {
+				committed &= reservation.commit();
+			}
+			return committed;
+		}
+
+		@Override
+		public boolean cancel() {
+			boolean cancelled = false;
+			for (QuotaReservation reservation : reservations) {
+				cancelled |= reservation.cancel();
+			}
+			return cancelled;
+		}
+	}
+
+	private record Unheld(QuotaResult result) implements QuotaReservation {
+
+		@Override
+		public boolean commit() {
+			return result.allowed();
+		}
+
+		@Override
+		public boolean cancel() {
+			return false;
+		}
+	}
+}
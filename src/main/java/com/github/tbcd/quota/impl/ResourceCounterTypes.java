@@ -0,0 +1,52 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.CountsResource;
+import com.github.tbcd.quota.ResourceCounter;
+import org.springframework.beans.factory.support.RegisteredBean;
+import org.springframework.util.ClassUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resource types of the {@link CountsResource} counters of an application context,
+ * registered at build time.
+ *
+ * <p>The code generated by Spring AOT registers the types of each declared counter bean
+ * in the instance of its context when the counter is instantiated, so that
+ * {@link DefaultResourceCounterRegistry} indexes it without reading the annotation
+ * reflectively. Counters missing from it fall back on
+ * {@link ResourceCounter#resourceTypes()}.</p>
+ */
+public final class ResourceCounterTypes {
+
+	private final Map<Class<?>, Set<Class<?>>> registeredTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers the resource types counted by instances of the given counter class.
+	 */
+	public void register(Class<? extends ResourceCounter> counterClass, Class<?>... resourceTypes) {
+		registeredTypes.put(counterClass, Set.of(resourceTypes));
+	}
+
+	/**
+	 * Registers the resource types of the counter bean in the instance defined by its
+	 * context, if any.
+	 *
+	 * <p>This method is meant to be called by generated code only.</p>
+	 */
+	public static void register(RegisteredBean counterBean, Class<? extends ResourceCounter> counterClass, Class<?>... resourceTypes) {
+		counterBean.getBeanFactory().getBeanProvider(ResourceCounterTypes.class)
+				.ifAvailable(types -> types.register(counterClass, resourceTypes));
+	}
+
+	/**
+	 * Returns the registered resource types of the counter, or its declared ones if its
+	 * class was not registered.
+	 */
+	Set<Class<?>> of(ResourceCounter counter) {
+		Set<Class<?>> types = registeredTypes.get(ClassUtils.getUserClass(counter));
+		return types != null ? types : counter.resourceTypes();
+	}
+}
@@ -0,0 +1,74 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent map keyed by resource type and tenant value.
+ *
+ * <p>Unlike a map keyed by {@link QuotaKey}, lookups do not allocate a composite key,
+ * which keeps the quota check hot path allocation-free.</p>
+ */
+final class TenantResourceMap<V> {
+
+	private static final Object NULL_TENANT = new Object();
+
+	private final Map<Class<?>, Map<Object, V>> values = new ConcurrentHashMap<>();
+
+	V get(Tenant tenant, Object resource) {
+		Map<Object, V> byTenant = values.get(QuotaKey.resourceType(resource));
+		return byTenant == null ? null : byTenant.get(tenantKey(QuotaKey.tenantValue(tenant)));
+	}
+
+	V getOrCreate(Tenant tenant, Object resource, Supplier<V> factory) {
+		V value = get(tenant, resource);
+		if (value != null) {
+			return value;
+		}
+
+		V created = factory.get();
+		V previous = values.computeIfAbsent(QuotaKey.resourceType(resource), type -> new ConcurrentHashMap<>())
+				.putIfAbsent(tenantKey(QuotaKey.tenantValue(tenant)), created);
+		return previous != null ? previous : created;
+	}
+
+	void put(QuotaKey key, V value) {
+		values.computeIfAbsent(key.resourceType(), type -> new ConcurrentHashMap<>()).put(tenantKey(key.tenant()), value);
+	}
+
+	V remove(Tenant tenant, Object resource) {
+		Map<Object, V> byTenant = values.get(QuotaKey.resourceType(resource));
+		return byTenant == null ? null : byTenant.remove(tenantKey(QuotaKey.tenantValue(tenant)));
+	}
+
+	/**
+	 * Removes the value mapped to the tenant and resource type if it is still the given one.
+	 */
+	void remove(Tenant tenant, Object resource, V value) {
+		Map<Object, V> byTenant = values.get(QuotaKey.resourceType(resource));
+		if (byTenant != null) {
+			byTenant.remove(tenantKey(QuotaKey.tenantValue(tenant)), value);
+		}
+	}
+
+	/**
+	 * Removes every value matching the filter, unless it is replaced meanwhile.
+	 */
+	void removeIf(Predicate<V> filter) {
+		values.values().forEach(byTenant -> byTenant.values().removeIf(filter));
+	}
+
+	void forEach(BiConsumer<QuotaKey, V> action) {
+		values.forEach((type, byTenant) -> byTenant.forEach((tenant, value) ->
+				action.accept(new QuotaKey(tenant == NULL_TENANT ? null : tenant, type), value)));
+	}
+
+	private static Object tenantKey(Object tenantValue) {
+		return tenantValue == null ? NULL_TENANT : tenantValue;
+	}
+}
@@ -0,0 +1,75 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Last exact counts per tenant and resource type, used in place of a new count while the
+ * remaining headroom leaves a comfortable margin.
+ *
+ * <p>An estimate is accepted when the headroom left after the requested amount is at
+ * least {@code headroomRatio} of the limit, plus as much again scaled by the age of the
+ * count relative to {@code maxAge}: a count taken just now needs 10% of headroom with a
+ * ratio of 0.1, one about to expire needs 20%. Older counts are never used. The margin
+ * absorbs the resources created since the count, as long as they grow by less than
+ * {@code headroomRatio} of the limit per {@code maxAge}.</p>
+ */
+final class UsageEstimates {
+
+	private final BoundedCache<QuotaKey, Long> counts;
+	private final Duration maxAge;
+	private final double maxAgeNanos;
+	private final double headroomRatio;
+
+	UsageEstimates(int maximumSize, Duration maxAge, double headroomRatio) {
+		if (maxAge.isZero() || maxAge.isNegative()) {
+			throw new IllegalArgumentException("Maximum age must be positive: " + maxAge);
+		}
+		if (headroomRatio < 0) {
+			throw new IllegalArgumentException("Headroom ratio must not be negative: " + headroomRatio);
+		}
+		this.counts = new BoundedCache<>(maximumSize);
+		this.maxAge = maxAge;
+		this.maxAgeNanos = maxAge.toNanos();
+		this.headroomRatio = headroomRatio;
+	}
+
+	/**
+	 * Returns the last exact count if it leaves enough headroom for the amount.
+	 *
+	 * @param limit  the limit, minus any usage not covered by the count such as pending
+	 *               reservations
+	 * @param amount the requested amount
+	 * @return the estimated count, or a negative value if an exact count is required
+	 */
+	long estimate(Tenant tenant, Object resource, long limit, long amount) {
+		BoundedCache.Entry<Long> entry = counts.getEntry(QuotaKey.of(tenant, resource));
+		if (entry == null) {
+			return -1;
+		}
+
+		long count = entry.value();
+		double age = Math.min(1, entry.ageNanos(System.nanoTime()) / maxAgeNanos);
+		double margin = limit * headroomRatio * (1 + age);
+		return limit - count - amount >= margin ? count : -1;
+	}
+
+	void record(Tenant tenant, Object resource, long count) {
+		counts.put(QuotaKey.of(tenant, resource), count, maxAge);
+	}
+
+	void invalidate(Tenant tenant, Object resource) {
+		counts.invalidate(QuotaKey.of(tenant, resource));
+	}
+
+	void invalidateTenant(Tenant tenant) {
+		Object tenantValue = QuotaKey.tenantValue(tenant);
+		counts.invalidateIf(key -> Objects.equals(key.tenant(), tenantValue));
+	}
+
+	void clear() {
+		counts.clear();
+	}
+}
@@ -0,0 +1,183 @@
+package com.github.tbcd.quota.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Append-only log of usage changes of an {@link InMemoryResourceCounter}.
+ *
+ * <p>Each record holds the new usage of a tenant and resource type rather than the
+ * difference, so replaying a log over a more recent snapshot is harmless. Records are
+ * buffered in memory and written by {@link #flush()}; a crash loses at most the records
+ * of the last flush interval, which lazy reconciliation recovers.</p>
+ *
+ * <p>A journal is written by a single thread at a time, the one draining the changes of
+ * the counter, and is not thread-safe.</p>
+ *
+ * <p>Only {@link String}, {@link Long}, {@link Integer}, {@link UUID} and {@code null}
+ * tenant values are persisted. Usages of other tenants are recounted after a restart.</p>
+ */
+final class UsageJournal implements Closeable {
+
+	/**
+	 * Usage recorded when a counter is reset.
+	 */
+	static final long REMOVED = -1;
+
+	private static final byte NULL_TENANT = 0;
+	private static final byte STRING_TENANT = 1;
+	private static final byte LONG_TENANT = 2;
+	private static final byte INTEGER_TENANT = 3;
+	private static final byte UUID_TENANT = 4;
+
+	private static final ClassValue<byte[]> TYPE_NAMES = new ClassValue<>() {
+
+		@Override
+		protected byte[] computeValue(Class<?> type) {
+			return type.getName().getBytes(StandardCharsets.UTF_8);
+		}
+	};
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+	private boolean closed;
+
+	UsageJournal(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Appends a record to the buffer, skipping tenants whose value cannot be persisted.
+	 */
+	void record(Object tenantValue, Class<?> resourceType, long value) {
+		int size = size(tenantValue, resourceType);
+		if (size < 0 || size > buffer.capacity()) {
+			return;
+		}
+		if (closed) {
+			throw new IllegalStateException("Quota usage journal is closed");
+		}
+		if (buffer.remaining() < size) {
+			writeBuffer();
+		}
+		write(buffer, tenantValue, resourceType, value);
+	}
+
+	void flush() {
+		if (!closed) {
+			writeBuffer();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		writeBuffer();
+		closed = true;
+		channel.force(false);
+		channel.close();
+	}
+
+	private void writeBuffer() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write quota usage journal", e);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Returns the encoded size of a record.
+	 *
+	 * @return the size in bytes, or a negative value if the tenant value cannot be persisted
+	 */
+	static int size(Object tenantValue, Class<?> resourceType) {
+		int tenantSize = switch (tenantValue) {
+			case null -> 0;
+			case String string -> Integer.BYTES + string.length() * 3;
+			case Long ignored -> Long.BYTES;
+			case Integer ignored -> Integer.BYTES;
+			case UUID ignored -> 2 * Long.BYTES;
+			default -> -1;
+		};
+		if (tenantSize < 0) {
+			return -1;
+		}
+		return Short.BYTES + TYPE_NAMES.get(resourceType).length + 1 + tenantSize + Long.BYTES;
+	}
+
+	static void write(ByteBuffer target, Object tenantValue, Class<?> resourceType, long value) {
+		byte[] typeName = TYPE_NAMES.get(resourceType);
+		target.putShort((short) typeName.length);
+		target.put(typeName);
+		switch (tenantValue) {
+			case null -> target.put(NULL_TENANT);
+			case String string -> {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				target.put(STRING_TENANT).putInt(bytes.length).put(bytes);
+			}
+			case Long number -> target.put(LONG_TENANT).putLong(number);
+			case Integer number -> target.put(INTEGER_TENANT).putInt(number);
+			case UUID uuid -> target.put(UUID_TENANT).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+			default -> throw new IllegalArgumentException("Unsupported tenant value: " + tenantValue.getClass().getName());
+		}
+		target.putLong(value);
+	}
+
+	/**
+	 * Reads records until the end of the buffer, ignoring a truncated trailing record and
+	 * records of resource types that no longer exist.
+	 */
+	static void read(ByteBuffer source, ClassLoader classLoader, ObjLongConsumer<QuotaKey> action) {
+		try {
+			while (source.hasRemaining()) {
+				byte[] typeName = new byte[source.getShort()];
+				source.get(typeName);
+				Object tenantValue = switch (source.get()) {
+					case NULL_TENANT -> null;
+					case STRING_TENANT -> {
+						byte[] bytes = new byte[source.getInt()];
+						source.get(bytes);
+						yield new String(bytes, StandardCharsets.UTF_8);
+					}
+					case LONG_TENANT -> source.getLong();
+					case INTEGER_TENANT -> source.getInt();
+					case UUID_TENANT -> new UUID(source.getLong(), source.getLong());
+					default -> throw new IllegalStateException("Corrupted quota usage record");
+				};
+				long value = source.getLong();
+
+				Class<?> resourceType = resourceType(new String(typeName, StandardCharsets.UTF_8), classLoader);
+				if (resourceType != null) {
+					action.accept(new QuotaKey(tenantValue, resourceType), value);
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			// Trailing record interrupted by a crash
+		}
+	}
+
+	private static Class<?> resourceType(String name, ClassLoader classLoader) {
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+}
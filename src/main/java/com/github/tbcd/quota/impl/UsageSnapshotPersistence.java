@@ -0,0 +1,241 @@
+package com.github.tbcd.quota.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Persists the usages of an {@link InMemoryResourceCounter} across restarts.
+ *
+ * <p>Usages are periodically written to a memory-mapped snapshot file, and every change
+ * made in between is appended to a {@link UsageJournal}. On startup the snapshot is
+ * mapped and the journals written after it are replayed, which restores the counter
+ * without counting any resource. Restored usages are reconciled with the seed counter
+ * of the {@link InMemoryResourceCounter} lazily, the first time each is accessed.</p>
+ *
+ * <p>Each snapshot starts a new journal generation, and journals older than the last
+ * snapshot are deleted. Changed usages are drained from the counter into the journal on
+ * every flush, so the hot path of the counter never touches the journal. A failed
+ * scheduled flush or snapshot is logged and attempted again at the next interval.</p>
+ */
+public class UsageSnapshotPersistence implements SmartInitializingSingleton, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(UsageSnapshotPersistence.class);
+	private static final String SNAPSHOT_FILE = "usage.snapshot";
+	private static final Pattern JOURNAL_FILE = Pattern.compile("usage-(\\d+)\\.log");
+	private static final int MAGIC = 0x51534e50;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+	private static final int DEFAULT_RECONCILIATION_CONCURRENCY = 4;
+
+	private final InMemoryResourceCounter counter;
+	private final Path directory;
+	private final Duration snapshotInterval;
+	private final Duration flushInterval;
+	private final int reconciliationConcurrency;
+	private ScheduledExecutorService scheduler;
+	private UsageJournal journal;
+	private long generation;
+
+	public UsageSnapshotPersistence(InMemoryResourceCounter counter, Path directory, Duration snapshotInterval, Duration flushInterval) {
+		this(counter, directory, snapshotInterval, flushInterval, DEFAULT_RECONCILIATION_CONCURRENCY);
+	}
+
+	/**
+	 * @param reconciliationConcurrency maximum number of restored usages recounted through
+	 *                                  the seed counter at once
+	 */
+	public UsageSnapshotPersistence(InMemoryResourceCounter counter, Path directory, Duration snapshotInterval, Duration flushInterval,
+									int reconciliationConcurrency
+	) {
+		this.counter = counter;
+		this.directory = directory;
+		this.snapshotInterval = snapshotInterval;
+		this.flushInterval = flushInterval;
+		this.reconciliationConcurrency = reconciliationConcurrency;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		load();
+		snapshot();
+		scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("quota-usage-snapshot").daemon().factory());
+		scheduler.scheduleWithFixedDelay(() -> logFailure(this::flush, "flush quota usage journal"),
+				flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(() -> logFailure(this::snapshot, "write quota usage snapshot"),
+				snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes a last snapshot, unless persistence never started, so that a counter which
+	 * failed to load does not overwrite the snapshot it failed to restore.
+	 */
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+		if (journal != null) {
+			snapshot();
+		}
+		closeJournal();
+	}
+
+	/**
+	 * Restores the counter from the last snapshot and the journals written after it.
+	 */
+	public synchronized void load() {
+		ClassLoader classLoader = InMemoryResourceCounter.class.getClassLoader();
+		counter.setReconciliationConcurrency(reconciliationConcurrency);
+		try {
+			Files.createDirectories(directory);
+
+			Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+			long snapshotGeneration = 0;
+			if (Files.exists(snapshotFile)) {
+				try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+					MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					if (mapped.getInt() == MAGIC && mapped.getInt() == VERSION) {
+						snapshotGeneration = mapped.getLong();
+						long length = mapped.getLong();
+						UsageJournal.read(mapped.slice(HEADER_SIZE, (int) length), classLoader, counter::restore);
+					}
+				}
+			}
+
+			for (var journalFile : journals().tailMap(snapshotGeneration, true).entrySet()) {
+				try (FileChannel channel = FileChannel.open(journalFile.getValue(), StandardOpenOption.READ)) {
+					UsageJournal.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), classLoader, counter::restore);
+				}
+				generation = Math.max(generation, journalFile.getKey());
+			}
+			generation = Math.max(generation, snapshotGeneration);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to load quota usage snapshot from " + directory, e);
+		}
+	}
+
+	/**
+	 * Starts a new journal generation, writes every usage to the snapshot file and
+	 * deletes the journals it supersedes.
+	 */
+	public synchronized void snapshot() {
+		try {
+			long next = generation + 1;
+			UsageJournal previous = journal;
+			if (previous != null) {
+				counter.drainChanges(previous);
+				previous.close();
+			}
+			journal = new UsageJournal(journalFile(next));
+			counter.trackChanges();
+			generation = next;
+
+			writeSnapshot(next);
+
+			for (var journalFile : journals().headMap(next).values()) {
+				Files.deleteIfExists(journalFile);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write quota usage snapshot to " + directory, e);
+		}
+	}
+
+	/**
+	 * Writes the usages changed since the last flush to the journal.
+	 */
+	public synchronized void flush() {
+		if (journal != null) {
+			counter.drainChanges(journal);
+			journal.flush();
+		}
+	}
+
+	private synchronized void closeJournal() {
+		if (journal == null) {
+			return;
+		}
+		counter.drainChanges(journal);
+		try {
+			journal.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to close quota usage journal in " + directory, e);
+		}
+	}
+
+	/**
+	 * Runs a scheduled task, logging its failure rather than letting it cancel the task.
+	 */
+	private void logFailure(Runnable task, String description) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			logger.error("Failed to " + description + " in " + directory, e);
+		}
+	}
+
+	private void writeSnapshot(long snapshotGeneration) throws IOException {
+		List<QuotaKey> keys = new ArrayList<>();
+		List<Long> values = new ArrayList<>();
+		long[] length = {0};
+		counter.forEachUsage((key, value) -> {
+			int size = UsageJournal.size(key.tenant(), key.resourceType());
+			if (size >= 0) {
+				keys.add(key);
+				values.add(value);
+				length[0] += size;
+			}
+		});
+
+		Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + length[0]);
+			ByteBuffer payload = mapped.slice(HEADER_SIZE, (int) length[0]);
+			for (int i = 0; i < keys.size(); i++) {
+				UsageJournal.write(payload, keys.get(i).tenant(), keys.get(i).resourceType(), values.get(i));
+			}
+			mapped.putInt(MAGIC).putInt(VERSION).putLong(snapshotGeneration).putLong(payload.position());
+			mapped.force();
+		}
+		Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private TreeMap<Long, Path> journals() throws IOException {
+		TreeMap<Long, Path> journals = new TreeMap<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				Matcher matcher = JOURNAL_FILE.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					journals.put(Long.parseLong(matcher.group(1)), file);
+				}
+			});
+		}
+		return journals;
+	}
+
+	private Path journalFile(long journalGeneration) {
+		return directory.resolve("usage-" + journalGeneration + ".log");
+	}
+}
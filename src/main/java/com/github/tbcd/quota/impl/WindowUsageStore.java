@@ -0,0 +1,238 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.Tenant;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free usage of {@link QuotaWindow}s per tenant and resource type.
+ *
+ * <p>Each window has its own usages, so that several windows of a resource, such as a
+ * per minute and a per day limit, are counted independently.</p>
+ *
+ * <p>Fixed and sliding windows swap immutable counters with a compare-and-set. Token
+ * buckets follow the generic cell rate algorithm, which only tracks the theoretical
+ * arrival time of the next unit in a single {@link AtomicLong}.</p>
+ *
+ * <p>Once a minute, the consuming thread evicts the usages whose windows have ended or
+ * whose buckets are full, which are indistinguishable from absent ones. An evicted
+ * usage is marked so that a concurrent consumption retries on a fresh one.</p>
+ */
+final class WindowUsageStore {
+
+	private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+	private static final long EVICTED = -1;
+
+	private final Map<QuotaWindow, TenantResourceMap<Slot>> slots = new ConcurrentHashMap<>();
+	private final LongSupplier nanoClock;
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	private volatile long nextSweep;
+
+	WindowUsageStore() {
+		this(System::nanoTime);
+	}
+
+	WindowUsageStore(LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+		this.nextSweep = nanoClock.getAsLong() + SWEEP_INTERVAL;
+	}
+
+	/**
+	 * Consumes {@code amount} units from the window unless it would exceed its limit.
+	 *
+	 * @return the usage the decision was based on; the units were consumed if
+	 *         {@code amount <= window.limit() - usage}
+	 */
+	long tryConsume(Tenant tenant, Object resource, QuotaWindow window, long amount) {
+		long now = nanoClock.getAsLong();
+		sweepIfDue(now);
+		long period = window.period().toNanos();
+		TenantResourceMap<Slot> windowSlots = slotsOf(window);
+		while (true) {
+			Slot slot = windowSlots.getOrCreate(tenant, resource, Slot::new);
+			long used = switch (window.type()) {
+				case FIXED -> slot.consumeWindow(window.limit(), period, amount, now, false);
+				case SLIDING -> slot.consumeWindow(window.limit(), period, amount, now, true);
+				case TOKEN_BUCKET -> slot.consumeTokens(window.limit(), period, amount, now);
+			};
+			if (used != EVICTED) {
+				return used;
+			}
+			windowSlots.remove(tenant, resource, slot);
+		}
+	}
+
+	/**
+	 * Gives back {@code amount} units consumed by {@link #tryConsume} at {@code consumedAt},
+	 * as read from {@link #now()}. Units of a fixed or sliding window that is no longer
+	 * counted are not given back.
+	 */
+	void refund(Tenant tenant, Object resource, QuotaWindow window, long amount, long consumedAt) {
+		TenantResourceMap<Slot> windowSlots = slots.get(window);
+		Slot slot = windowSlots == null ? null : windowSlots.get(tenant, resource);
+		if (slot == null) {
+			return;
+		}
+		long period = window.period().toNanos();
+		switch (window.type()) {
+			case FIXED, SLIDING -> slot.refundWindow(Math.floorDiv(consumedAt, period), amount);
+			case TOKEN_BUCKET -> slot.refundTokens(window.limit(), period, amount, nanoClock.getAsLong());
+		}
+	}
+
+	long now() {
+		return nanoClock.getAsLong();
+	}
+
+	/**
+	 * Evicts the usages that no longer count.
+	 */
+	void sweep(long now) {
+		slots.values().forEach(windowSlots -> windowSlots.removeIf(slot -> slot.tryEvict(now)));
+	}
+
+	int size() {
+		int[] size = {0};
+		slots.values().forEach(windowSlots -> windowSlots.forEach((key, slot) -> size[0]++));
+		return size[0];
+	}
+
+	private TenantResourceMap<Slot> slotsOf(QuotaWindow window) {
+		TenantResourceMap<Slot> windowSlots = slots.get(window);
+		return windowSlots != null ? windowSlots : slots.computeIfAbsent(window, w -> new TenantResourceMap<>());
+	}
+
+	private void sweepIfDue(long now) {
+		if (now - nextSweep < 0 || !sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			sweep(now);
+			nextSweep = now + SWEEP_INTERVAL;
+		} finally {
+			sweeping.set(false);
+		}
+	}
+
+	private static final class Slot {
+
+		private final AtomicReference<Counts> counts = new AtomicReference<>(Counts.EMPTY);
+		private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+		private long consumeWindow(long limit, long period, long amount, long now, boolean sliding) {
+			long index = Math.floorDiv(now, period);
+			while (true) {
+				Counts current = counts.get();
+				if (current == Counts.EVICTED) {
+					return EVICTED;
+				}
+				Counts rolled = current.rollTo(index, period);
+				long used = rolled.current;
+				if (sliding && rolled.previous > 0) {
+					double uncovered = (double) Math.floorMod(now, period) / period;
+					used += (long) Math.ceil(rolled.previous * (1 - uncovered));
+				}
+				if (amount > limit - used) {
+					return used;
+				}
+				if (counts.compareAndSet(current, new Counts(index, rolled.current + amount, rolled.previous, rolled.end))) {
+					return used;
+				}
+			}
+		}
+
+		private long consumeTokens(long capacity, long period, long amount, long now) {
+			if (capacity == 0) {
+				return 0;
+			}
+
+			long interval = Math.max(1, period / capacity);
+			while (true) {
+				long theoreticalArrival = arrival.get();
+				if (theoreticalArrival == Long.MAX_VALUE) {
+					return EVICTED;
+				}
+				long start = Math.max(theoreticalArrival, now);
+				long used = Math.ceilDiv(start - now, interval);
+				if (amount > capacity - used) {
+					return used;
+				}
+				if (arrival.compareAndSet(theoreticalArrival, start + amount * interval)) {
+					return used;
+				}
+			}
+		}
+
+		private void refundWindow(long index, long amount) {
+			while (true) {
+				Counts current = counts.get();
+				Counts refunded;
+				if (current.window == index) {
+					refunded = new Counts(index, Math.max(0, current.current - amount), current.previous, current.end);
+				} else if (current.window == index + 1 && current != Counts.EVICTED) {
+					refunded = new Counts(current.window, current.current, Math.max(0, current.previous - amount), current.end);
+				} else {
+					return;
+				}
+				if (counts.compareAndSet(current, refunded)) {
+					return;
+				}
+			}
+		}
+
+		private void refundTokens(long capacity, long period, long amount, long now) {
+			if (capacity == 0) {
+				return;
+			}
+
+			long interval = Math.max(1, period / capacity);
+			while (true) {
+				long theoreticalArrival = arrival.get();
+				if (theoreticalArrival == Long.MAX_VALUE || theoreticalArrival - now <= 0) {
+					return;
+				}
+				if (arrival.compareAndSet(theoreticalArrival, Math.max(now, theoreticalArrival - amount * interval))) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Marks the slot as evicted if its window has ended or its bucket is full.
+		 */
+		private boolean tryEvict(long now) {
+			Counts current = counts.get();
+			long theoreticalArrival = arrival.get();
+			if (current == Counts.EMPTY) {
+				return theoreticalArrival - now <= 0 && arrival.compareAndSet(theoreticalArrival, Long.MAX_VALUE);
+			}
+			if (theoreticalArrival == Long.MIN_VALUE) {
+				return current != Counts.EVICTED && now - current.end >= 0 && counts.compareAndSet(current, Counts.EVICTED);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @param end the time from which neither count is part of the window anymore
+	 */
+	private record Counts(long window, long current, long previous, long end) {
+
+		private static final Counts EMPTY = new Counts(Long.MIN_VALUE, 0, 0, Long.MIN_VALUE);
+		private static final Counts EVICTED = new Counts(Long.MIN_VALUE, 0, 0, Long.MIN_VALUE);
+
+		private Counts rollTo(long index, long period) {
+			if (window == index) {
+				return this;
+			}
+			return new Counts(index, 0, window == index - 1 ? current : 0, (index + 2) * period);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.tbcd.quota.internal;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.util.function.Consumer;
+
+/**
+ * Defers actions to the completion of the current Spring transaction.
+ *
+ * <p>spring-tx is optional: without it, or outside of a transaction, actions are not
+ * deferred and callers run them right away.</p>
+ *
+ * <p>Shared by the quota manager implementations and the aspects, this class is internal
+ * and not part of the API.</p>
+ */
+public final class TransactionCallbacks {
+
+	private static final boolean TRANSACTIONS_PRESENT = ClassUtils.isPresent(
+			"org.springframework.transaction.support.TransactionSynchronizationManager", TransactionCallbacks.class.getClassLoader());
+
+	private TransactionCallbacks() {
+	}
+
+	/**
+	 * @return whether the action was deferred to the commit of the current transaction,
+	 *         and will not run if it rolls back
+	 */
+	public static boolean afterCommit(Runnable action) {
+		return afterCompletion(committed -> {
+			if (committed) {
+				action.run();
+			}
+		});
+	}
+
+	/**
+	 * @return whether the action was deferred to the completion of the current
+	 *         transaction, to which it is told whether the transaction committed
+	 */
+	public static boolean afterCompletion(Consumer<Boolean> action) {
+		return TRANSACTIONS_PRESENT && Synchronizations.register(action);
+	}
+
+	/**
+	 * @return whether the current thread runs an actual Spring transaction, whose
+	 *         uncommitted changes other threads cannot see
+	 */
+	public static boolean isTransactionActive() {
+		return TRANSACTIONS_PRESENT && Synchronizations.isTransactionActive();
+	}
+
+	/**
+	 * Isolates the references to spring-tx, which is optional.
+	 */
+	private static final class Synchronizations {
+
+		private static boolean isTransactionActive() {
+			return TransactionSynchronizationManager.isActualTransactionActive();
+		}
+
+		private static boolean register(Consumer<Boolean> action) {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				return false;
+			}
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					action.accept(status == STATUS_COMMITTED);
+				}
+			});
+			return true;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.impl.DefaultQuotaManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuotaAspectTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	private final RecipeService recipeService = proxy(new RecipeService());
+
+	@Test
+	void costExpressionIsChargedPerElementOfACollection() {
+		assertThatCode(() -> recipeService.createAll(List.of(new Recipe(), new Recipe()), 2)).doesNotThrowAnyException();
+
+		assertThatThrownBy(() -> recipeService.createAll(List.of(new Recipe(), new Recipe(), new Recipe()), 2))
+				.isInstanceOfSatisfying(QuotaExceededException.class, e -> {
+					assertThat(e.getResource()).isEqualTo("Recipe");
+					assertThat(e.getMaxAllowed()).isEqualTo(5);
+				});
+	}
+
+	@Test
+	void collectionElementsAreCheckedPerClass() {
+		assertThatCode(() -> recipeService.createAll(List.of(new Recipe(), new Ingredient()), 1)).doesNotThrowAnyException();
+
+		assertThatThrownBy(() -> recipeService.createAll(List.of(new Recipe(), new Ingredient(), new Ingredient()), 1))
+				.isInstanceOfSatisfying(QuotaExceededException.class,
+						e -> assertThat(e.getResource()).isEqualTo("Ingredient"));
+	}
+
+	@Test
+	void everyRepeatedQuotaIsEnforced() {
+		assertThatThrownBy(recipeService::createWithIngredients)
+				.isInstanceOf(QuotaExceededException.class)
+				.hasMessage("Too many ingredients");
+	}
+
+	@Test
+	void stackedRateQuotasAreOnlyCheckedWithoutReservations() {
+		RecipeService checkingService = proxy(new RecipeService(), false);
+
+		assertThatThrownBy(checkingService::importFailing).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(checkingService::importFailing).isInstanceOf(QuotaExceededException.class);
+
+		assertThatThrownBy(recipeService::importFailing).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(recipeService::importFailing).isInstanceOf(IllegalStateException.class);
+	}
+
+	private static RecipeService proxy(RecipeService target) {
+		return proxy(target, true);
+	}
+
+	private static RecipeService proxy(RecipeService target, boolean reserve) {
+		ResourceCounter counter = (tenant, resource) -> 0L;
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> Optional.of(resource.equals(Recipe.class) ? 5L : 1L));
+		QuotaAspect aspect = new QuotaAspect(quotaManager, () -> TENANT);
+		aspect.setReserve(reserve);
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAspect(aspect);
+		return proxyFactory.getProxy();
+	}
+
+	static class RecipeService {
+
+		@Quota(resource = "#recipes", costExpression = "#servings")
+		public void createAll(List<Object> recipes, int servings) {
+		}
+
+		@Quota(resource = "T(com.github.tbcd.quota.aspect.QuotaAspectTest$Recipe)")
+		@Quota(resource = "T(com.github.tbcd.quota.aspect.QuotaAspectTest$Ingredient)", cost = 2, message = "Too many ingredients")
+		public void createWithIngredients() {
+		}
+
+		@Quota(resource = "T(com.github.tbcd.quota.aspect.QuotaAspectTest$Recipe)", rateLimit = 1)
+		@Quota(resource = "T(com.github.tbcd.quota.aspect.QuotaAspectTest$Ingredient)")
+		public void importFailing() {
+			throw new IllegalStateException("Import failed");
+		}
+	}
+
+	static class Recipe {
+	}
+
+	static class Ingredient {
+	}
+}
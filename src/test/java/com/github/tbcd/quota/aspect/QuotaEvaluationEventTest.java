@@ -0,0 +1,109 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.Tenant;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaEvaluationEventTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void completedEvaluationRecordsItsRequestsAndOutcome() throws Exception {
+		List<RecordedEvent> events = record(event -> event.complete(new CreateSignature(),
+				List.of(QuotaRequest.of(TENANT, Recipe.class), new QuotaRequest(TENANT, new Ingredient(), 3)),
+				new QuotaResult.Denied(new QuotaState(TENANT, Ingredient.class, 10, 10))));
+
+		assertThat(events).singleElement().satisfies(event -> {
+			assertThat(event.getString("method")).isEqualTo("Recipes.create(..)");
+			assertThat(event.getString("resourceType")).isEqualTo("Recipe, Ingredient");
+			assertThat(event.getLong("cost")).isEqualTo(4);
+			assertThat(event.getString("outcome")).isEqualTo("DENIED");
+		});
+	}
+
+	@Test
+	void failureIsOnlyRecordedBeforeCompletion() throws Exception {
+		List<RecordedEvent> events = record(event -> {
+			event.complete(new CreateSignature(), List.of(QuotaRequest.of(TENANT, Recipe.class)), new QuotaResult.NoQuota(Recipe.class));
+			event.fail(new CreateSignature(), List.of(QuotaRequest.of(TENANT, Recipe.class)));
+		});
+
+		assertThat(events).singleElement().satisfies(event -> assertThat(event.getString("outcome")).isEqualTo("NO_QUOTA"));
+	}
+
+	private List<RecordedEvent> record(Consumer<QuotaEvaluationEvent> evaluation) throws Exception {
+		Path file = directory.resolve("quota.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(QuotaEvaluationEvent.class).withThreshold(Duration.ZERO);
+			recording.start();
+			QuotaEvaluationEvent event = new QuotaEvaluationEvent();
+			event.begin();
+			evaluation.accept(event);
+			recording.stop();
+			recording.dump(file);
+		}
+		return RecordingFile.readAllEvents(file).stream()
+				.filter(event -> event.getEventType().getName().equals("com.github.tbcd.quota.Evaluation"))
+				.toList();
+	}
+
+	private static final class CreateSignature implements Signature {
+
+		@Override
+		public String toShortString() {
+			return "Recipes.create(..)";
+		}
+
+		@Override
+		public String toLongString() {
+			return "public void Recipes.create(Recipe)";
+		}
+
+		@Override
+		public String getName() {
+			return "create";
+		}
+
+		@Override
+		public int getModifiers() {
+			return 1;
+		}
+
+		@Override
+		public Class getDeclaringType() {
+			return Recipes.class;
+		}
+
+		@Override
+		public String getDeclaringTypeName() {
+			return Recipes.class.getName();
+		}
+	}
+
+	interface Recipes {
+	}
+
+	static class Recipe {
+	}
+
+	static class Ingredient {
+	}
+}
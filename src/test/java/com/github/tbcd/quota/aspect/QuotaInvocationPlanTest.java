@@ -0,0 +1,156 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.impl.DefaultQuotaManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaInvocationPlanTest {
+
+	private final SpelExpressionParser parser = new SpelExpressionParser();
+	private final DefaultParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+	@Test
+	void parameterNamedResultIsNotShadowedByTheReturnValue() throws Exception {
+		Method method = Recipes.class.getDeclaredMethod("create", String.class);
+		QuotaInvocationPlan plan = QuotaInvocationPlan.create(method, "#result.length()", null, null, parser, parameterNameDiscoverer);
+
+		assertThat(plan.bind(new Object[]{"soup"}).resolveResource()).isEqualTo(4);
+		assertThat(plan.bind(new Object[]{"soup"}, null).resolveResource()).isEqualTo(4);
+	}
+
+	@Test
+	void returnValueIsBoundOnceReturned() throws Exception {
+		Method method = Recipes.class.getDeclaredMethod("copy", String.class);
+		QuotaInvocationPlan plan = QuotaInvocationPlan.create(method, "#result.length()", null, null, parser, parameterNameDiscoverer);
+
+		assertThat(plan.bind(new Object[]{"soup"}, "stew pot").resolveResource()).isEqualTo(8);
+	}
+
+	@Test
+	void parameterReferencesAreReadWithoutSpel() throws Exception {
+		Method method = Recipes.class.getDeclaredMethod("rename", Recipe.class, String.class);
+		QuotaInvocationPlan plan = QuotaInvocationPlan.create(method, " #recipe ", "#name", null, new FailingParser(), parameterNameDiscoverer);
+		Recipe recipe = new Recipe("soup");
+
+		QuotaInvocationPlan.Invocation invocation = plan.bind(new Object[]{recipe, "stew"});
+
+		assertThat(invocation.resolveResource()).isSameAs(recipe);
+		assertThat(invocation.resolveTenant(() -> null).getValue()).isEqualTo("stew");
+	}
+
+	@Test
+	void nestedExpressionsAreEvaluatedUnderMixedCompilation() throws Exception {
+		ExpressionParser mixedParser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
+		Method method = Recipes.class.getDeclaredMethod("publish", List.class);
+		QuotaInvocationPlan plan = QuotaInvocationPlan.create(method, "#recipes[0].name.length() + #result.name.length()", null, null,
+				mixedParser, parameterNameDiscoverer);
+
+		for (int i = 0; i < 200; i++) {
+			assertThat(plan.bind(new Object[]{List.of(new Recipe("soup"))}, new Recipe("stew pot")).resolveResource()).isEqualTo(12);
+		}
+		assertThat(plan.bind(new Object[]{List.of(new Ingredient("salt"))}, new Ingredient("oil")).resolveResource()).isEqualTo(7);
+	}
+
+	@Test
+	void plansAreBuiltOncePerMethod() {
+		AtomicInteger discoveries = new AtomicInteger();
+		DefaultParameterNameDiscoverer countingDiscoverer = new DefaultParameterNameDiscoverer() {
+
+			@Override
+			public String[] getParameterNames(Method method) {
+				discoveries.incrementAndGet();
+				return super.getParameterNames(method);
+			}
+		};
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> (t, r) -> 0L, (tenant, resource) -> Optional.empty());
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new RecipeService());
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAspect(new QuotaAspect(quotaManager, () -> () -> "tenant", countingDiscoverer));
+		RecipeService recipeService = proxyFactory.getProxy();
+
+		recipeService.create(new Recipe("soup"));
+		recipeService.create(new Recipe("stew"));
+		recipeService.update(new Recipe("soup"));
+		recipeService.update(new Recipe("stew"));
+
+		assertThat(discoveries).hasValue(2);
+	}
+
+	interface Recipes {
+
+		void create(String result);
+
+		String copy(String name);
+
+		void rename(Recipe recipe, String name);
+
+		Object publish(List<?> recipes);
+	}
+
+	static class RecipeService {
+
+		@Quota(resource = "#recipe")
+		public void create(Recipe recipe) {
+		}
+
+		@Quota(resource = "#recipe")
+		public void update(Recipe recipe) {
+		}
+	}
+
+	public static class Recipe {
+
+		private final String name;
+
+		Recipe(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static class Ingredient {
+
+		private final String name;
+
+		Ingredient(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Parser failing for every expression, to show that none reached SpEL.
+	 */
+	private static class FailingParser implements ExpressionParser {
+
+		@Override
+		public Expression parseExpression(String expressionString) {
+			throw new AssertionError("Parsed " + expressionString);
+		}
+
+		@Override
+		public Expression parseExpression(String expressionString, ParserContext context) {
+			throw new AssertionError("Parsed " + expressionString);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.github.tbcd.quota.aspect;
+
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaUsageAspectTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	private final InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+	private final RecipeService recipeService = proxy(new RecipeService());
+
+	@Test
+	void usageIsChangedRightAwayOutsideOfATransaction() {
+		recipeService.create(new Recipe());
+		recipeService.create(new Recipe());
+		recipeService.delete(new Recipe());
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(1);
+	}
+
+	@Test
+	void consumedUsageIsAddedOnCommit() {
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			recipeService.create(new Recipe());
+			assertThat(counter.countAsLong(TENANT, Recipe.class)).isZero();
+		});
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(1);
+	}
+
+	@Test
+	void consumedUsageIsDiscardedOnRollback() {
+		inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> recipeService.create(new Recipe()));
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isZero();
+	}
+
+	@Test
+	void releasedUsageIsRemovedOnCommit() {
+		counter.add(TENANT, Recipe.class, 2);
+
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			recipeService.delete(new Recipe());
+			assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(2);
+		});
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(1);
+	}
+
+	@Test
+	void releasedUsageIsKeptOnRollback() {
+		counter.add(TENANT, Recipe.class, 2);
+
+		inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> recipeService.delete(new Recipe()));
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(2);
+	}
+
+	@Test
+	void untrackedResourcesAreIgnored() {
+		inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+			recipeService.createIngredient(new Ingredient());
+			assertThat(TransactionSynchronizationManager.getSynchronizations()).isEmpty();
+		});
+
+		assertThat(counter.countAsLong(TENANT, Ingredient.class)).isZero();
+	}
+
+	private static void inTransaction(int status, Runnable work) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			work.run();
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(status);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private RecipeService proxy(RecipeService target) {
+		AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAspect(new QuotaUsageAspect(counter, () -> TENANT));
+		return proxyFactory.getProxy();
+	}
+
+	static class RecipeService {
+
+		@QuotaConsume(resource = "#result")
+		public Recipe create(Recipe recipe) {
+			return recipe;
+		}
+
+		@QuotaRelease(resource = "#recipe")
+		public void delete(Recipe recipe) {
+		}
+
+		@QuotaConsume(resource = "#ingredient")
+		public void createIngredient(Ingredient ingredient) {
+		}
+	}
+
+	static class Recipe {
+	}
+
+	static class Ingredient {
+	}
+}
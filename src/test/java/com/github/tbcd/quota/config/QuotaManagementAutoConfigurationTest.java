@@ -0,0 +1,229 @@
+package com.github.tbcd.quota.config;
+
+import com.github.tbcd.quota.CountsResource;
+import com.github.tbcd.quota.QuotaCacheInvalidator;
+import com.github.tbcd.quota.QuotaLimitResolver;
+import com.github.tbcd.quota.QuotaManager;
+import com.github.tbcd.quota.QuotaMetrics;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.ResourceCounterRegistry;
+import com.github.tbcd.quota.Tenant;
+import com.github.tbcd.quota.WarmupTenantProvider;
+import com.github.tbcd.quota.impl.InMemoryQuotaManager;
+import com.github.tbcd.quota.impl.InMemoryResourceCounter;
+import com.github.tbcd.quota.impl.MicrometerQuotaMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotaManagementAutoConfigurationTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(QuotaManagementAutoConfiguration.class));
+
+	@Test
+	void inMemoryCounterIsWiredWithItsSeedCounter() {
+		contextRunner.withUserConfiguration(SeededConfiguration.class).run(context -> {
+			assertThat(context).hasNotFailed();
+			assertThat(context.getBean(QuotaManager.class)).isInstanceOf(InMemoryQuotaManager.class);
+			assertThat(context.getBean(ResourceCounterRegistry.class).getResourceCounter(TENANT, Recipe.class))
+					.isInstanceOf(RecipeResourceCounter.class);
+
+			InMemoryResourceCounter counter = context.getBean(InMemoryResourceCounter.class);
+			assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(3);
+		});
+	}
+
+	@Test
+	void inMemoryManagerInvalidatesTheUsageCache() {
+		contextRunner.withUserConfiguration(SeededConfiguration.class, BookConfiguration.class)
+				.withPropertyValues("quota.usage-cache.enabled=true", "quota.usage-cache.ttl=1h")
+				.run(context -> {
+					QuotaManager quotaManager = context.getBean(QuotaManager.class);
+					assertThat(quotaManager).isInstanceOf(InMemoryQuotaManager.class);
+					AtomicLong books = context.getBean(BookConfiguration.class).books;
+
+					assertThat(quotaManager.check(TENANT, Book.class, 1).allowed()).isFalse();
+					books.set(0);
+					assertThat(quotaManager.check(TENANT, Book.class, 1).allowed()).isFalse();
+
+					context.getBean(QuotaCacheInvalidator.class).invalidate(TENANT, Book.class);
+					assertThat(quotaManager.check(TENANT, Book.class, 1).allowed()).isTrue();
+
+					books.set(10);
+					quotaManager.check(TENANT, Book.class, 1);
+					books.set(0);
+					context.getBean(QuotaCacheInvalidator.class).invalidateTenant(TENANT);
+					assertThat(quotaManager.check(TENANT, Book.class, 1).allowed()).isTrue();
+				});
+	}
+
+	@Test
+	void warmupConvertsConfiguredTenantsAndAddsProvidedOnes() {
+		contextRunner.withUserConfiguration(WarmupConfiguration.class)
+				.withPropertyValues("quota.warmup.enabled=true", "quota.warmup.tenants=acme",
+						"quota.warmup.resources=" + Recipe.class.getName())
+				.run(context -> {
+					@SuppressWarnings("unchecked")
+					ApplicationListener<ApplicationReadyEvent> listener = context.getBean("quotaWarmupListener", ApplicationListener.class);
+					listener.onApplicationEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0],
+							context.getSourceApplicationContext(), Duration.ZERO));
+
+					assertThat(context.getBean(RecordingResourceCounter.class).counted).containsExactlyInAnyOrder("org-acme", "beta");
+				});
+	}
+
+	@Test
+	void checksAreRecordedInTheMeterRegistry() {
+		contextRunner.withUserConfiguration(MeteredConfiguration.class).run(context -> {
+			assertThat(context.getBean(QuotaMetrics.class)).isInstanceOf(MicrometerQuotaMetrics.class);
+			context.getBean(QuotaManager.class).check(TENANT, Recipe.class, 1);
+
+			MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+			assertThat(meterRegistry.get("quota.count").tag("resource", "Recipe").timer().count()).isEqualTo(1);
+			assertThat(meterRegistry.get("quota.limit.resolution").tag("resource", "Recipe").timer().count()).isPositive();
+			assertThat(meterRegistry.get("quota.checks").tag("resource", "Recipe").tag("outcome", "allowed").counter().count())
+					.isEqualTo(1);
+		});
+	}
+
+	@Test
+	void metricsAreNotRecordedWhenDisabled() {
+		contextRunner.withUserConfiguration(MeteredConfiguration.class).withPropertyValues("quota.metrics.enabled=false")
+				.run(context -> {
+					assertThat(context).doesNotHaveBean(QuotaMetrics.class);
+					context.getBean(QuotaManager.class).check(TENANT, Recipe.class, 1);
+
+					assertThat(context.getBean(MeterRegistry.class).find("quota.checks").counter()).isNull();
+				});
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	static class MeteredConfiguration {
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		RecipeResourceCounter recipeResourceCounter() {
+			return new RecipeResourceCounter();
+		}
+
+		@Bean
+		QuotaLimitResolver limitResolver() {
+			return (tenant, resource) -> Optional.of(10L);
+		}
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	static class SeededConfiguration {
+
+		@Bean
+		RecipeResourceCounter recipeResourceCounter() {
+			return new RecipeResourceCounter();
+		}
+
+		@Bean
+		InMemoryResourceCounter inMemoryResourceCounter(RecipeResourceCounter recipeResourceCounter) {
+			return new InMemoryResourceCounter(Set.of(Recipe.class), recipeResourceCounter);
+		}
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	static class BookConfiguration {
+
+		private final AtomicLong books = new AtomicLong(10);
+
+		@Bean
+		ResourceCounter bookResourceCounter() {
+			return new BookResourceCounter(books);
+		}
+
+		@Bean
+		QuotaLimitResolver limitResolver() {
+			return (tenant, resource) -> Optional.of(10L);
+		}
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	static class WarmupConfiguration {
+
+		@Bean
+		RecordingResourceCounter recordingResourceCounter() {
+			return new RecordingResourceCounter();
+		}
+
+		@Bean
+		QuotaLimitResolver limitResolver() {
+			return (tenant, resource) -> Optional.of(10L);
+		}
+
+		@Bean
+		Function<String, Tenant> quotaWarmupTenantConverter() {
+			return value -> () -> "org-" + value;
+		}
+
+		@Bean
+		WarmupTenantProvider betaTenantProvider() {
+			return () -> List.<Tenant>of(() -> "beta");
+		}
+	}
+
+	@CountsResource(Recipe.class)
+	static class RecordingResourceCounter implements ResourceCounter {
+
+		private final Queue<Object> counted = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			counted.add(tenant.getValue());
+			return 0L;
+		}
+	}
+
+	@CountsResource(Recipe.class)
+	static class RecipeResourceCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 3L;
+		}
+	}
+
+	@CountsResource(Book.class)
+	record BookResourceCounter(AtomicLong books) implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return books.get();
+		}
+	}
+
+	static class Recipe {
+	}
+
+	static class Book {
+	}
+}
@@ -0,0 +1,137 @@
+package com.github.tbcd.quota.config;
+
+import com.github.tbcd.quota.CountsResource;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.GeneratedFiles;
+import org.springframework.aot.generate.GeneratedMethods;
+import org.springframework.aot.generate.InMemoryGeneratedFiles;
+import org.springframework.aot.generate.MethodReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.beans.factory.aot.BeanRegistrationAotContribution;
+import org.springframework.beans.factory.aot.BeanRegistrationCode;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RegisteredBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.javapoet.ClassName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResourceCounterAotProcessorTest {
+
+	private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+	private final ResourceCounterAotProcessor processor = new ResourceCounterAotProcessor();
+	private final InMemoryGeneratedFiles generatedFiles = new InMemoryGeneratedFiles();
+
+	@Test
+	void declaredTypesAreRegisteredByGeneratedCode() throws IOException {
+		List<MethodReference> instancePostProcessors = new ArrayList<>();
+		DefaultGenerationContext generationContext = apply(RecipeResourceCounter.class, instancePostProcessors);
+
+		assertThat(instancePostProcessors).hasSize(1);
+		assertThat(generatedSource()).contains(
+				"ResourceCounterTypes.register(registeredBean, ResourceCounterAotProcessorTest.RecipeResourceCounter.class, ResourceCounterAotProcessorTest.Recipe.class)");
+		assertThat(RuntimeHintsPredicates.reflection().onType(RecipeResourceCounter.class))
+				.accepts(generationContext.getRuntimeHints());
+	}
+
+	@Test
+	void countersOverridingTheirTypesAreOnlyRegisteredForReflection() throws IOException {
+		List<MethodReference> instancePostProcessors = new ArrayList<>();
+		DefaultGenerationContext generationContext = apply(OverridingResourceCounter.class, instancePostProcessors);
+
+		assertThat(instancePostProcessors).isEmpty();
+		assertThat(generatedSource()).isEmpty();
+		assertThat(RuntimeHintsPredicates.reflection().onType(OverridingResourceCounter.class))
+				.accepts(generationContext.getRuntimeHints());
+	}
+
+	@Test
+	void undeclaredCountersAndOtherBeansAreIgnored() {
+		assertThat(processor.processAheadOfTime(register(UndeclaredResourceCounter.class))).isNull();
+		assertThat(processor.processAheadOfTime(register(Recipe.class))).isNull();
+	}
+
+	private DefaultGenerationContext apply(Class<?> beanClass, List<MethodReference> instancePostProcessors) {
+		BeanRegistrationAotContribution contribution = processor.processAheadOfTime(register(beanClass));
+		assertThat(contribution).isNotNull();
+
+		DefaultGenerationContext generationContext = new DefaultGenerationContext(
+				new ClassNameGenerator(ClassName.get(ResourceCounterAotProcessorTest.class)), generatedFiles);
+		contribution.applyTo(generationContext, new BeanRegistrationCode() {
+
+			@Override
+			public ClassName getClassName() {
+				return ClassName.get(ResourceCounterAotProcessorTest.class);
+			}
+
+			@Override
+			public GeneratedMethods getMethods() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void addInstancePostProcessor(MethodReference methodReference) {
+				instancePostProcessors.add(methodReference);
+			}
+		});
+		generationContext.writeGeneratedContent();
+		return generationContext;
+	}
+
+	private String generatedSource() throws IOException {
+		StringBuilder source = new StringBuilder();
+		for (String path : generatedFiles.getGeneratedFiles(GeneratedFiles.Kind.SOURCE).keySet()) {
+			source.append(generatedFiles.getGeneratedFileContent(GeneratedFiles.Kind.SOURCE, path));
+		}
+		return source.toString();
+	}
+
+	private RegisteredBean register(Class<?> beanClass) {
+		String beanName = beanClass.getSimpleName();
+		beanFactory.registerBeanDefinition(beanName, new RootBeanDefinition(beanClass));
+		return RegisteredBean.of(beanFactory, beanName);
+	}
+
+	@CountsResource(Recipe.class)
+	static class RecipeResourceCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	@CountsResource(Recipe.class)
+	static class OverridingResourceCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+
+		@Override
+		public Set<Class<?>> resourceTypes() {
+			return Set.of(Recipe.class);
+		}
+	}
+
+	static class UndeclaredResourceCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	static class Recipe {
+	}
+}
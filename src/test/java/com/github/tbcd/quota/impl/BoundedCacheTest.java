@@ -0,0 +1,72 @@
+package com.github.tbcd.quota.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedCacheTest {
+
+	private static final Duration TTL = Duration.ofMinutes(1);
+
+	private final BoundedCache<String, Integer> cache = new BoundedCache<>(4);
+
+	@Test
+	void entriesReadSinceTheirInsertionSurviveEviction() {
+		cache.put("a", 1, TTL);
+		cache.put("b", 2, TTL);
+		cache.put("c", 3, TTL);
+		cache.put("d", 4, TTL);
+		cache.get("a");
+		cache.get("c");
+
+		cache.put("e", 5, TTL);
+
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.get("a")).isEqualTo(1);
+		assertThat(cache.get("c")).isEqualTo(3);
+		assertThat(cache.get("e")).isEqualTo(5);
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("d")).isNull();
+	}
+
+	@Test
+	void replacedAndInvalidatedEntriesDoNotCountAsEvictions() {
+		for (int i = 0; i < 100; i++) {
+			cache.put("a", i, TTL);
+			cache.put("b", i, TTL);
+			cache.invalidate("b");
+		}
+		cache.put("c", 3, TTL);
+		cache.put("d", 4, TTL);
+		cache.put("e", 5, TTL);
+		cache.put("f", 6, TTL);
+
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("c")).isNull();
+		assertThat(cache.get("d")).isEqualTo(4);
+		assertThat(cache.get("f")).isEqualTo(6);
+	}
+
+	@Test
+	void entriesNeverReadAreEvictedBeforeReadOnes() {
+		cache.put("a", 1, TTL);
+		cache.put("b", 2, TTL);
+		cache.put("c", 3, TTL);
+		cache.put("d", 4, TTL);
+		cache.get("a");
+		cache.get("b");
+		cache.get("c");
+		cache.get("d");
+
+		cache.put("e", 5, TTL);
+
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.get("e")).isNull();
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isEqualTo(2);
+		assertThat(cache.get("d")).isEqualTo(4);
+	}
+}
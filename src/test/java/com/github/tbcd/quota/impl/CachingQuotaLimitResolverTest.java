@@ -0,0 +1,194 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchQuotaLimitResolver;
+import com.github.tbcd.quota.QuotaLimitResolver;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingQuotaLimitResolverTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Duration TTL = Duration.ofMinutes(1);
+
+	@Test
+	void limitsAreCachedUntilTheTenantIsEvicted() {
+		AtomicLong limit = new AtomicLong(5);
+		CachingQuotaLimitResolver resolver = new CachingQuotaLimitResolver((tenant, resource) -> Optional.of(limit.get()), 16, TTL);
+
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		limit.set(10);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		assertThat(resolver.resolve(() -> "other", Recipe.class)).contains(10L);
+
+		resolver.evictTenant(TENANT);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(10L);
+	}
+
+	@Test
+	void absentLimitsAreCachedForTheNegativeTtl() {
+		AtomicInteger resolutions = new AtomicInteger();
+		QuotaLimitResolver delegate = (tenant, resource) -> {
+			resolutions.incrementAndGet();
+			return Optional.empty();
+		};
+		CachingQuotaLimitResolver cached = new CachingQuotaLimitResolver(delegate, 16, TTL, TTL, null, Runnable::run);
+		CachingQuotaLimitResolver uncached = new CachingQuotaLimitResolver(delegate, 16, TTL, Duration.ZERO, null, Runnable::run);
+
+		assertThat(cached.resolve(TENANT, Recipe.class)).isEmpty();
+		assertThat(cached.resolve(TENANT, Recipe.class)).isEmpty();
+		assertThat(resolutions).hasValue(1);
+
+		assertThat(uncached.resolve(TENANT, Recipe.class)).isEmpty();
+		assertThat(uncached.resolve(TENANT, Recipe.class)).isEmpty();
+		assertThat(resolutions).hasValue(3);
+	}
+
+	@Test
+	void staleLimitsAreRefreshedInTheBackground() {
+		AtomicLong limit = new AtomicLong(5);
+		CachingQuotaLimitResolver resolver = new CachingQuotaLimitResolver((tenant, resource) -> Optional.of(limit.get()), 16, TTL,
+				TTL, Duration.ZERO, Runnable::run);
+
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		limit.set(10);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(10L);
+	}
+
+	@Test
+	void evictionDuringALoadIsNotLost() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicLong limit = new AtomicLong(5);
+		QuotaLimitResolver delegate = (tenant, resource) -> {
+			long resolved = limit.get();
+			loading.countDown();
+			await(release);
+			return Optional.of(resolved);
+		};
+		CachingQuotaLimitResolver resolver = new CachingQuotaLimitResolver(delegate, 16, TTL);
+
+		CompletableFuture<Optional<Long>> stale = CompletableFuture.supplyAsync(() -> resolver.resolve(TENANT, Recipe.class));
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+		limit.set(10);
+		resolver.evictTenant(TENANT);
+		release.countDown();
+
+		assertThat(stale.get(5, TimeUnit.SECONDS)).contains(5L);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(10L);
+	}
+
+	@Test
+	void evictionDuringARefreshIsNotLost() throws Exception {
+		AtomicBoolean blocking = new AtomicBoolean();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicLong limit = new AtomicLong(5);
+		QuotaLimitResolver delegate = (tenant, resource) -> {
+			long resolved = limit.get();
+			if (blocking.get()) {
+				loading.countDown();
+				await(release);
+			}
+			return Optional.of(resolved);
+		};
+		List<CompletableFuture<Void>> refreshes = new ArrayList<>();
+		CachingQuotaLimitResolver resolver = new CachingQuotaLimitResolver(delegate, 16, TTL, TTL, Duration.ZERO,
+				command -> refreshes.add(CompletableFuture.runAsync(command)));
+
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		blocking.set(true);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+		limit.set(10);
+		resolver.evictTenant(TENANT);
+		release.countDown();
+		refreshes.getFirst().get(5, TimeUnit.SECONDS);
+
+		blocking.set(false);
+		assertThat(resolver.resolve(TENANT, Recipe.class)).contains(10L);
+	}
+
+	@Test
+	void resolveAllLoadsTheMissesInOneBatch() {
+		List<List<Object>> batches = new ArrayList<>();
+		Map<Object, Long> limits = Map.of("a", 1L, "b", 2L);
+		BatchQuotaLimitResolver delegate = new BatchQuotaLimitResolver() {
+
+			@Override
+			public Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource) {
+				batches.add(tenants.stream().map(Tenant::getValue).toList());
+				Map<Object, Long> resolved = new HashMap<>();
+				tenants.forEach(tenant -> Optional.ofNullable(limits.get(tenant.getValue()))
+						.ifPresent(limit -> resolved.put(tenant.getValue(), limit)));
+				return resolved;
+			}
+
+			@Override
+			public Optional<Long> resolve(Tenant tenant, Object resource) {
+				return Optional.ofNullable(limits.get(tenant.getValue()));
+			}
+		};
+		CachingQuotaLimitResolver resolver = new CachingQuotaLimitResolver(delegate, 16, TTL);
+		List<Tenant> tenants = List.of(() -> "a", () -> "b", () -> "c");
+
+		assertThat(resolver.resolve(tenants.getFirst(), Recipe.class)).contains(1L);
+		assertThat(resolver.resolveAll(tenants, Recipe.class)).containsOnly(Map.entry("a", 1L), Map.entry("b", 2L));
+		assertThat(resolver.resolveAll(tenants, Recipe.class)).containsOnly(Map.entry("a", 1L), Map.entry("b", 2L));
+		assertThat(batches).containsExactly(List.of("b", "c"));
+	}
+
+	@Test
+	void managerLimitCacheIsInvalidatedWithTheTenant() {
+		AtomicLong limit = new AtomicLong(5);
+		Map<Object, AtomicInteger> resolutions = new ConcurrentHashMap<>();
+		ResourceCounter counter = (tenant, resource) -> 5L;
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, (tenant, resource) -> {
+			resolutions.computeIfAbsent(tenant.getValue(), value -> new AtomicInteger()).incrementAndGet();
+			return Optional.of(limit.get());
+		});
+		quotaManager.enableLimitCache(16, TTL, TTL, null);
+
+		try {
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isFalse();
+			limit.set(10);
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isFalse();
+			assertThat(resolutions.get("tenant")).hasValue(1);
+
+			quotaManager.invalidateTenant(TENANT);
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isTrue();
+			assertThat(resolutions.get("tenant")).hasValue(2);
+		} finally {
+			quotaManager.destroy();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static class Recipe {
+	}
+}
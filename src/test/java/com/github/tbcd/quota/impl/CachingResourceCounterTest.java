@@ -0,0 +1,91 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingResourceCounterTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@Test
+	void countsAreCachedUntilInvalidated() {
+		AtomicLong usage = new AtomicLong(3);
+		CachingResourceCounter counter = new CachingResourceCounter((tenant, resource) -> usage.get(), 16, Duration.ofMinutes(1));
+
+		assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(3);
+		usage.set(4);
+		assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(3);
+
+		counter.invalidate(TENANT, Recipe.class);
+		assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(4);
+	}
+
+	@Test
+	void invalidationDuringALoadIsNotLost() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicLong usage = new AtomicLong(3);
+		ResourceCounter delegate = (tenant, resource) -> {
+			long counted = usage.get();
+			loading.countDown();
+			await(release);
+			return counted;
+		};
+		CachingResourceCounter counter = new CachingResourceCounter(delegate, 16, Duration.ofMinutes(1));
+
+		CompletableFuture<Long> stale = CompletableFuture.supplyAsync(() -> counter.count(TENANT, Recipe.class));
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+		usage.set(4);
+		counter.invalidate(TENANT, Recipe.class);
+		release.countDown();
+
+		assertThat(stale.get(5, TimeUnit.SECONDS)).isEqualTo(3);
+		assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(4);
+	}
+
+	@Test
+	void failOpenCountsAreNotCached() {
+		AtomicBoolean down = new AtomicBoolean(true);
+		ResourceCounter delegate = (tenant, resource) -> {
+			if (down.get()) {
+				throw new UncheckedIOException(new IOException("down"));
+			}
+			return 3L;
+		};
+		try (LatencyGuard guard = new LatencyGuard(type -> null, 5, Duration.ofSeconds(30), LatencyGuard.Fallback.FAIL_OPEN, null)) {
+			CachingResourceCounter counter = new CachingResourceCounter(
+					new CoalescingResourceCounter(new GuardedResourceCounter(delegate, guard, 16)), 16, Duration.ofMinutes(1));
+
+			assertThat(counter.count(TENANT, Recipe.class)).isZero();
+			assertThat(counter.countAll(List.of(TENANT), Recipe.class)).containsOnly(Map.entry("tenant", 0L));
+
+			down.set(false);
+			assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(3);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static class Recipe {
+	}
+}
@@ -0,0 +1,102 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalescingResourceCounterTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Tenant OTHER = () -> "other";
+
+	@Test
+	void batchJoinsTheTenantsAlreadyBeingCounted() throws Exception {
+		CountDownLatch counting = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger counts = new AtomicInteger();
+		List<List<Object>> batches = new CopyOnWriteArrayList<>();
+		CoalescingResourceCounter counter = new CoalescingResourceCounter(new BatchResourceCounter() {
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				counts.incrementAndGet();
+				counting.countDown();
+				await(release);
+				return 3L;
+			}
+
+			@Override
+			public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+				batches.add(tenants.stream().map(Tenant::getValue).toList());
+				return tenants.stream().collect(Collectors.toMap(Tenant::getValue, tenant -> 5L));
+			}
+		});
+
+		CompletableFuture<Long> single = CompletableFuture.supplyAsync(() -> counter.count(TENANT, Recipe.class));
+		assertThat(counting.await(5, TimeUnit.SECONDS)).isTrue();
+		CompletableFuture<Map<Object, Long>> batch = CompletableFuture.supplyAsync(() -> counter.countAll(List.of(TENANT, OTHER), Recipe.class));
+
+		while (batches.isEmpty()) {
+			Thread.onSpinWait();
+		}
+		assertThat(batch).isNotDone();
+		release.countDown();
+
+		assertThat(single.get(5, TimeUnit.SECONDS)).isEqualTo(3);
+		assertThat(batch.get(5, TimeUnit.SECONDS)).containsOnly(Map.entry("tenant", 3L), Map.entry("other", 5L));
+		assertThat(counts).hasValue(1);
+		assertThat(batches).containsExactly(List.of("other"));
+	}
+
+	@Test
+	void transactionalCallersDoNotJoinCountsOfOtherThreads() throws Exception {
+		CountDownLatch counting = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger counts = new AtomicInteger();
+		CoalescingResourceCounter counter = new CoalescingResourceCounter((tenant, resource) -> {
+			if (counts.incrementAndGet() == 1) {
+				counting.countDown();
+				await(release);
+				return 3L;
+			}
+			return 4L;
+		});
+
+		CompletableFuture<Long> outside = CompletableFuture.supplyAsync(() -> counter.count(TENANT, Recipe.class));
+		assertThat(counting.await(5, TimeUnit.SECONDS)).isTrue();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		try {
+			assertThat(counter.count(TENANT, Recipe.class)).isEqualTo(4);
+			assertThat(counter.countAll(List.of(TENANT), Recipe.class)).containsOnly(Map.entry("tenant", 4L));
+		} finally {
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+			release.countDown();
+		}
+
+		assertThat(outside.get(5, TimeUnit.SECONDS)).isEqualTo(3);
+		assertThat(counts).hasValue(3);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static class Recipe {
+	}
+}
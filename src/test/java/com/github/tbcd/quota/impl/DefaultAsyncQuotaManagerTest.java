@@ -0,0 +1,63 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.AsyncResourceCounter;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DefaultAsyncQuotaManagerTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@Test
+	void checksCountThroughAsyncCounters() throws Exception {
+		DefaultAsyncQuotaManager asyncQuotaManager = new DefaultAsyncQuotaManager(
+				new DefaultQuotaManager((tenant, resource) -> new RecipeCounter(), (tenant, resource) -> Optional.of(10L)));
+		try {
+			QuotaResult result = asyncQuotaManager.checkAsync(TENANT, Recipe.class, 1).get(5, TimeUnit.SECONDS);
+
+			assertThat(result.allowed()).isFalse();
+			assertThat(result.state().getUsed()).isEqualTo(10);
+		} finally {
+			asyncQuotaManager.destroy();
+		}
+	}
+
+	@Test
+	void tenantsWithoutQuotaAreNotLimited() throws Exception {
+		DefaultAsyncQuotaManager asyncQuotaManager = new DefaultAsyncQuotaManager(
+				new DefaultQuotaManager((tenant, resource) -> new RecipeCounter(), (tenant, resource) -> Optional.empty()));
+		try {
+			assertThat(asyncQuotaManager.checkAsync(TENANT, Recipe.class, 1).get(5, TimeUnit.SECONDS))
+					.isInstanceOf(QuotaResult.NoQuota.class);
+			assertThat(asyncQuotaManager.getStateAsync(TENANT, Recipe.class).get(5, TimeUnit.SECONDS)).isEmpty();
+		} finally {
+			asyncQuotaManager.destroy();
+		}
+	}
+
+	/**
+	 * Fails when counting synchronously, so that checks must go through {@link #countAsync}.
+	 */
+	static class RecipeCounter implements AsyncResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			throw new UnsupportedOperationException("Counted synchronously");
+		}
+
+		@Override
+		public CompletableFuture<Long> countAsync(Tenant tenant, Object resource) {
+			return CompletableFuture.completedFuture(10L);
+		}
+	}
+
+	static class Recipe {
+	}
+}
@@ -0,0 +1,261 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.BatchQuotaLimitResolver;
+import com.github.tbcd.quota.BatchResourceCounter;
+import com.github.tbcd.quota.HierarchicalTenant;
+import com.github.tbcd.quota.LongQuotaLimitResolver;
+import com.github.tbcd.quota.LongResourceCounter;
+import com.github.tbcd.quota.QuotaRequest;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DefaultQuotaManagerTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@Test
+	void asyncStateResolvesTheLimitAndCountsConcurrently() throws Exception {
+		CyclicBarrier bothRunning = new CyclicBarrier(2);
+		ResourceCounter counter = (tenant, resource) -> {
+			await(bothRunning);
+			return 3L;
+		};
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, (tenant, resource) -> {
+			await(bothRunning);
+			return Optional.of(10L);
+		});
+
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			Optional<QuotaState> state = quotaManager.getStateAsync(TENANT, Recipe.class, executor).get(5, TimeUnit.SECONDS);
+
+			assertThat(state).hasValueSatisfying(counted -> {
+				assertThat(counted.getUsed()).isEqualTo(3);
+				assertThat(counted.getLimit()).isEqualTo(10);
+			});
+		}
+	}
+
+	@Test
+	void asyncStateIgnoresTheCountWithoutQuota() throws Exception {
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> {
+			throw new IllegalArgumentException("No resource counter registered for: " + Recipe.class.getSimpleName());
+		}, (tenant, resource) -> Optional.empty());
+
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			assertThat(quotaManager.getStateAsync(TENANT, Recipe.class, executor).get(5, TimeUnit.SECONDS)).isEmpty();
+		}
+	}
+
+	@Test
+	void asyncStateReadsCachedLimitsWithoutTheExecutor() throws Exception {
+		ResourceCounter counter = (tenant, resource) -> 3L;
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, (tenant, resource) -> Optional.of(10L));
+		quotaManager.enableLimitCache(16, Duration.ofMinutes(1), Duration.ofMinutes(1), null);
+		AtomicInteger submitted = new AtomicInteger();
+		Executor executor = command -> {
+			submitted.incrementAndGet();
+			command.run();
+		};
+
+		try {
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isTrue();
+			assertThat(quotaManager.getStateAsync(TENANT, Recipe.class, executor).get(5, TimeUnit.SECONDS))
+					.hasValueSatisfying(state -> assertThat(state.getLimit()).isEqualTo(10));
+			assertThat(submitted).hasValue(1);
+		} finally {
+			quotaManager.destroy();
+		}
+	}
+
+	@Test
+	void nestedTenantIsDeniedByTheFirstLevelAtItsLimit() {
+		Tenant organization = () -> "organization";
+		HierarchicalTenant team = HierarchicalTenant.of("team", organization);
+		Map<Object, Long> counts = Map.of("organization", 10L, "team", 1L);
+		AtomicLong organizationLimit = new AtomicLong(10);
+		ResourceCounter counter = (tenant, resource) -> counts.get(tenant.getValue());
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> Optional.of(tenant.getValue().equals("team") ? 5L : organizationLimit.get()));
+
+		QuotaResult denied = quotaManager.check(team, Recipe.class, 1);
+		assertThat(denied.allowed()).isFalse();
+		assertThat(denied.state().getTenant().getValue()).isEqualTo("organization");
+		assertThat(denied.state().getLimit()).isEqualTo(10);
+
+		organizationLimit.set(20);
+		QuotaResult allowed = quotaManager.check(team, Recipe.class, 1);
+		assertThat(allowed.allowed()).isTrue();
+		assertThat(allowed.state().getTenant().getValue()).isEqualTo("team");
+		assertThat(allowed.state().getUsed()).isEqualTo(1);
+	}
+
+	@Test
+	void statesAreStreamedInChunksSkippingTenantsWithoutQuota() {
+		ResourceCounter counter = (tenant, resource) -> 1L;
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> tenant.getValue().equals("c") ? Optional.empty() : Optional.of(10L));
+		AtomicBoolean closed = new AtomicBoolean();
+		Stream<Tenant> tenants = Stream.<Tenant>of(() -> "a", () -> "b", () -> "c", () -> "d", () -> "e").onClose(() -> closed.set(true));
+
+		try (Stream<QuotaState> states = quotaManager.streamStates(tenants, List.of(Recipe.class), 2, 2)) {
+			assertThat(states.map(state -> state.getTenant().getValue())).containsExactly("a", "b", "d", "e");
+		}
+		assertThat(closed).isTrue();
+	}
+
+	@Test
+	void checkAllResolvesAndCountsDistinctTenantsInOneBatch() {
+		Map<Object, Long> counts = Map.of("a", 2L, "b", 5L, "c", 9L);
+		Map<Object, Long> limits = Map.of("a", 5L, "b", 5L);
+		List<List<Object>> countBatches = new ArrayList<>();
+		List<List<Object>> limitBatches = new ArrayList<>();
+		BatchResourceCounter counter = new BatchResourceCounter() {
+
+			@Override
+			public Map<Object, Long> countAll(Collection<Tenant> tenants, Object resource) {
+				countBatches.add(tenants.stream().map(Tenant::getValue).toList());
+				Map<Object, Long> counted = new HashMap<>();
+				tenants.forEach(tenant -> counted.put(tenant.getValue(), counts.get(tenant.getValue())));
+				return counted;
+			}
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				throw new AssertionError("Counted one tenant at a time");
+			}
+		};
+		BatchQuotaLimitResolver limitResolver = new BatchQuotaLimitResolver() {
+
+			@Override
+			public Map<Object, Long> resolveAll(Collection<Tenant> tenants, Object resource) {
+				limitBatches.add(tenants.stream().map(Tenant::getValue).toList());
+				Map<Object, Long> resolved = new HashMap<>();
+				tenants.forEach(tenant -> Optional.ofNullable(limits.get(tenant.getValue()))
+						.ifPresent(limit -> resolved.put(tenant.getValue(), limit)));
+				return resolved;
+			}
+
+			@Override
+			public Optional<Long> resolve(Tenant tenant, Object resource) {
+				throw new AssertionError("Resolved one tenant at a time");
+			}
+		};
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, limitResolver);
+
+		List<QuotaResult> results = quotaManager.checkAll(List.of(QuotaRequest.of(() -> "a", Recipe.class),
+				QuotaRequest.of(() -> "b", Recipe.class), QuotaRequest.of(() -> "c", Recipe.class), new QuotaRequest(() -> "a", Recipe.class, 4)));
+
+		assertThat(results).extracting(QuotaResult::allowed).containsExactly(true, false, true, false);
+		assertThat(results.get(1).state().getUsed()).isEqualTo(5);
+		assertThat(results.get(2)).isInstanceOf(QuotaResult.NoQuota.class);
+		assertThat(results.get(3).state().getUsed()).isEqualTo(2);
+		assertThat(limitBatches).containsExactly(List.of("a", "b", "c"));
+		assertThat(countBatches).containsExactly(List.of("a", "b"));
+	}
+
+	@Test
+	void quickCheckUsesThePrimitiveSpisWithoutEstimating() {
+		AtomicLong used = new AtomicLong(3);
+		LongResourceCounter counter = new LongResourceCounter() {
+
+			@Override
+			public long countAsLong(Tenant tenant, Object resource) {
+				return used.get();
+			}
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				throw new AssertionError("Counted through the boxed SPI");
+			}
+		};
+		LongQuotaLimitResolver limitResolver = new LongQuotaLimitResolver() {
+
+			@Override
+			public long resolveLimit(Tenant tenant, Object resource) {
+				return tenant.getValue().equals("unlimited") ? NO_QUOTA : 5;
+			}
+
+			@Override
+			public Optional<Long> resolve(Tenant tenant, Object resource) {
+				throw new AssertionError("Resolved through the boxed SPI");
+			}
+		};
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, limitResolver);
+		quotaManager.enableAdaptivePrecision(16, Duration.ofHours(1), 0.1);
+
+		assertThat(quotaManager.quickCheck(TENANT, Recipe.class, 1)).isSameAs(QuotaResult.ALLOWED);
+		used.set(5);
+		QuotaResult denied = quotaManager.quickCheck(TENANT, Recipe.class, 1);
+		assertThat(denied.allowed()).isFalse();
+		assertThat(denied.state().getUsed()).isEqualTo(5);
+		assertThat(denied.state().getLimit()).isEqualTo(5);
+		assertThat(quotaManager.quickCheck(() -> "unlimited", Recipe.class, 1)).isSameAs(QuotaResult.NO_QUOTA);
+	}
+
+	@Test
+	void fallbackCountsAreNotReusedAsExactCounts() {
+		AtomicBoolean down = new AtomicBoolean(true);
+		ResourceCounter counter = (tenant, resource) -> {
+			if (down.get()) {
+				throw new UncheckedIOException(new IOException("down"));
+			}
+			return 10L;
+		};
+		Tenant other = () -> "other";
+		try (LatencyGuard guard = new LatencyGuard(type -> null, 5, Duration.ofSeconds(30), LatencyGuard.Fallback.FAIL_OPEN, null)) {
+			CachingResourceCounterRegistry registry = new CachingResourceCounterRegistry(
+					new GuardedResourceCounterRegistry((tenant, resource) -> counter, guard, 16), 16, type -> Duration.ofMinutes(1));
+			DefaultQuotaManager quotaManager = new DefaultQuotaManager(registry, (tenant, resource) -> Optional.of(10L));
+			quotaManager.enableAdaptivePrecision(16, Duration.ofHours(1), 0.1);
+
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isTrue();
+			assertThat(quotaManager.checkAll(List.of(QuotaRequest.of(TENANT, String.class), QuotaRequest.of(other, String.class))))
+					.allMatch(QuotaResult::allowed);
+
+			down.set(false);
+			assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isFalse();
+			assertThat(quotaManager.checkAll(List.of(QuotaRequest.of(TENANT, String.class), QuotaRequest.of(other, String.class))))
+					.noneMatch(QuotaResult::allowed);
+		}
+	}
+
+	/**
+	 * Waits for the other lookup, which only arrives in time if both run at once.
+	 */
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await(2, TimeUnit.SECONDS);
+		} catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+			throw new IllegalStateException("Limit resolution and count did not overlap", e);
+		}
+	}
+
+	static class Recipe {
+	}
+}
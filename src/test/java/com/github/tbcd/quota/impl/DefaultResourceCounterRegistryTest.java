@@ -0,0 +1,199 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.CountsResource;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RegisteredBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DefaultResourceCounterRegistryTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@Test
+	void declaredCountersAreResolvedForTheirTypesAndSubtypes() {
+		RecipeCounter recipeCounter = new RecipeCounter();
+		PublishableCounter publishableCounter = new PublishableCounter();
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(recipeCounter, publishableCounter));
+
+		assertThat(registry.getResourceCounter(TENANT, Recipe.class)).isSameAs(recipeCounter);
+		assertThat(registry.getResourceCounter(TENANT, new RecipeProxy())).isSameAs(recipeCounter);
+		assertThat(registry.getResourceCounter(TENANT, Article.class)).isSameAs(publishableCounter);
+	}
+
+	@Test
+	void undeclaredCountersAreAskedOnceDeclaredOnesDoNotMatch() {
+		AtomicInteger asked = new AtomicInteger();
+		ResourceCounter undeclared = new ResourceCounter() {
+
+			@Override
+			public Long count(Tenant tenant, Object resource) {
+				return 0L;
+			}
+
+			@Override
+			public boolean supports(Tenant tenant, Object resource) {
+				asked.incrementAndGet();
+				return resource == String.class;
+			}
+		};
+		RecipeCounter recipeCounter = new RecipeCounter();
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(undeclared, recipeCounter));
+
+		assertThat(registry.getResourceCounter(TENANT, Recipe.class)).isSameAs(recipeCounter);
+		assertThat(asked).hasValue(0);
+
+		assertThat(registry.getResourceCounter(TENANT, String.class)).isSameAs(undeclared);
+		assertThat(registry.getResourceCounter(TENANT, String.class)).isSameAs(undeclared);
+		assertThat(asked).hasValue(1);
+
+		assertThatIllegalArgumentException().isThrownBy(() -> registry.getResourceCounter(TENANT, Integer.class))
+				.withMessageContaining("No resource counter registered for: Integer");
+	}
+
+	@Test
+	void countersDeclaringTheSameTypeAreAmbiguous() {
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(new RecipeCounter(), new OtherRecipeCounter()));
+
+		assertThatIllegalStateException().isThrownBy(registry::afterSingletonsInstantiated)
+				.withMessageContaining("Ambiguous resource counters for " + Recipe.class.getName());
+	}
+
+	@Test
+	void typesMatchingCountersThroughSeveralInterfacesResolveToTheFirstCounter() {
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(new PublishableCounter(), new ArchivableCounter()));
+		DefaultResourceCounterRegistry reversed = new DefaultResourceCounterRegistry(List.of(new ArchivableCounter(), new PublishableCounter()));
+
+		assertThat(registry.getResourceCounter(TENANT, Article.class)).isInstanceOf(PublishableCounter.class);
+		assertThat(registry.getResourceCounter(TENANT, Report.class)).isInstanceOf(PublishableCounter.class);
+		assertThat(reversed.getResourceCounter(TENANT, Report.class)).isInstanceOf(ArchivableCounter.class);
+	}
+
+	@Test
+	void countersOfMoreSpecificInterfacesWin() {
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(new PublishableCounter(), new ScheduledCounter()));
+
+		assertThat(registry.getResourceCounter(TENANT, Post.class)).isInstanceOf(ScheduledCounter.class);
+		assertThat(registry.getResourceCounter(TENANT, Article.class)).isInstanceOf(PublishableCounter.class);
+	}
+
+	@Test
+	void typesRegisteredAtBuildTimeAreIndexedWithoutAskingTheCounter() {
+		ResourceCounterTypes resourceCounterTypes = new ResourceCounterTypes();
+		resourceCounterTypes.register(RegisteredCounter.class, Recipe.class);
+		RegisteredCounter registeredCounter = new RegisteredCounter();
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(registeredCounter), resourceCounterTypes);
+
+		assertThat(registry.getResourceCounter(TENANT, new RecipeProxy())).isSameAs(registeredCounter);
+	}
+
+	@Test
+	void typesAreRegisteredInTheContextOfTheCounterOnly() {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("resourceCounterTypes", new ResourceCounterTypes());
+		beanFactory.registerBeanDefinition("registeredCounter", new RootBeanDefinition(RegisteredCounter.class));
+		ResourceCounterTypes.register(RegisteredBean.of(beanFactory, "registeredCounter"), RegisteredCounter.class, Recipe.class);
+
+		RegisteredCounter registeredCounter = new RegisteredCounter();
+		DefaultResourceCounterRegistry registry = new DefaultResourceCounterRegistry(List.of(registeredCounter),
+				beanFactory.getBean(ResourceCounterTypes.class));
+		DefaultResourceCounterRegistry otherRegistry = new DefaultResourceCounterRegistry(List.of(registeredCounter));
+
+		assertThat(registry.getResourceCounter(TENANT, new Recipe())).isSameAs(registeredCounter);
+		assertThatThrownBy(() -> otherRegistry.getResourceCounter(TENANT, new Recipe()))
+				.isInstanceOf(AssertionError.class);
+	}
+
+	@CountsResource(Recipe.class)
+	static class RecipeCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	@CountsResource(Recipe.class)
+	static class OtherRecipeCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	@CountsResource(Publishable.class)
+	static class PublishableCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	@CountsResource(Archivable.class)
+	static class ArchivableCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	@CountsResource(Scheduled.class)
+	static class ScheduledCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+	}
+
+	static class RegisteredCounter implements ResourceCounter {
+
+		@Override
+		public Long count(Tenant tenant, Object resource) {
+			return 0L;
+		}
+
+		@Override
+		public Set<Class<?>> resourceTypes() {
+			throw new AssertionError("Declared types read at startup");
+		}
+	}
+
+	interface Publishable {
+	}
+
+	interface Archivable {
+	}
+
+	interface Scheduled extends Publishable {
+	}
+
+	static class Recipe {
+	}
+
+	static class RecipeProxy extends Recipe {
+	}
+
+	static class Article implements Publishable {
+	}
+
+	static class Report implements Publishable, Archivable {
+	}
+
+	static class Post implements Publishable, Scheduled {
+	}
+}
@@ -0,0 +1,60 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class DenialCacheTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Tenant OTHER = () -> "other";
+
+	private final DenialCache denials = new DenialCache(16, Duration.ofMinutes(1));
+
+	@Test
+	void denialIsReusedForAmountsItDeniesAsWell() {
+		QuotaResult.Denied denied = denied(TENANT, 8, 10);
+		denials.record(TENANT, Recipe.class, denied);
+
+		assertThat(denials.get(TENANT, Recipe.class, 3)).isSameAs(denied);
+		assertThat(denials.get(TENANT, Recipe.class, 2)).isNull();
+		assertThat(denials.get(TENANT, String.class, 3)).isNull();
+		assertThat(denials.get(OTHER, Recipe.class, 3)).isNull();
+	}
+
+	@Test
+	void invalidatedDenialsAreEvaluatedAgain() {
+		denials.record(TENANT, Recipe.class, denied(TENANT, 10, 10));
+		denials.record(TENANT, String.class, denied(TENANT, 10, 10));
+		denials.record(OTHER, Recipe.class, denied(OTHER, 10, 10));
+
+		denials.invalidate(TENANT, Recipe.class);
+		assertThat(denials.get(TENANT, Recipe.class, 1)).isNull();
+		assertThat(denials.get(TENANT, String.class, 1)).isNotNull();
+
+		denials.invalidateTenant(TENANT);
+		assertThat(denials.get(TENANT, String.class, 1)).isNull();
+		assertThat(denials.get(OTHER, Recipe.class, 1)).isNotNull();
+
+		denials.clear();
+		assertThat(denials.get(OTHER, Recipe.class, 1)).isNull();
+	}
+
+	@Test
+	void timeToLiveMustBePositive() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new DenialCache(16, Duration.ZERO));
+	}
+
+	private static QuotaResult.Denied denied(Tenant tenant, long used, long limit) {
+		return new QuotaResult.Denied(new QuotaState(tenant, Recipe.class, used, limit));
+	}
+
+	static class Recipe {
+	}
+}
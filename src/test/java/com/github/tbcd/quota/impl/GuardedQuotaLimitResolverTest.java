@@ -0,0 +1,80 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaLimitResolver;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaUnavailableException;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GuardedQuotaLimitResolverTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Duration OPEN_DURATION = Duration.ofMinutes(1);
+
+	@Test
+	void lastKnownLimitIsUsedWhenResolutionFails() {
+		AtomicBoolean down = new AtomicBoolean();
+		try (LatencyGuard guard = new LatencyGuard(type -> null, 5, OPEN_DURATION, LatencyGuard.Fallback.FAIL_CLOSED, Duration.ofMinutes(1))) {
+			GuardedQuotaLimitResolver resolver = new GuardedQuotaLimitResolver(failing(down), guard, 16);
+
+			assertThat(resolver.resolve(TENANT, Recipe.class)).contains(5L);
+			down.set(true);
+			assertThat(resolver.resolveGuarded(TENANT, Recipe.class)).isEqualTo(new Outcome<>(Optional.of(5L), true));
+			assertThatThrownBy(() -> resolver.resolve(() -> "other", Recipe.class)).isInstanceOf(QuotaUnavailableException.class);
+		}
+	}
+
+	@Test
+	void failingOpenFallbacksAreNotCachedByTheManager() {
+		AtomicBoolean down = new AtomicBoolean(true);
+		ResourceCounter counter = (tenant, resource) -> 5L;
+		try (LatencyGuard guard = new LatencyGuard(type -> null, 5, OPEN_DURATION, LatencyGuard.Fallback.FAIL_OPEN, Duration.ZERO)) {
+			DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> counter, failing(down));
+			quotaManager.enableLimitGuard(guard, 16);
+			quotaManager.enableLimitCache(16, Duration.ofMinutes(1), Duration.ofMinutes(1), null);
+
+			try {
+				assertThat(quotaManager.check(TENANT, Recipe.class, 1)).isInstanceOf(QuotaResult.NoQuota.class);
+				down.set(false);
+				assertThat(quotaManager.check(TENANT, Recipe.class, 1).allowed()).isFalse();
+			} finally {
+				quotaManager.destroy();
+			}
+		}
+	}
+
+	@Test
+	void guardIsEnabledBeforeTheCache() {
+		DefaultQuotaManager quotaManager = new DefaultQuotaManager((tenant, resource) -> null, (tenant, resource) -> Optional.empty());
+		quotaManager.enableLimitCache(16, Duration.ofMinutes(1), Duration.ofMinutes(1), null);
+
+		try (LatencyGuard guard = new LatencyGuard(type -> null, 5, OPEN_DURATION, LatencyGuard.Fallback.FAIL_OPEN, Duration.ZERO)) {
+			assertThatIllegalStateException().isThrownBy(() -> quotaManager.enableLimitGuard(guard, 16));
+		} finally {
+			quotaManager.destroy();
+		}
+	}
+
+	private static QuotaLimitResolver failing(AtomicBoolean down) {
+		return (tenant, resource) -> {
+			if (down.get()) {
+				throw new UncheckedIOException(new IOException("down"));
+			}
+			return Optional.of(5L);
+		};
+	}
+
+	static class Recipe {
+	}
+}
@@ -0,0 +1,66 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaReservation;
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryQuotaManagerTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	private final InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+	private final InMemoryQuotaManager manager = new InMemoryQuotaManager(
+			(tenant, resource) -> null, (tenant, resource) -> Optional.of(2L), counter);
+
+	@Test
+	void reservationExpiringWhileInFlightKeepsItsUnits() {
+		QuotaReservation reservation = manager.reserve(TENANT, Recipe.class, 1, Duration.ZERO);
+		assertThat(reservation.result().allowed()).isTrue();
+
+		assertThat(manager.tryAcquire(TENANT, Recipe.class, 1).allowed()).isTrue();
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(2);
+
+		assertThat(reservation.commit()).isFalse();
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(2);
+		assertThat(manager.tryAcquire(TENANT, Recipe.class, 1).allowed()).isFalse();
+	}
+
+	@Test
+	void cancellingAnExpiredReservationGivesItsUnitsBack() {
+		QuotaReservation reservation = manager.reserve(TENANT, Recipe.class, 1, Duration.ZERO);
+		manager.tryAcquire(TENANT, Recipe.class, 1);
+
+		assertThat(reservation.cancel()).isFalse();
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(1);
+	}
+
+	@Test
+	void committedReservationsOfUntrackedResourcesAreNotEstimated() {
+		AtomicLong books = new AtomicLong();
+		ResourceCounter bookCounter = (tenant, resource) -> books.get();
+		InMemoryQuotaManager manager = new InMemoryQuotaManager((tenant, resource) -> bookCounter,
+				(tenant, resource) -> Optional.of(10L), counter);
+		manager.enableAdaptivePrecision(16, Duration.ofHours(1), 0.1);
+
+		QuotaReservation reservation = manager.reserve(TENANT, Book.class, 5, Duration.ofMinutes(1));
+		assertThat(reservation.result().allowed()).isTrue();
+		books.set(5);
+		assertThat(reservation.commit()).isTrue();
+
+		assertThat(manager.check(TENANT, Book.class, 6).allowed()).isFalse();
+	}
+
+	static class Book {
+	}
+
+	static class Recipe {
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class InMemoryResourceCounterTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	@Test
+	void subclassesShareTheUsageOfTheirTrackedType() {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+
+		assertThat(counter.acquire(TENANT, new Recipe(), 1, 2)).isZero();
+		assertThat(counter.acquire(TENANT, new RecipeProxy(), 1, 2)).isEqualTo(1);
+		assertThat(counter.acquire(TENANT, RecipeProxy.class, 1, 2)).isEqualTo(2);
+
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isEqualTo(2);
+		assertThat(counter.supports(TENANT, new RecipeProxy())).isTrue();
+		assertThat(counter.supports(TENANT, String.class)).isFalse();
+	}
+
+	@Test
+	void negativeAmountsAreRejected() {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+
+		assertThatIllegalArgumentException().isThrownBy(() -> counter.acquire(TENANT, Recipe.class, -1, 10));
+		assertThatIllegalArgumentException().isThrownBy(() -> counter.add(TENANT, Recipe.class, -1));
+		assertThatIllegalArgumentException().isThrownBy(() -> counter.release(TENANT, Recipe.class, -1));
+		assertThat(counter.countAsLong(TENANT, Recipe.class)).isZero();
+	}
+
+	static class Recipe {
+	}
+
+	static class RecipeProxy extends Recipe {
+	}
+}
@@ -0,0 +1,182 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LatencyGuardTest {
+
+	private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void consecutiveFailuresOpenTheCircuit() {
+		try (LatencyGuard guard = guard(null, 1)) {
+			fail(guard);
+			fail(guard);
+
+			assertThatThrownBy(() -> guard.call(Recipe.class, () -> 1))
+					.isInstanceOf(QuotaUnavailableException.class)
+					.hasMessageContaining("is unavailable");
+			assertThat(guard.call(String.class, () -> 1)).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void successfulProbeClosesTheCircuit() {
+		try (LatencyGuard guard = guard(null, 1)) {
+			fail(guard);
+			fail(guard);
+
+			clock.addAndGet(OPEN_DURATION.toNanos());
+			assertThat(guard.call(Recipe.class, () -> 1)).isEqualTo(1);
+			fail(guard);
+			assertThat(guard.call(Recipe.class, () -> 2)).isEqualTo(2);
+		}
+	}
+
+	@Test
+	void failedProbeReopensTheCircuit() {
+		try (LatencyGuard guard = guard(null, 1)) {
+			fail(guard);
+			fail(guard);
+
+			clock.addAndGet(OPEN_DURATION.toNanos());
+			fail(guard);
+			assertThatThrownBy(() -> guard.call(Recipe.class, () -> 1)).isInstanceOf(QuotaUnavailableException.class);
+
+			clock.addAndGet(OPEN_DURATION.toNanos());
+			assertThat(guard.call(Recipe.class, () -> 1)).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void otherExceptionsAreRethrownWithoutCounting() {
+		try (LatencyGuard guard = guard(null, 1)) {
+			fail(guard);
+			fail(guard);
+			clock.addAndGet(OPEN_DURATION.toNanos());
+
+			assertThatIllegalStateException().isThrownBy(() -> guard.call(Recipe.class, () -> {
+				throw new IllegalStateException("bug");
+			}));
+			assertThat(guard.call(Recipe.class, () -> 1)).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void dependencyFailuresAreFoundInTheCauseChain() {
+		assertThat(LatencyGuard.isDependencyFailure(new IllegalStateException(new UncheckedIOException(new IOException())))).isTrue();
+		assertThat(LatencyGuard.isDependencyFailure(new IllegalStateException(new IllegalArgumentException()))).isFalse();
+	}
+
+	@Test
+	void abandonedCallsHoldTheirSlotUntilTheyFinish() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (LatencyGuard guard = guard(Duration.ofMillis(10), 1)) {
+			assertThatThrownBy(() -> guard.call(Recipe.class, () -> {
+				awaitUninterruptibly(release);
+				return 1;
+			})).isInstanceOf(QuotaUnavailableException.class).hasMessageContaining("did not respond");
+
+			assertThatThrownBy(() -> guard.call(Recipe.class, () -> 1))
+					.isInstanceOf(QuotaUnavailableException.class)
+					.hasMessageContaining("Too many calls");
+
+			release.countDown();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			Integer result = null;
+			while (result == null && System.nanoTime() < deadline) {
+				try {
+					result = guard.call(Recipe.class, () -> 1);
+				} catch (QuotaUnavailableException e) {
+					Thread.sleep(1);
+				}
+			}
+			assertThat(result).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void callsAbandonedBeforeStartingGiveTheirSlotBack() throws Exception {
+		try (LatencyGuard guard = new LatencyGuard(type -> Duration.ofNanos(1), Integer.MAX_VALUE, OPEN_DURATION,
+				LatencyGuard.Fallback.FAIL_CLOSED, null, 1, clock::get)) {
+			for (int i = 0; i < 200; i++) {
+				try {
+					guard.call(Recipe.class, () -> 1);
+				} catch (QuotaUnavailableException e) {
+					// timed out, most often while still queued
+				}
+			}
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			String message = null;
+			while (System.nanoTime() < deadline) {
+				try {
+					guard.call(Recipe.class, () -> 1);
+					return;
+				} catch (QuotaUnavailableException e) {
+					message = e.getMessage();
+					if (message.contains("did not respond")) {
+						return;
+					}
+					Thread.sleep(1);
+				}
+			}
+			assertThat(message).doesNotContain("Too many calls");
+		}
+	}
+
+	@Test
+	void asyncCallsAreClassifiedLikeSynchronousOnes() {
+		try (LatencyGuard guard = guard(null, 1)) {
+			CompletableFuture<Integer> failed = guard.callAsync(Recipe.class,
+					() -> CompletableFuture.failedFuture(new IllegalArgumentException("bug")));
+			assertThat(failed).failsWithin(Duration.ofSeconds(1)).withThrowableThat().havingCause().isInstanceOf(IllegalArgumentException.class);
+
+			for (int i = 0; i < 2; i++) {
+				CompletableFuture<Integer> unavailable = guard.callAsync(Recipe.class,
+						() -> CompletableFuture.failedFuture(new UncheckedIOException(new IOException())));
+				assertThat(unavailable).failsWithin(Duration.ofSeconds(1)).withThrowableThat().havingCause().isInstanceOf(QuotaUnavailableException.class);
+			}
+			assertThatThrownBy(() -> guard.call(Recipe.class, () -> 1)).isInstanceOf(QuotaUnavailableException.class);
+		}
+	}
+
+	private LatencyGuard guard(Duration budget, int maxConcurrentCalls) {
+		return new LatencyGuard(type -> budget, 2, OPEN_DURATION, LatencyGuard.Fallback.FAIL_CLOSED, null,
+				maxConcurrentCalls, clock::get);
+	}
+
+	private static void fail(LatencyGuard guard) {
+		assertThatThrownBy(() -> guard.call(Recipe.class, () -> {
+			throw new UncheckedIOException(new IOException("down"));
+		})).isInstanceOf(QuotaUnavailableException.class);
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		while (true) {
+			try {
+				latch.await();
+				return;
+			} catch (InterruptedException e) {
+				// keep running like a dependency ignoring the interruption
+			}
+		}
+	}
+
+	static class Recipe {
+	}
+}
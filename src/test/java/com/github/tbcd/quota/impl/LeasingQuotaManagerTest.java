@@ -0,0 +1,70 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.ResourceCounter;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeasingQuotaManagerTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+
+	private final InMemoryQuotaStore store = new InMemoryQuotaStore();
+
+	@Test
+	void requestNearTheLimitLeasesOnlyWhatTheAllowanceLacks() {
+		ResourceCounter counter = (tenant, resource) -> 0L;
+		LeasingQuotaManager quotaManager = new LeasingQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> Optional.of(10L), store, 8, Duration.ofMinutes(1));
+
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 5).allowed()).isTrue();
+		assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(8);
+
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 5).allowed()).isTrue();
+		assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(10);
+
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 1).allowed()).isFalse();
+	}
+
+	@Test
+	void deniedRequestKeepsTheLeftoverOfTheAllowance() {
+		ResourceCounter counter = (tenant, resource) -> 0L;
+		LeasingQuotaManager quotaManager = new LeasingQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> Optional.of(10L), store, 8, Duration.ofMinutes(1));
+
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 5).allowed()).isTrue();
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 6).allowed()).isFalse();
+		assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(8);
+
+		assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 3).allowed()).isTrue();
+		assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(8);
+	}
+
+	@Test
+	void expiredLeasesOfIdleTenantsAreGivenBack() throws Exception {
+		ResourceCounter counter = (tenant, resource) -> 0L;
+		LeasingQuotaManager quotaManager = new LeasingQuotaManager((tenant, resource) -> counter,
+				(tenant, resource) -> Optional.of(10L), store, 8, Duration.ofMillis(20));
+
+		try {
+			assertThat(quotaManager.tryAcquire(TENANT, Recipe.class, 1).allowed()).isTrue();
+			assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(8);
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (store.usage(TENANT, Recipe.class) > 1 && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertThat(store.usage(TENANT, Recipe.class)).isEqualTo(1);
+		} finally {
+			quotaManager.destroy();
+		}
+	}
+
+	static class Recipe {
+	}
+}
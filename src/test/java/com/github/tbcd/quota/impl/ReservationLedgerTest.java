@@ -0,0 +1,137 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaReservation;
+import com.github.tbcd.quota.QuotaResult;
+import com.github.tbcd.quota.QuotaState;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservationLedgerTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final QuotaResult ALLOWED = new QuotaResult.Allowed(new QuotaState(TENANT, String.class, 1, 2));
+
+	private final ReservationLedger ledger = new ReservationLedger();
+
+	@Test
+	void commitBeforeDeadlineSettlesTheReservation() {
+		AtomicInteger commits = new AtomicInteger();
+		AtomicInteger releases = new AtomicInteger();
+		ledger.tryHold(TENANT, String.class, 0, 1, 2);
+		QuotaReservation reservation = ledger.register(TENANT, String.class, ALLOWED, Duration.ofMinutes(1),
+				commits::incrementAndGet, () -> {
+					releases.incrementAndGet();
+					ledger.releasePending(TENANT, String.class, 1);
+				});
+
+		assertThat(reservation.commit()).isTrue();
+		assertThat(reservation.commit()).isFalse();
+		assertThat(reservation.cancel()).isFalse();
+		assertThat(commits).hasValue(1);
+		assertThat(releases).hasValue(1);
+		assertThat(ledger.pending(TENANT, String.class)).isZero();
+	}
+
+	@Test
+	void expiryDropsThePendingAmountOnce() {
+		AtomicInteger commits = new AtomicInteger();
+		AtomicInteger releases = new AtomicInteger();
+		ledger.tryHold(TENANT, String.class, 0, 1, 2);
+		QuotaReservation reservation = ledger.register(TENANT, String.class, ALLOWED, Duration.ZERO,
+				commits::incrementAndGet, () -> {
+					releases.incrementAndGet();
+					ledger.releasePending(TENANT, String.class, 1);
+				});
+
+		ledger.expire(TENANT, String.class);
+		assertThat(ledger.pending(TENANT, String.class)).isZero();
+
+		assertThat(reservation.commit()).isFalse();
+		assertThat(commits).hasValue(1);
+		assertThat(releases).hasValue(1);
+	}
+
+	@Test
+	void expiryKeepsAcquiredUnitsUntilCancelled() {
+		AtomicInteger cancels = new AtomicInteger();
+		QuotaReservation committed = ledger.registerAcquired(TENANT, String.class, ALLOWED, Duration.ZERO, cancels::incrementAndGet);
+		QuotaReservation cancelled = ledger.registerAcquired(TENANT, String.class, ALLOWED, Duration.ZERO, cancels::incrementAndGet);
+
+		ledger.expire(TENANT, String.class);
+		assertThat(cancels).hasValue(0);
+
+		assertThat(committed.commit()).isFalse();
+		assertThat(cancels).hasValue(0);
+
+		assertThat(cancelled.cancel()).isFalse();
+		assertThat(cancelled.cancel()).isFalse();
+		assertThat(cancels).hasValue(1);
+	}
+
+	@Test
+	void commitAfterDeadlineIsReportedEvenBeforeExpiry() {
+		AtomicInteger cancels = new AtomicInteger();
+		QuotaReservation reservation = ledger.registerAcquired(TENANT, String.class, ALLOWED, Duration.ZERO, cancels::incrementAndGet);
+
+		assertThat(reservation.commit()).isFalse();
+		assertThat(reservation.cancel()).isFalse();
+		assertThat(cancels).hasValue(0);
+	}
+
+	@Test
+	void unheldReservationsCommitWhenAllowed() {
+		assertThat(ReservationLedger.unheld(ALLOWED).commit()).isTrue();
+		assertThat(ReservationLedger.unheld(new QuotaResult.Denied(ALLOWED.state())).commit()).isFalse();
+	}
+
+	@Test
+	void settledHoldingsAreRemoved() {
+		ledger.tryHold(TENANT, String.class, 0, 1, 2);
+		QuotaReservation reservation = ledger.register(TENANT, String.class, ALLOWED, Duration.ofMinutes(1),
+				() -> {}, () -> ledger.releasePending(TENANT, String.class, 1));
+		QuotaReservation acquired = ledger.registerAcquired(TENANT, Integer.class, ALLOWED, Duration.ofMinutes(1), () -> {});
+		assertThat(ledger.size()).isEqualTo(2);
+
+		reservation.commit();
+		acquired.cancel();
+		assertThat(ledger.size()).isZero();
+
+		assertThat(ledger.tryHold(TENANT, String.class, 0, 3, 2)).isZero();
+		assertThat(ledger.size()).isZero();
+	}
+
+	@Test
+	void commitWithinTransactionHoldsUntilItCompletes() {
+		AtomicInteger commits = new AtomicInteger();
+		AtomicInteger cancels = new AtomicInteger();
+		ledger.tryHold(TENANT, String.class, 0, 1, 2);
+		QuotaReservation reservation = ledger.register(TENANT, String.class, ALLOWED, Duration.ofMinutes(1),
+				commits::incrementAndGet, () -> ledger.releasePending(TENANT, String.class, 1));
+		QuotaReservation acquired = ledger.registerAcquired(TENANT, Integer.class, ALLOWED, Duration.ofMinutes(1),
+				cancels::incrementAndGet);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			assertThat(reservation.commit()).isTrue();
+			assertThat(acquired.commit()).isTrue();
+			assertThat(ledger.pending(TENANT, String.class)).isEqualTo(1);
+
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertThat(ledger.pending(TENANT, String.class)).isZero();
+		assertThat(commits).hasValue(0);
+		assertThat(cancels).hasValue(1);
+	}
+}
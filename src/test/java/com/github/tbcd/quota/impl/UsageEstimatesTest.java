@@ -0,0 +1,69 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class UsageEstimatesTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Tenant OTHER = () -> "other";
+
+	@Test
+	void exactCountIsRequiredUntilOneIsRecorded() {
+		UsageEstimates estimates = new UsageEstimates(16, Duration.ofHours(1), 0.1);
+
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 1)).isNegative();
+	}
+
+	@Test
+	void countIsReusedWhileTheHeadroomCoversTheMargin() {
+		UsageEstimates estimates = new UsageEstimates(16, Duration.ofHours(1), 0.1);
+		estimates.record(TENANT, Recipe.class, 50);
+
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 39)).isEqualTo(50);
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 41)).isNegative();
+		assertThat(estimates.estimate(TENANT, Recipe.class, 50, 1)).isNegative();
+	}
+
+	@Test
+	void marginGrowsAsTheCountAges() throws Exception {
+		UsageEstimates estimates = new UsageEstimates(16, Duration.ofMillis(200), 0.1);
+		estimates.record(TENANT, Recipe.class, 80);
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 5)).isEqualTo(80);
+
+		// Past half its maximum age, the count needs more than 15% of headroom
+		Thread.sleep(120);
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 5)).isNegative();
+		assertThat(estimates.estimate(TENANT, Recipe.class, 1000, 5)).isEqualTo(80);
+	}
+
+	@Test
+	void invalidatedCountsAreNoLongerReused() {
+		UsageEstimates estimates = new UsageEstimates(16, Duration.ofHours(1), 0.1);
+		estimates.record(TENANT, Recipe.class, 10);
+		estimates.record(TENANT, String.class, 10);
+		estimates.record(OTHER, Recipe.class, 10);
+
+		estimates.invalidate(TENANT, Recipe.class);
+		assertThat(estimates.estimate(TENANT, Recipe.class, 100, 1)).isNegative();
+		assertThat(estimates.estimate(TENANT, String.class, 100, 1)).isEqualTo(10);
+
+		estimates.invalidateTenant(TENANT);
+		assertThat(estimates.estimate(TENANT, String.class, 100, 1)).isNegative();
+		assertThat(estimates.estimate(OTHER, Recipe.class, 100, 1)).isEqualTo(10);
+	}
+
+	@Test
+	void invalidSettingsAreRejected() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new UsageEstimates(16, Duration.ZERO, 0.1));
+		assertThatIllegalArgumentException().isThrownBy(() -> new UsageEstimates(16, Duration.ofHours(1), -0.1));
+	}
+
+	static class Recipe {
+	}
+}
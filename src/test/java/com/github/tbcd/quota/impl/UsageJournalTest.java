@@ -0,0 +1,97 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsageJournalTest {
+
+	private static final List<Tenant> TENANTS = List.of(() -> "a", () -> "b", () -> 3L);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replayRestoresTheLastUsagesDespiteConcurrentUpdates() throws Exception {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+		counter.trackChanges();
+		Path file = directory.resolve("usage-1.log");
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			int offset = i;
+			threads.add(Thread.ofPlatform().start(() -> {
+				await(start);
+				for (int j = 0; j < 10_000; j++) {
+					Tenant tenant = TENANTS.get((offset + j) % TENANTS.size());
+					if (j % 3 == 0) {
+						counter.release(tenant, Recipe.class, 1);
+					} else {
+						counter.acquire(tenant, Recipe.class, 1, Long.MAX_VALUE);
+					}
+				}
+			}));
+		}
+
+		try (UsageJournal journal = new UsageJournal(file)) {
+			start.countDown();
+			while (threads.stream().anyMatch(Thread::isAlive)) {
+				counter.drainChanges(journal);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			counter.drainChanges(journal);
+		}
+
+		InMemoryResourceCounter restored = new InMemoryResourceCounter(Set.of(Recipe.class));
+		UsageJournal.read(ByteBuffer.wrap(Files.readAllBytes(file)), getClass().getClassLoader(), restored::restore);
+		for (Tenant tenant : TENANTS) {
+			assertThat(restored.countAsLong(tenant, Recipe.class)).isEqualTo(counter.countAsLong(tenant, Recipe.class));
+		}
+	}
+
+	@Test
+	void resetUsagesAreReplayedAsRemoved() throws IOException {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+		counter.trackChanges();
+		Tenant tenant = TENANTS.getFirst();
+		Path file = directory.resolve("usage-1.log");
+
+		try (UsageJournal journal = new UsageJournal(file)) {
+			counter.add(tenant, Recipe.class, 5);
+			counter.drainChanges(journal);
+			counter.reset(tenant, Recipe.class);
+			counter.drainChanges(journal);
+		}
+
+		InMemoryResourceCounter restored = new InMemoryResourceCounter(Set.of(Recipe.class));
+		UsageJournal.read(ByteBuffer.wrap(Files.readAllBytes(file)), getClass().getClassLoader(), restored::restore);
+		List<QuotaKey> keys = new ArrayList<>();
+		restored.forEachUsage((key, value) -> keys.add(key));
+		assertThat(keys).isEmpty();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	static class Recipe {
+	}
+}
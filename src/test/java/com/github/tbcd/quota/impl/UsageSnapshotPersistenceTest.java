@@ -0,0 +1,94 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UsageSnapshotPersistenceTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final Tenant OTHER = () -> 3L;
+	private static final Duration INTERVAL = Duration.ofHours(1);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void usagesSurviveARestart() {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+		UsageSnapshotPersistence persistence = new UsageSnapshotPersistence(counter, directory, INTERVAL, INTERVAL);
+		persistence.afterSingletonsInstantiated();
+		counter.add(TENANT, Recipe.class, 4);
+		counter.add(OTHER, Recipe.class, 2);
+		persistence.destroy();
+
+		InMemoryResourceCounter restored = new InMemoryResourceCounter(Set.of(Recipe.class));
+		new UsageSnapshotPersistence(restored, directory, INTERVAL, INTERVAL).load();
+
+		assertThat(restored.countAsLong(TENANT, Recipe.class)).isEqualTo(4);
+		assertThat(restored.countAsLong(OTHER, Recipe.class)).isEqualTo(2);
+	}
+
+	@Test
+	void journalIsReplayedOverTheSnapshot() {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+		counter.add(TENANT, Recipe.class, 1);
+		counter.add(OTHER, Recipe.class, 2);
+		UsageSnapshotPersistence persistence = new UsageSnapshotPersistence(counter, directory, INTERVAL, INTERVAL);
+		persistence.afterSingletonsInstantiated();
+
+		counter.set(TENANT, Recipe.class, 5);
+		counter.reset(OTHER, Recipe.class);
+		persistence.flush();
+
+		// Restored without a last snapshot, as after a crash
+		InMemoryResourceCounter restored = new InMemoryResourceCounter(Set.of(Recipe.class));
+		new UsageSnapshotPersistence(restored, directory, INTERVAL, INTERVAL).load();
+		persistence.destroy();
+
+		assertThat(restored.countAsLong(TENANT, Recipe.class)).isEqualTo(5);
+		assertThat(restored.countAsLong(OTHER, Recipe.class)).isZero();
+	}
+
+	@Test
+	void restoredUsagesAreReconciledWithTheSeedCounter() throws Exception {
+		InMemoryResourceCounter counter = new InMemoryResourceCounter(Set.of(Recipe.class));
+		UsageSnapshotPersistence persistence = new UsageSnapshotPersistence(counter, directory, INTERVAL, INTERVAL);
+		persistence.afterSingletonsInstantiated();
+		counter.add(TENANT, Recipe.class, 5);
+		persistence.destroy();
+
+		InMemoryResourceCounter restored = new InMemoryResourceCounter(Set.of(Recipe.class), (tenant, resource) -> 7L);
+		new UsageSnapshotPersistence(restored, directory, INTERVAL, INTERVAL).load();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (restored.countAsLong(TENANT, Recipe.class) != 7 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(restored.countAsLong(TENANT, Recipe.class)).isEqualTo(7);
+	}
+
+	@Test
+	void failedLoadIsNotHiddenOnDestroy() throws Exception {
+		Path file = Files.createFile(directory.resolve("not-a-directory"));
+		UsageSnapshotPersistence persistence = new UsageSnapshotPersistence(new InMemoryResourceCounter(Set.of(Recipe.class)), file,
+				INTERVAL, INTERVAL);
+
+		assertThatThrownBy(persistence::afterSingletonsInstantiated).isInstanceOf(UncheckedIOException.class);
+		persistence.destroy();
+		assertThat(file).isRegularFile();
+	}
+
+	static class Recipe {
+	}
+}
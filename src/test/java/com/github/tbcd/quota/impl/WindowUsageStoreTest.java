@@ -0,0 +1,78 @@
+package com.github.tbcd.quota.impl;
+
+import com.github.tbcd.quota.QuotaWindow;
+import com.github.tbcd.quota.Tenant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowUsageStoreTest {
+
+	private static final Tenant TENANT = () -> "tenant";
+	private static final QuotaWindow FIXED = QuotaWindow.fixed(2, Duration.ofSeconds(1));
+	private static final QuotaWindow BUCKET = QuotaWindow.tokenBucket(2, Duration.ofSeconds(1));
+
+	private final AtomicLong clock = new AtomicLong(Duration.ofHours(1).toNanos());
+	private final WindowUsageStore store = new WindowUsageStore(clock::get);
+
+	@Test
+	void refundGivesUnitsBackToTheWindowTheyWereConsumedFrom() {
+		long consumedAt = store.now();
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 2)).isZero();
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 1)).isEqualTo(2);
+
+		store.refund(TENANT, String.class, FIXED, 1, consumedAt);
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 1)).isEqualTo(1);
+	}
+
+	@Test
+	void refundIgnoresWindowsNoLongerCounted() {
+		long consumedAt = store.now();
+		store.tryConsume(TENANT, String.class, FIXED, 2);
+
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 1)).isZero();
+		store.refund(TENANT, String.class, FIXED, 2, consumedAt);
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 1)).isEqualTo(1);
+	}
+
+	@Test
+	void refundGivesTokensBack() {
+		assertThat(store.tryConsume(TENANT, String.class, BUCKET, 2)).isZero();
+		store.refund(TENANT, String.class, BUCKET, 1, store.now());
+		assertThat(store.tryConsume(TENANT, String.class, BUCKET, 1)).isEqualTo(1);
+	}
+
+	@Test
+	void windowsOfTheSameResourceAreCountedIndependently() {
+		QuotaWindow perMinute = QuotaWindow.fixed(2, Duration.ofMinutes(1));
+		QuotaWindow perDay = QuotaWindow.fixed(3, Duration.ofDays(1));
+
+		assertThat(store.tryConsume(TENANT, String.class, perMinute, 2)).isZero();
+		assertThat(store.tryConsume(TENANT, String.class, perDay, 2)).isZero();
+		assertThat(store.tryConsume(TENANT, String.class, perMinute, 1)).isEqualTo(2);
+
+		clock.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertThat(store.tryConsume(TENANT, String.class, perMinute, 1)).isZero();
+		assertThat(store.tryConsume(TENANT, String.class, perDay, 1)).isEqualTo(2);
+		assertThat(store.tryConsume(TENANT, String.class, perDay, 1)).isEqualTo(3);
+		assertThat(store.size()).isEqualTo(2);
+	}
+
+	@Test
+	void sweepEvictsEndedWindowsAndFullBuckets() {
+		store.tryConsume(TENANT, String.class, FIXED, 1);
+		store.tryConsume(TENANT, Integer.class, BUCKET, 1);
+
+		store.sweep(clock.get());
+		assertThat(store.size()).isEqualTo(2);
+
+		clock.addAndGet(Duration.ofSeconds(2).toNanos());
+		store.sweep(clock.get());
+		assertThat(store.size()).isZero();
+		assertThat(store.tryConsume(TENANT, String.class, FIXED, 2)).isZero();
+	}
+}